@@ -0,0 +1,63 @@
+package com.example.microservice1.benchmark;
+
+import com.example.microservice1.Dto.InventoryResponse;
+import com.example.microservice1.config.CacheValueSerializer;
+import com.example.microservice1.config.RedisConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of an L2 write and read per codec, against the default-typed JSON serializer that was
+// used before ("legacy"). The "-deflated" variants compress every entry regardless of size.
+// Bytes per entry are printed once per fork.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CacheSerializationBenchmark {
+
+    @Param({"legacy", "binary", "json", "binary-deflated", "json-deflated"})
+    private String codec;
+
+    private RedisSerializer<Object> serializer;
+    private InventoryResponse value;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        serializer = switch (codec) {
+            case "legacy" -> RedisSerializer.json();
+            case "binary" -> RedisConfig.cacheValueSerializer(CacheValueSerializer.Codec.BINARY, Integer.MAX_VALUE);
+            case "json" -> RedisConfig.cacheValueSerializer(CacheValueSerializer.Codec.JSON, Integer.MAX_VALUE);
+            case "binary-deflated" -> RedisConfig.cacheValueSerializer(CacheValueSerializer.Codec.BINARY, 0);
+            case "json-deflated" -> RedisConfig.cacheValueSerializer(CacheValueSerializer.Codec.JSON, 0);
+            default -> throw new IllegalArgumentException(codec);
+        };
+        value = InventoryResponse.fromEntity(Fixtures.persistedInventory());
+        bytes = serializer.serialize(value);
+        System.out.printf("%n%s: %d bytes per entry%n", codec, bytes.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+}
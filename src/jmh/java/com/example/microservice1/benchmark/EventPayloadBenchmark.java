@@ -0,0 +1,74 @@
+package com.example.microservice1.benchmark;
+
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEvent.EventType;
+import com.example.microservice1.Event.InventoryEventDeserializer;
+import com.example.microservice1.Event.InventoryEventSerializer;
+import com.example.microservice1.model.Inventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Kafka payload cost. entityJson is the payload published before the binary event and is
+// kept as the baseline the codec has to beat.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventPayloadBenchmark {
+
+    private final InventoryEventSerializer serializer = new InventoryEventSerializer();
+    private final InventoryEventDeserializer deserializer = new InventoryEventDeserializer();
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    private Inventory inventory;
+    private InventoryEvent event;
+    private InventoryEvent orderEvent;
+    private byte[] eventBytes;
+
+    @Setup
+    public void setUp() {
+        inventory = Fixtures.persistedInventory();
+        event = InventoryEvent.of(EventType.UPDATED, inventory, 5);
+        List<InventoryEvent> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add(InventoryEvent.of(EventType.RESERVED, inventory, 1));
+        }
+        orderEvent = InventoryEvent.orderReserved("ORDER-1", lines);
+        eventBytes = serializer.serialize("inventory-updated", event);
+    }
+
+    @Benchmark
+    public byte[] serializeEvent() {
+        return serializer.serialize("inventory-updated", event);
+    }
+
+    @Benchmark
+    public byte[] serializeTenLineOrder() {
+        return serializer.serialize("inventory-reserved", orderEvent);
+    }
+
+    @Benchmark
+    public InventoryEvent deserializeEvent() {
+        return deserializer.deserialize("inventory-updated", eventBytes);
+    }
+
+    @Benchmark
+    public byte[] entityJson() {
+        return jsonMapper.writeValueAsBytes(inventory);
+    }
+}
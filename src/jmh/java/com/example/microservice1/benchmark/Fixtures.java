@@ -0,0 +1,38 @@
+package com.example.microservice1.benchmark;
+
+import com.example.microservice1.model.Inventory;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// A realistic catalog row shared by the benchmarks
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Inventory inventory(String sku, int quantity) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setProductName("Wireless keyboard");
+        inventory.setDescription("Full size wireless keyboard with numeric pad");
+        inventory.setQuantity(quantity);
+        inventory.setReservedQuantity(0);
+        inventory.setReorderLevel(100);
+        inventory.setMaxStockLevel(Integer.MAX_VALUE);
+        inventory.setUnitPrice(new BigDecimal("49.99"));
+        inventory.setWarehouseId("WH-NORTH-01");
+        inventory.setLocation("A-12-03");
+        return inventory;
+    }
+
+    static Inventory persistedInventory() {
+        Inventory inventory = inventory("SKU-000123", 1_250);
+        inventory.setId(42L);
+        inventory.setReservedQuantity(37);
+        inventory.setCreatedAt(LocalDateTime.now());
+        inventory.setUpdatedAt(LocalDateTime.now());
+        inventory.setVersion(17L);
+        return inventory;
+    }
+}
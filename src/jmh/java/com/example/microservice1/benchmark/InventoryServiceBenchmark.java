@@ -0,0 +1,201 @@
+package com.example.microservice1.benchmark;
+
+import com.example.microservice1.Dto.AvailabilityResponse;
+import com.example.microservice1.Dto.InventoryResponse;
+import com.example.microservice1.Dto.ReservationItem;
+import com.example.microservice1.Dto.ReservationResponse;
+import com.example.microservice1.Event.InventoryEventSerializer;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.Service.HotSkuLedger;
+import com.example.microservice1.Service.InventoryMetrics;
+import com.example.microservice1.Service.InventoryService;
+import com.example.microservice1.Service.LowStockFeed;
+import com.example.microservice1.Service.OutboxPublisher;
+import com.example.microservice1.Service.OutboxRelay;
+import com.example.microservice1.Service.ReservationEngine;
+import com.example.microservice1.Service.ReservationExpiryEngine;
+import com.example.microservice1.Service.ReserveBatcher;
+import com.example.microservice1.Service.StockLedger;
+import com.example.microservice1.Service.WarehouseSummaryService;
+import com.example.microservice1.model.Inventory;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// InventoryService end to end against local stand-ins: H2 in PostgreSQL mode for the
+// database, Caffeine for the cache and a MockProducer for the broker. Outbox rows written
+// during an iteration are relayed to the mock broker between iterations, and holds are made
+// already expired and swept between iterations, so neither table grows across the run.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InventoryServiceBenchmark {
+
+    private static final String SKU = "BENCH-1";
+    //a large cart, as the order service sends it
+    private static final int CART_SIZE = 200;
+
+    private ConfigurableApplicationContext context;
+    private InventoryService inventoryService;
+    private ReserveBatcher reserveBatcher;
+    private OutboxRelay outboxRelay;
+    private ReservationExpiryEngine expiryEngine;
+    private Cache cache;
+    private List<ReservationItem> cart;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(StandIns.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "eureka.client.enabled=false",
+                        "spring.cloud.discovery.enabled=false",
+                        "logging.level.root=WARN")
+                .run();
+        inventoryService = context.getBean(InventoryService.class);
+        reserveBatcher = context.getBean(ReserveBatcher.class);
+        outboxRelay = context.getBean(OutboxRelay.class);
+        expiryEngine = context.getBean(ReservationExpiryEngine.class);
+        cache = context.getBean(CacheManager.class).getCache("inventory");
+        //enough stock that reserving one unit per call never runs out during a run
+        context.getBean(InventoryRepository.class).saveAndFlush(Fixtures.inventory(SKU, 1_000_000_000));
+        List<Inventory> cartRows = new ArrayList<>();
+        cart = new ArrayList<>();
+        for (int i = 0; i < CART_SIZE; i++) {
+            cartRows.add(Fixtures.inventory("CART-" + i, 1_000));
+            cart.add(new ReservationItem("CART-" + i, 1));
+        }
+        context.getBean(InventoryRepository.class).saveAllAndFlush(cartRows);
+    }
+
+    @TearDown(Level.Iteration)
+    public void relayOutbox() {
+        expiryEngine.sweep();
+        outboxRelay.relay();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public ReservationResponse reserveStock() {
+        return inventoryService.reserveStock(SKU, 1, Duration.ZERO);
+    }
+
+    // Every thread on the same row, so this mostly measures waiting on the row lock
+    @Benchmark
+    @Threads(4)
+    public ReservationResponse reserveStockContended() {
+        return inventoryService.reserveStock(SKU, 1, Duration.ZERO);
+    }
+
+    // Same contention through ReserveBatcher, calls queued behind a batch are applied together
+    @Benchmark
+    @Threads(4)
+    public ReservationResponse reserveStockContendedBatched() {
+        return reserveBatcher.reserve(SKU, 1, Duration.ZERO);
+    }
+
+    @Benchmark
+    public InventoryResponse getInventoryBySkuCached() {
+        return inventoryService.getInventoryBySku(SKU);
+    }
+
+    @Benchmark
+    public InventoryResponse getInventoryBySkuUncached() {
+        cache.evict(SKU);
+        return inventoryService.getInventoryBySku(SKU);
+    }
+
+    // Divide by CART_SIZE for the cost per SKU
+    @Benchmark
+    public AvailabilityResponse checkAvailabilityCartCached() {
+        return inventoryService.checkAvailability(cart);
+    }
+
+    // Every SKU missed: one IN query, then the rows are written back
+    @Benchmark
+    public AvailabilityResponse checkAvailabilityCartUncached() {
+        cache.clear();
+        return inventoryService.checkAvailability(cart);
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @AutoConfigurationPackage(basePackages = "com.example.microservice1")
+    @EnableCaching
+    @EnableJpaAuditing
+    @Import({InventoryService.class, ReservationEngine.class, HotSkuLedger.class, LowStockFeed.class,
+            OutboxPublisher.class, OutboxRelay.class, InventoryMetrics.class, ReservationExpiryEngine.class,
+            WarehouseSummaryService.class, ReserveBatcher.class, StockLedger.class})
+    static class StandIns {
+
+        @Bean
+        CacheManager cacheManager() {
+            return new TransactionAwareCacheManagerProxy(new CaffeineCacheManager("inventory"));
+        }
+
+        @Bean
+        InventoryEventSerializer inventoryEventSerializer() {
+            return new InventoryEventSerializer();
+        }
+
+        @Bean
+        KafkaTemplate<String, byte[]> outboxKafkaTemplate() {
+            MockProducer<String, byte[]> producer = new MockProducer<>(true, null, new StringSerializer(), new ByteArraySerializer()) {
+                //KafkaTemplate closes the producer after every send; the stand-in has to stay open
+                @Override
+                public void close() {
+                    clear();
+                }
+
+                @Override
+                public void close(Duration timeout) {
+                    clear();
+                }
+            };
+            return new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        }
+    }
+}
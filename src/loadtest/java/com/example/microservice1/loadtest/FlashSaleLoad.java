@@ -0,0 +1,261 @@
+package com.example.microservice1.loadtest;
+
+import com.example.microservice1.loadtest.LoadOptions.Operation;
+import com.example.microservice1.loadtest.OperationStats.Outcome;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Flash sale load against a running instance. Seeds a fresh set of SKUs through the bulk
+// import, then runs thousands of clients, each on its own virtual thread, issuing a weighted
+// mix of reserve / release / check / get against Zipf-distributed SKUs. At the end every row
+// is compared against the net of the acknowledged operations, so an oversell or a lost update
+// fails the run next to the numbers that produced it.
+//
+// Mutations are sent with an Idempotency-Key and retried once on a connection failure; a
+// reserve or release whose outcome is still unknown after that is counted as ambiguous and
+// widens the tolerance for that SKU instead. Reads are retried once as well.
+//
+// Exit code is 0 when every row matches, 1 otherwise. See LoadOptions for the flags.
+public final class FlashSaleLoad {
+
+    private static final String API = "/api/v1/inventory";
+    private static final int HOLD_TTL_SECONDS = 86_400;
+
+    private final LoadOptions options;
+    private final HttpClient http;
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final List<String> skus = new ArrayList<>();
+    private final String skuPrefix = "LOAD-" + UUID.randomUUID().toString().substring(0, 8) + "-";
+    private final Map<Operation,OperationStats> stats = new EnumMap<>(Operation.class);
+    private final Operation[] operationByWeight;
+    private final ZipfianSkus distribution;
+    private final SkuLedger ledger;
+
+    private FlashSaleLoad(LoadOptions options) {
+        this.options = options;
+        this.http = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(options.timeout())
+                .build();
+        for (int i = 0; i < options.skus(); i++) {
+            skus.add(skuPrefix + i);
+        }
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+        List<Operation> weighted = new ArrayList<>();
+        options.mix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        });
+        this.operationByWeight = weighted.toArray(Operation[]::new);
+        this.distribution = new ZipfianSkus(options.skus(), options.zipfExponent());
+        this.ledger = new SkuLedger(skus, options.initialStock());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        boolean verified = new FlashSaleLoad(options).run();
+        System.exit(verified ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        seed();
+        PostgresProbe probe = options.jdbcUrl() == null ? null
+                : new PostgresProbe(options.jdbcUrl(), options.jdbcUser(), options.jdbcPassword());
+        try {
+            System.out.printf("Running %d clients for %s against %d SKUs (hottest takes %.1f%% of traffic)%n",
+                    options.clients(), options.duration(), options.skus(), distribution.share(0) * 100);
+            long start = System.nanoTime();
+            long deadline = start + options.duration().toNanos();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < options.clients(); i++) {
+                    clients.submit(() -> client(deadline));
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            Map<String,int[]> rows = probe != null ? probe.rows(skuPrefix) : rowsThroughApi();
+            List<String> mismatches = ledger.verify(rows, options.hotSkuLeases());
+
+            Map<String,Object> result = new LinkedHashMap<>();
+            result.put("options", options.toString());
+            result.put("skuPrefix", skuPrefix);
+            result.put("seconds", seconds);
+            long requests = stats.values().stream().mapToLong(OperationStats::count).sum();
+            result.put("throughputPerSecond", requests / seconds);
+            Map<String,Object> operations = new LinkedHashMap<>();
+            stats.forEach((operation, operationStats) -> operations.put(operation.name(), operationStats.summary(seconds)));
+            result.put("operations", operations);
+            result.put("ledger", ledger.totals());
+            if (probe != null) {
+                result.put("postgres", probe.summary());
+            }
+            result.put("verified", mismatches.isEmpty());
+            result.put("mismatches", mismatches.subList(0, Math.min(mismatches.size(), 100)));
+            result.put("mismatchCount", mismatches.size());
+
+            String json = jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result);
+            System.out.println(json);
+            Path out = Path.of(options.out());
+            if (out.getParent() != null) {
+                Files.createDirectories(out.getParent());
+            }
+            Files.writeString(out, json);
+            System.out.println(mismatches.isEmpty()
+                    ? "Verified: every row matches the acknowledged operations"
+                    : "FAILED: " + mismatches.size() + " rows disagree with the acknowledged operations");
+            return mismatches.isEmpty();
+        } finally {
+            if (probe != null) {
+                probe.close();
+            }
+        }
+    }
+
+    private void client(long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            Operation operation = operationByWeight[random.nextInt(operationByWeight.length)];
+            int sku = distribution.next(random);
+            int quantity = 1 + random.nextInt(options.maxQuantity());
+            long start = System.nanoTime();
+            Outcome outcome = switch (operation) {
+                case RESERVE -> mutate(operation, "/reserve", sku, quantity);
+                case RELEASE -> mutate(operation, "/release", sku, quantity);
+                case CHECK -> read(operation, HttpRequest.newBuilder(uri("/" + skus.get(sku) + "/check?quantity=" + quantity))
+                        .POST(HttpRequest.BodyPublishers.noBody()));
+                case GET -> read(operation, HttpRequest.newBuilder(uri("/" + skus.get(sku))).GET());
+            };
+            stats.get(operation).record(outcome, System.nanoTime() - start);
+            if (operation == Operation.RESERVE && outcome != Outcome.REJECTED && outcome != Outcome.NOT_FOUND) {
+                ledger.reserved(sku, quantity, outcome == Outcome.OK);
+            } else if (operation == Operation.RELEASE && outcome != Outcome.REJECTED && outcome != Outcome.NOT_FOUND) {
+                ledger.released(sku, quantity, outcome == Outcome.OK);
+            }
+        }
+    }
+
+    // Each mutation carries its own Idempotency-Key, so a lost response can be retried once;
+    // only when the retry fails as well is the outcome unknown
+    private Outcome mutate(Operation operation, String action, int sku, int quantity) {
+        //holds have to outlive the run, an expiry would show up as a lost reservation
+        String body = "{\"quantity\":" + quantity + ",\"ttlSeconds\":" + HOLD_TTL_SECONDS + "}";
+        HttpRequest request = HttpRequest.newBuilder(uri("/" + skus.get(sku) + action))
+                .timeout(options.timeout())
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                //409 on a retry means the first attempt is still running, so its outcome is open
+                return attempt > 0 && status == 409 ? Outcome.AMBIGUOUS : outcome(status);
+            } catch (IOException e) {
+                if (attempt > 0) {
+                    return Outcome.AMBIGUOUS;
+                }
+                stats.get(operation).retried();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Outcome.AMBIGUOUS;
+            }
+        }
+    }
+
+    private Outcome read(Operation operation, HttpRequest.Builder builder) {
+        HttpRequest request = builder.timeout(options.timeout()).build();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return outcome(http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+            } catch (IOException e) {
+                if (attempt > 0) {
+                    return Outcome.AMBIGUOUS;
+                }
+                stats.get(operation).retried();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Outcome.AMBIGUOUS;
+            }
+        }
+    }
+
+    private static Outcome outcome(int status) {
+        if (status >= 200 && status < 300) {
+            return Outcome.OK;
+        }
+        if (status == 404) {
+            return Outcome.NOT_FOUND;
+        }
+        //a 5xx can come after the commit, e.g. a failed cache write, so it proves nothing
+        return status >= 500 && status != 507 ? Outcome.AMBIGUOUS : Outcome.REJECTED;
+    }
+
+    private void seed() throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder();
+        for (String sku : skus) {
+            //reorder level 0 keeps the low-stock feed quiet unless a SKU sells out
+            body.append("{\"sku\":\"").append(sku)
+                    .append("\",\"productName\":\"Load test item\",\"description\":\"flash sale\",\"quantity\":")
+                    .append(options.initialStock())
+                    .append(",\"reorderLevel\":0,\"maxStockLevel\":").append(Math.max(1, options.initialStock()))
+                    .append(",\"unitPrice\":9.99,\"warehouseId\":\"WH-LOAD\"}\n");
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri("/import"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+        }
+        JsonNode report = jsonMapper.readTree(response.body());
+        if (report.get("rowsUpserted").asLong() != skus.size()) {
+            throw new IllegalStateException("Seeding imported " + report.get("rowsUpserted") + " of " + skus.size() + " SKUs: " + response.body());
+        }
+        System.out.printf("Seeded %d SKUs with prefix %s%n", skus.size(), skuPrefix);
+    }
+
+    // Without database access the rows are read back through the API. Cache writes are
+    // versioned and happen after commit, so once the load has stopped these are current.
+    private Map<String,int[]> rowsThroughApi() throws InterruptedException {
+        Map<String,int[]> rows = new HashMap<>();
+        for (String sku : skus) {
+            HttpRequest request = HttpRequest.newBuilder(uri("/" + sku)).timeout(options.timeout()).GET().build();
+            try {
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) {
+                    JsonNode row = jsonMapper.readTree(response.body());
+                    rows.put(sku, new int[]{row.get("quantity").asInt(), row.get("reservedQuantity").asInt()});
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read back " + sku + ": " + e.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    private URI uri(String path) {
+        return URI.create(options.baseUrl() + API + path);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.microservice1.loadtest;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+// Command line options, all given as --name=value
+//   --base-url        service under test                      http://localhost:8081
+//   --skus            SKUs seeded for the run                 1000
+//   --zipf            Zipf exponent of the SKU distribution   1.1
+//   --initial-stock   quantity every SKU starts with          500
+//   --clients         concurrent clients, one virtual thread  2000
+//   --duration        how long to apply load                  60s
+//   --max-quantity    units per reserve / release, 1..n       3
+//   --mix             operation weights                       reserve=50,release=20,check=15,get=15
+//   --timeout         per request timeout                     5s
+//   --jdbc-url, --jdbc-user, --jdbc-password
+//                     optional Postgres access for lock-wait / deadlock sampling and for
+//                     verifying rows without going through the API cache
+//   --hot-sku-leases  true when hot SKU mode is on: leased stock shows up as reserved on the
+//                     row, so reservedQuantity may only exceed the ledger, never fall short
+//   --out             JSON result file
+record LoadOptions(String baseUrl, int skus, double zipfExponent, int initialStock, int clients,
+                   Duration duration, int maxQuantity, Map<Operation,Integer> mix, Duration timeout,
+                   String jdbcUrl, String jdbcUser, String jdbcPassword, boolean hotSkuLeases, String out) {
+
+    static LoadOptions parse(String[] args) {
+        Map<String,String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            values.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return new LoadOptions(
+                values.getOrDefault("base-url", "http://localhost:8081"),
+                Integer.parseInt(values.getOrDefault("skus", "1000")),
+                Double.parseDouble(values.getOrDefault("zipf", "1.1")),
+                Integer.parseInt(values.getOrDefault("initial-stock", "500")),
+                Integer.parseInt(values.getOrDefault("clients", "2000")),
+                Duration.parse("PT" + values.getOrDefault("duration", "60s").toUpperCase()),
+                Integer.parseInt(values.getOrDefault("max-quantity", "3")),
+                mix(values.getOrDefault("mix", "reserve=50,release=20,check=15,get=15")),
+                Duration.parse("PT" + values.getOrDefault("timeout", "5s").toUpperCase()),
+                values.get("jdbc-url"),
+                values.getOrDefault("jdbc-user", "postgres"),
+                values.getOrDefault("jdbc-password", "postgres"),
+                Boolean.parseBoolean(values.getOrDefault("hot-sku-leases", "false")),
+                values.getOrDefault("out", "target/loadtest-result.json"));
+    }
+
+    //written into the result file, so the password stays out
+    @Override
+    public String toString() {
+        return "baseUrl=" + baseUrl + ", skus=" + skus + ", zipf=" + zipfExponent + ", initialStock=" + initialStock
+                + ", clients=" + clients + ", duration=" + duration + ", maxQuantity=" + maxQuantity + ", mix=" + mix
+                + ", timeout=" + timeout + ", jdbcUrl=" + jdbcUrl + ", hotSkuLeases=" + hotSkuLeases;
+    }
+
+    private static Map<Operation,Integer> mix(String spec) {
+        Map<Operation,Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] weight = part.split("=");
+            weights.put(Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return weights;
+    }
+
+    enum Operation {
+        RESERVE, RELEASE, CHECK, GET
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.microservice1.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram and outcome counts for one operation type
+final class OperationStats {
+
+    // How a request ended, seen from the client
+    enum Outcome {
+        OK,
+        //stock or reservation missing (507) or another 4xx, nothing was applied
+        REJECTED,
+        NOT_FOUND,
+        //5xx, timeout or connection failure: a mutation may or may not have been applied
+        AMBIGUOUS
+    }
+
+    //1 microsecond to 1 minute at 3 significant digits
+    private final Recorder latency = new Recorder(TimeUnit.MINUTES.toMicros(1), 3);
+    private final Map<Outcome,LongAdder> outcomes = new EnumMap<>(Outcome.class);
+    private final LongAdder retries = new LongAdder();
+    private final Histogram total = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+
+    OperationStats() {
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    void record(Outcome outcome, long elapsedNanos) {
+        latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), TimeUnit.MINUTES.toMicros(1)));
+        outcomes.get(outcome).increment();
+    }
+
+    void retried() {
+        retries.increment();
+    }
+
+    long count() {
+        return outcomes.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    // Folds everything recorded so far into the run total; called from one thread only
+    synchronized Histogram snapshot() {
+        total.add(latency.getIntervalHistogram());
+        return total;
+    }
+
+    Map<String,Object> summary(double seconds) {
+        Histogram histogram = snapshot();
+        Map<String,Object> summary = new LinkedHashMap<>();
+        summary.put("requests", count());
+        summary.put("throughputPerSecond", seconds > 0 ? count() / seconds : 0);
+        Map<String,Long> byOutcome = new LinkedHashMap<>();
+        outcomes.forEach((outcome, count) -> byOutcome.put(outcome.name(), count.sum()));
+        summary.put("outcomes", byOutcome);
+        summary.put("retries", retries.sum());
+        Map<String,Long> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", histogram.getValueAtPercentile(50));
+        percentiles.put("p90", histogram.getValueAtPercentile(90));
+        percentiles.put("p99", histogram.getValueAtPercentile(99));
+        percentiles.put("p99.9", histogram.getValueAtPercentile(99.9));
+        percentiles.put("max", histogram.getMaxValue());
+        summary.put("latencyMicros", percentiles);
+        return summary;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.microservice1.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Server side view of the run, straight from Postgres. Lock wait is sampled: every interval
+// the backends blocked on a lock are counted, so the total is an estimate of how long
+// statements spent queued on row locks across all connections.
+final class PostgresProbe implements AutoCloseable {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 50;
+
+    private final Connection connection;
+    private final long deadlocksBefore;
+    private final long rollbacksBefore;
+    private final AtomicLong lockWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitingBackends = new AtomicLong();
+    private final Thread sampler;
+    private volatile boolean running = true;
+
+    PostgresProbe(String url, String user, String password) throws SQLException {
+        this.connection = DriverManager.getConnection(url, user, password);
+        long[] counters = databaseCounters();
+        this.deadlocksBefore = counters[0];
+        this.rollbacksBefore = counters[1];
+        this.sampler = Thread.ofPlatform().daemon().name("postgres-probe").start(this::sample);
+    }
+
+    private void sample() {
+        String sql = "SELECT count(*) FROM pg_stat_activity WHERE datname = current_database() AND wait_event_type = 'Lock'";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            while (running) {
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    long waiting = rs.getLong(1);
+                    lockWaitMillis.addAndGet(waiting * SAMPLE_INTERVAL_MILLIS);
+                    maxWaitingBackends.accumulateAndGet(waiting, Math::max);
+                }
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            }
+        } catch (SQLException e) {
+            System.err.println("Lock wait sampling stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long[] databaseCounters() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT deadlocks, xact_rollback FROM pg_stat_database WHERE datname = current_database()")) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }
+    }
+
+    // sku -> {quantity, reservedQuantity} for every row of the run
+    Map<String,int[]> rows(String skuPrefix) throws SQLException {
+        Map<String,int[]> rows = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT sku, quantity, reserved_quantity FROM inventory WHERE sku LIKE ?")) {
+            statement.setString(1, skuPrefix + "%");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    rows.put(rs.getString(1), new int[]{rs.getInt(2), rs.getInt(3)});
+                }
+            }
+        }
+        return rows;
+    }
+
+    Map<String,Object> summary() throws SQLException {
+        stop();
+        long[] counters = databaseCounters();
+        Map<String,Object> summary = new LinkedHashMap<>();
+        summary.put("sampledLockWaitMillis", lockWaitMillis.get());
+        summary.put("maxBackendsWaitingOnLocks", maxWaitingBackends.get());
+        summary.put("deadlocks", counters[0] - deadlocksBefore);
+        summary.put("rolledBackTransactions", counters[1] - rollbacksBefore);
+        return summary;
+    }
+
+    private void stop() {
+        running = false;
+        try {
+            sampler.join(1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        stop();
+        connection.close();
+    }
+}
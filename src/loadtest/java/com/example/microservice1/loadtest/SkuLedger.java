@@ -0,0 +1,90 @@
+package com.example.microservice1.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Net effect of every acknowledged reserve and release per SKU, plus the units whose outcome
+// the client never learned. After the run each row must match the acknowledged net exactly,
+// give or take the ambiguous units.
+//
+// A release ships reserved stock: it lowers reservedQuantity and quantity together.
+final class SkuLedger {
+
+    private final List<String> skus;
+    private final int initialStock;
+    private final AtomicLongArray reserved;
+    private final AtomicLongArray released;
+    private final AtomicLongArray ambiguousReserved;
+    private final AtomicLongArray ambiguousReleased;
+
+    SkuLedger(List<String> skus, int initialStock) {
+        this.skus = skus;
+        this.initialStock = initialStock;
+        this.reserved = new AtomicLongArray(skus.size());
+        this.released = new AtomicLongArray(skus.size());
+        this.ambiguousReserved = new AtomicLongArray(skus.size());
+        this.ambiguousReleased = new AtomicLongArray(skus.size());
+    }
+
+    void reserved(int sku, int quantity, boolean acknowledged) {
+        (acknowledged ? reserved : ambiguousReserved).addAndGet(sku, quantity);
+    }
+
+    void released(int sku, int quantity, boolean acknowledged) {
+        (acknowledged ? released : ambiguousReleased).addAndGet(sku, quantity);
+    }
+
+    // Rows that disagree with the ledger; rows maps sku to {quantity, reservedQuantity}
+    List<String> verify(Map<String,int[]> rows, boolean hotSkuLeases) {
+        List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < skus.size(); i++) {
+            String sku = skus.get(i);
+            int[] row = rows.get(sku);
+            if (row == null) {
+                mismatches.add(sku + ": row missing");
+                continue;
+            }
+            long quantity = row[0];
+            long reservedQuantity = row[1];
+            long expectedQuantity = initialStock - released.get(i);
+            long expectedReserved = reserved.get(i) - released.get(i);
+            long unknownReserve = ambiguousReserved.get(i);
+            long unknownRelease = ambiguousReleased.get(i);
+
+            if (reservedQuantity > quantity) {
+                mismatches.add(sku + ": oversold, reserved " + reservedQuantity + " of " + quantity);
+            }
+            if (quantity > expectedQuantity || quantity < expectedQuantity - unknownRelease) {
+                mismatches.add(sku + ": quantity " + quantity + ", expected " + expectedQuantity
+                        + (unknownRelease > 0 ? " minus up to " + unknownRelease : ""));
+            }
+            //a hot SKU lease counts as reserved on the row until it is handed out or returned
+            long reservedCeiling = hotSkuLeases ? Long.MAX_VALUE : expectedReserved + unknownReserve;
+            if (reservedQuantity < expectedReserved - unknownRelease || reservedQuantity > reservedCeiling) {
+                mismatches.add(sku + ": reservedQuantity " + reservedQuantity + ", expected " + expectedReserved
+                        + (unknownReserve + unknownRelease > 0 ? " give or take " + (unknownReserve + unknownRelease) : ""));
+            }
+        }
+        return mismatches;
+    }
+
+    Map<String,Long> totals() {
+        Map<String,Long> totals = new LinkedHashMap<>();
+        totals.put("unitsReserved", sum(reserved));
+        totals.put("unitsReleased", sum(released));
+        totals.put("unitsAmbiguousReserve", sum(ambiguousReserved));
+        totals.put("unitsAmbiguousRelease", sum(ambiguousReleased));
+        return totals;
+    }
+
+    private static long sum(AtomicLongArray values) {
+        long sum = 0;
+        for (int i = 0; i < values.length(); i++) {
+            sum += values.get(i);
+        }
+        return sum;
+    }
+}
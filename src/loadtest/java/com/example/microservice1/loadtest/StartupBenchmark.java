@@ -0,0 +1,201 @@
+package com.example.microservice1.loadtest;
+
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// How long a new instance takes to serve, and how much memory it holds by then. Starts the
+// built jar repeatedly, as a plain jar and as the AOT + CDS build from the aot profile, and
+// measures from process start to the first HTTP response of any status (a 503 from the health
+// endpoint still means requests are being served) together with the resident set size at that
+// moment. Runs are sequential, so the instances do not compete for CPU.
+//
+// Command line options, all given as --name=value
+//   --jar         built jar; the aot variant runs from application/ next to it   target/Microservice1-0.0.1-SNAPSHOT.jar
+//   --variants    jar, aot-cds or both                                          jar,aot-cds
+//   --runs        starts per variant                                            5
+//   --url         polled until it answers                                       http://localhost:8081/actuator/health
+//   --timeout     per start                                                     120s
+//   --java-opts   extra JVM options for every start, space separated
+//   --app-args    application arguments for every start, space separated
+//   --out         JSON result file                                              target/startup-result.json
+//
+// RSS is read from /proc and left out on other platforms.
+public final class StartupBenchmark {
+
+    private static final Pattern STARTED = Pattern.compile("Started \\S+ in ([0-9.]+) seconds");
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
+    private final Map<String,String> options;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final String java = ProcessHandle.current().info().command().orElse("java");
+
+    private StartupBenchmark(Map<String,String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String,String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        new StartupBenchmark(options).run();
+    }
+
+    private void run() throws Exception {
+        Path jar = Path.of(option("jar", "target/Microservice1-0.0.1-SNAPSHOT.jar")).toAbsolutePath();
+        Path application = jar.resolveSibling("application");
+        int runs = Integer.parseInt(option("runs", "5"));
+        Path logs = jar.resolveSibling("startup-logs");
+        Files.createDirectories(logs);
+
+        Map<String,Object> result = new LinkedHashMap<>();
+        result.put("java", Runtime.version().toString());
+        for (String variant : option("variants", "jar,aot-cds").split(",")) {
+            List<String> command = new ArrayList<>(List.of(java));
+            Path directory;
+            switch (variant.trim()) {
+                case "jar" -> directory = jar.getParent();
+                case "aot-cds" -> {
+                    if (!Files.exists(application.resolve("application.jsa"))) {
+                        System.out.println("Skipping aot-cds: no " + application.resolve("application.jsa") + ", build with -Paot first");
+                        continue;
+                    }
+                    directory = application;
+                    command.addAll(List.of("-XX:SharedArchiveFile=application.jsa", "-Dspring.aot.enabled=true"));
+                }
+                default -> throw new IllegalArgumentException("Unknown variant " + variant);
+            }
+            command.addAll(split(option("java-opts", "")));
+            command.addAll(List.of("-jar", jar.getFileName().toString()));
+            command.addAll(split(option("app-args", "")));
+
+            List<Map<String,Object>> starts = new ArrayList<>();
+            for (int i = 1; i <= runs; i++) {
+                Map<String,Object> start = start(command, directory, logs.resolve(variant.trim() + "-" + i + ".log"));
+                System.out.println(variant.trim() + " #" + i + ": " + start);
+                starts.add(start);
+            }
+            Map<String,Object> summary = new LinkedHashMap<>();
+            summary.put("command", String.join(" ", command));
+            summary.put("firstResponseMillis", stats(starts, "firstResponseMillis"));
+            summary.put("rssMiB", stats(starts, "rssMiB"));
+            summary.put("reportedStartupSeconds", stats(starts, "reportedStartupSeconds"));
+            summary.put("starts", starts);
+            result.put(variant.trim(), summary);
+        }
+
+        String json = jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result);
+        System.out.println(json);
+        Path out = Path.of(option("out", "target/startup-result.json"));
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, json);
+    }
+
+    private Map<String,Object> start(List<String> command, Path directory, Path log) throws Exception {
+        URI url = URI.create(option("url", "http://localhost:8081/actuator/health"));
+        long timeout = Duration.parse("PT" + option("timeout", "120s").toUpperCase()).toNanos();
+        if (answers(url)) {
+            throw new IllegalStateException(url + " already answers, stop whatever is listening there first");
+        }
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            while (!answers(url)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Exited with " + process.exitValue() + " before serving, see " + log);
+                }
+                if (System.nanoTime() - started > timeout) {
+                    throw new IllegalStateException("Not serving after " + option("timeout", "120s") + ", see " + log);
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            long firstResponse = System.nanoTime() - started;
+            Map<String,Object> start = new LinkedHashMap<>();
+            start.put("firstResponseMillis", TimeUnit.NANOSECONDS.toMillis(firstResponse));
+            start.put("rssMiB", rssMiB(process.pid()));
+            start.put("reportedStartupSeconds", reportedStartupSeconds(log));
+            return start;
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private boolean answers(URI url) throws InterruptedException {
+        try {
+            http.send(HttpRequest.newBuilder(url).timeout(Duration.ofSeconds(1)).GET().build(), HttpResponse.BodyHandlers.discarding());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Long rssMiB(long pid) throws IOException {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) {
+            return null;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+            }
+        }
+        return null;
+    }
+
+    //the context's own figure, which leaves out JVM start and the time until the port is polled
+    private static Double reportedStartupSeconds(Path log) throws IOException {
+        Matcher matcher = STARTED.matcher(Files.readString(log));
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) : null;
+    }
+
+    private static Map<String,Object> stats(List<Map<String,Object>> starts, String key) {
+        double[] values = starts.stream().map(start -> start.get(key)).filter(value -> value != null)
+                .mapToDouble(value -> ((Number) value).doubleValue()).sorted().toArray();
+        Map<String,Object> stats = new LinkedHashMap<>();
+        if (values.length > 0) {
+            stats.put("min", values[0]);
+            stats.put("median", values[values.length / 2]);
+            stats.put("max", values[values.length - 1]);
+        }
+        return stats;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static List<String> split(String value) {
+        return value.isBlank() ? List.of() : Arrays.asList(value.trim().split("\\s+"));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.microservice1.loadtest;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// Picks SKU indexes with a Zipf distribution: rank k is drawn with probability proportional
+// to 1 / k^exponent, so with the default exponent a handful of SKUs take most of the traffic,
+// the way a flash sale does.
+final class ZipfianSkus {
+
+    private final double[] cumulative;
+
+    ZipfianSkus(int skus, double exponent) {
+        if (skus < 1) {
+            throw new IllegalArgumentException("Need at least one SKU");
+        }
+        cumulative = new double[skus];
+        double sum = 0;
+        for (int rank = 1; rank <= skus; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < skus; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    // 0 is the hottest SKU
+    int next(RandomGenerator random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+    // Share of all draws that land on the given index
+    double share(int index) {
+        return index == 0 ? cumulative[0] : cumulative[index] - cumulative[index - 1];
+    }
+}
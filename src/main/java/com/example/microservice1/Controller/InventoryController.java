@@ -1,17 +1,42 @@
 package com.example.microservice1.Controller;
 
 
+import com.example.microservice1.Dto.AvailabilityRequest;
+import com.example.microservice1.Dto.AvailabilityResponse;
+import com.example.microservice1.Dto.BatchReservationRequest;
+import com.example.microservice1.Dto.BatchReservationResponse;
+import com.example.microservice1.Dto.ImportReport;
+import com.example.microservice1.Dto.InventoryPage;
 import com.example.microservice1.Dto.InventoryRequest;
+import com.example.microservice1.Dto.LowStockChangePage;
 import com.example.microservice1.Dto.InventoryResponse;
+import com.example.microservice1.Dto.ReservationResponse;
+import com.example.microservice1.Dto.StockLevelResponse;
+import com.example.microservice1.Dto.StockMovementResponse;
+import com.example.microservice1.Dto.WarehouseSummaryResponse;
+import com.example.microservice1.Service.IdempotencyStore;
+import com.example.microservice1.Service.InventoryImportService;
+import com.example.microservice1.Service.InventoryMetrics;
+import com.example.microservice1.Service.InventoryQueryService;
 import com.example.microservice1.Service.InventoryService;
+import com.example.microservice1.Service.LowStockFeed;
+import com.example.microservice1.Service.ReserveBatcher;
+import com.example.microservice1.Service.StockLedger;
+import com.example.microservice1.Service.WarehouseSummaryService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
@@ -23,42 +48,160 @@ public class InventoryController {
 
     private final InventoryService inventoryService;
 
+    private final InventoryQueryService inventoryQueryService;
+
+    private final LowStockFeed lowStockFeed;
+
+    private final InventoryImportService inventoryImportService;
+
+    private final WarehouseSummaryService warehouseSummaryService;
+
+    private final InventoryMetrics inventoryMetrics;
+
+    private final StockLedger stockLedger;
+
+    //concurrent reserve calls for the same SKU are applied together
+    private final ReserveBatcher reserveBatcher;
+
+    //mutating endpoints take an optional Idempotency-Key header; a repeat gets the first response back
+    private final IdempotencyStore idempotencyStore;
+
     @PostMapping
-    public ResponseEntity<InventoryResponse> createInventory(@Valid @RequestBody InventoryRequest request){
-        InventoryResponse response = inventoryService.createInventory(request);
+    public ResponseEntity<InventoryResponse> createInventory(
+            @Valid @RequestBody InventoryRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey
+    ){
+        InventoryResponse response = idempotencyStore.execute(idempotencyKey, "create", request, InventoryResponse.class,
+                () -> inventoryService.createInventory(request));
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    //bodies are read as a stream, rows that fail validation are reported without stopping the load
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<ImportReport> importCsv(InputStream body) throws IOException {
+        return ResponseEntity.ok(inventoryImportService.importCsv(body));
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ImportReport> importNdjson(InputStream body) throws IOException {
+        return ResponseEntity.ok(inventoryImportService.importNdjson(body));
+    }
+
     @GetMapping("/{sku}")
     public ResponseEntity<InventoryResponse> getInventoryBySku(@PathVariable String sku){
-        InventoryResponse response = inventoryService.getInventoryBySku(sku);
+        InventoryResponse response = inventoryMetrics.record("get", sku, () -> inventoryService.getInventoryBySku(sku));
         return ResponseEntity.ok(response);
     }
 
     @GetMapping
     public ResponseEntity<List<InventoryResponse>> getAllInventory(){
-        List<InventoryResponse> response = inventoryService.getAllInventory();
+        List<InventoryResponse> response = inventoryQueryService.getAllInventory();
         return ResponseEntity.ok(response);
     }
 
     @GetMapping("/warehouse/{warehouseId}")
     public ResponseEntity<List<InventoryResponse>> getInventoryByWareHouse(@PathVariable String warehouseId){
-        List<InventoryResponse>response = inventoryService.getInventoryByWarehouse(warehouseId);
+        List<InventoryResponse>response = inventoryQueryService.getInventoryByWarehouse(warehouseId);
         return  ResponseEntity.ok(response);
 
     }
+    // Totals from the pre-aggregated summary, one row read per warehouse
+    @GetMapping("/warehouse/{warehouseId}/summary")
+    public ResponseEntity<WarehouseSummaryResponse> getWarehouseSummary(@PathVariable String warehouseId){
+        return ResponseEntity.ok(warehouseSummaryService.getSummary(warehouseId));
+    }
+
+    @GetMapping("/warehouse/summary")
+    public ResponseEntity<List<WarehouseSummaryResponse>> getWarehouseSummaries(){
+        return ResponseEntity.ok(warehouseSummaryService.getSummaries());
+    }
+
     @GetMapping("/low-stock")
     public ResponseEntity<List<InventoryResponse>> getLowStocksItems(){
-        List<InventoryResponse>response = inventoryService.getLowStockItems();
+        List<InventoryResponse>response = inventoryQueryService.getLowStockItems();
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/page")
+    public ResponseEntity<InventoryPage> getInventoryPage(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit
+    ){
+        return ResponseEntity.ok(inventoryQueryService.getInventoryPage(after, limit));
+    }
+
+    @GetMapping("/warehouse/{warehouseId}/page")
+    public ResponseEntity<InventoryPage> getWarehousePage(
+            @PathVariable String warehouseId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit
+    ){
+        return ResponseEntity.ok(inventoryQueryService.getWarehousePage(warehouseId, after, limit));
+    }
+
+    @GetMapping("/low-stock/page")
+    public ResponseEntity<InventoryPage> getLowStockPage(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit
+    ){
+        return ResponseEntity.ok(inventoryQueryService.getLowStockPage(after, limit));
+    }
+
+    @GetMapping("/low-stock/changes")
+    public ResponseEntity<LowStockChangePage> getLowStockChanges(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit
+    ){
+        return ResponseEntity.ok(lowStockFeed.changesSince(after, limit));
+    }
+
+    // Stock as it stood at a past instant (ISO-8601), e.g. for audit or a disputed order
+    @GetMapping("/{sku}/stock-at")
+    public ResponseEntity<StockLevelResponse> getStockAt(
+            @PathVariable String sku,
+            @RequestParam Instant at,
+            @RequestParam(required = false) String warehouseId
+    ){
+        return ResponseEntity.ok(stockLedger.stockAt(sku, warehouseId, at));
+    }
+
+    @GetMapping("/{sku}/movements")
+    public ResponseEntity<List<StockMovementResponse>> getMovements(
+            @PathVariable String sku,
+            @RequestParam Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "100") int limit
+    ){
+        return ResponseEntity.ok(stockLedger.movements(sku, from, to == null ? Instant.now() : to, limit));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamInventory(){
+        return ndjson(inventoryQueryService::streamAll);
+    }
+
+    @GetMapping(value = "/warehouse/{warehouseId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamWarehouse(@PathVariable String warehouseId){
+        return ndjson(out -> inventoryQueryService.streamByWarehouse(warehouseId, out));
+    }
+
+    @GetMapping(value = "/low-stock/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamLowStock(){
+        return ndjson(inventoryQueryService::streamLowStockItems);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> ndjson(StreamingResponseBody body){
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @PutMapping("/{sku}/quantity")
     public ResponseEntity<InventoryResponse> updateQuantity(
             @PathVariable String sku,
-            @RequestBody Map<String,Integer> request
+            @RequestBody Map<String,Integer> request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey
     ){
-        InventoryResponse response = inventoryService.updateQuantity(sku,request.get("quantity"));
+        InventoryResponse response = idempotencyStore.execute(idempotencyKey, "update:" + sku, request, InventoryResponse.class,
+                () -> inventoryMetrics.record("update", sku, () -> inventoryService.updateQuantity(sku,request.get("quantity"))));
         return ResponseEntity.ok(response);
     }
 
@@ -67,26 +210,65 @@ public class InventoryController {
             @PathVariable String sku,
             @RequestParam Integer quantity
     ){
-        boolean available = inventoryService.checkAvailability(sku,quantity);
+        boolean available = inventoryMetrics.record("check", sku, () -> inventoryService.checkAvailability(sku,quantity));
         return ResponseEntity.ok(Map.of("available",available));
     }
 
+    //whole cart at once, per SKU available quantities; unknown SKUs are listed rather than failing the call
+    @PostMapping("/availability")
+    public ResponseEntity<AvailabilityResponse> checkAvailability(@Valid @RequestBody AvailabilityRequest request){
+        AvailabilityResponse response = inventoryMetrics.record("check_batch", null, () -> inventoryService.checkAvailability(request.getItems()));
+        return ResponseEntity.ok(response);
+    }
+
+    //the hold expires after ttlSeconds, or inventory.reservation.ttl when not given
     @PostMapping("/{sku}/reserve")
-    public ResponseEntity<Void> reserveStock(
+    public ResponseEntity<ReservationResponse> reserveStock(
             @PathVariable String sku,
-            @RequestBody Map<String,Integer> request
+            @RequestBody Map<String,Integer> request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey
+    ){
+        Integer ttlSeconds = request.get("ttlSeconds");
+        Duration ttl = ttlSeconds == null ? null : Duration.ofSeconds(ttlSeconds);
+        ReservationResponse response = idempotencyStore.execute(idempotencyKey, "reserve:" + sku, request, ReservationResponse.class,
+                () -> inventoryMetrics.record("reserve", sku, () -> reserveBatcher.reserve(sku,request.get("quantity"),ttl)));
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/reserve")
+    public ResponseEntity<BatchReservationResponse> reserveBatch(
+            @Valid @RequestBody BatchReservationRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey
     ){
-        inventoryService.reserveStock(sku,request.get("quantity"));
-        return ResponseEntity.ok().build();
+        BatchReservationResponse response = idempotencyStore.execute(idempotencyKey, "reserve_batch", request, BatchReservationResponse.class,
+                () -> inventoryMetrics.record("reserve_batch", null, () -> inventoryService.reserveBatch(request)));
+        return ResponseEntity.ok(response);
     }
 
     @PostMapping("/{sku}/release")
-    public ResponseEntity<Void> releaseStock(
+    public ResponseEntity<InventoryResponse> releaseStock(
             @PathVariable String sku,
-            @RequestBody Map<String,Integer> request
+            @RequestBody Map<String,Integer> request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey
     ){
-        inventoryService.releaseReservedStock(sku,request.get("quantity"));
-        return ResponseEntity.ok().build();
+        InventoryResponse response = idempotencyStore.execute(idempotencyKey, "release:" + sku, request, InventoryResponse.class,
+                () -> inventoryMetrics.record("release", sku, () -> inventoryService.releaseReservedStock(sku,request.get("quantity"))));
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/reservations/{id}")
+    public ResponseEntity<ReservationResponse> getReservation(@PathVariable Long id){
+        return ResponseEntity.ok(inventoryService.getReservation(id));
+    }
+
+    @PostMapping("/reservations/{id}/release")
+    public ResponseEntity<InventoryResponse> releaseReservation(
+            @PathVariable Long id,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey
+    ){
+        InventoryResponse response = idempotencyStore.execute(idempotencyKey, "release_reservation:" + id, null, InventoryResponse.class,
+                () -> inventoryMetrics.record("release", null, () -> inventoryService.releaseReservation(id)));
+        return ResponseEntity.ok(response);
     }
 
 
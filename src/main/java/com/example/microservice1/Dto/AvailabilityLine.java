@@ -0,0 +1,15 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityLine {
+    private String sku;
+    private int requested;
+    private int availableQuantity;
+    private boolean available;
+}
@@ -0,0 +1,17 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityResponse {
+    //true when every line is available and every SKU exists
+    private boolean allAvailable;
+    private List<AvailabilityLine> lines;
+    private List<String> notFound;
+}
@@ -0,0 +1,29 @@
+package com.example.microservice1.Dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//Reserves every line of an order in one call, all or nothing
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchReservationRequest {
+
+    @NotBlank(message = "Order Id is required")
+    private String orderId;
+
+    @NotEmpty(message = "At least one item is required")
+    private List<@Valid ReservationItem> items;
+
+    //how long the holds last before they expire, inventory.reservation.ttl when not given
+    @Positive(message = "TTL must be positive")
+    private Integer ttlSeconds;
+}
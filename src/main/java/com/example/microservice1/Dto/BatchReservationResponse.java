@@ -0,0 +1,18 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchReservationResponse {
+    private String orderId;
+    private List<ReservationItem> items;
+    private int totalUnits;
+    //one hold per SKU of the order
+    private List<ReservationResponse> reservations;
+}
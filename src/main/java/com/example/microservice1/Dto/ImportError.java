@@ -0,0 +1,14 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportError {
+    private long line;
+    private String sku;
+    private String message;
+}
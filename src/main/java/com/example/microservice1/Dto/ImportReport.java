@@ -0,0 +1,22 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//Outcome of a bulk import; errors is capped, rowsRejected is the full count
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportReport {
+    private long rowsRead;
+    private long rowsUpserted;
+    private long rowsRejected;
+    private int chunks;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    private List<ImportError> errors;
+}
@@ -0,0 +1,17 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//One keyset page; pass nextCursor back as "after" to get the next one, null means no more rows
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InventoryPage {
+    private List<InventoryResponse> items;
+    private Long nextCursor;
+}
@@ -1,5 +1,6 @@
 package com.example.microservice1.Dto;
 
+import com.example.microservice1.config.VersionedCacheValue;
 import com.example.microservice1.model.Inventory;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -11,7 +12,7 @@ import java.time.LocalDateTime;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class InventoryResponse {
+public class InventoryResponse implements VersionedCacheValue {
     private Long id;
     private String sku;
     private String productName;
@@ -28,6 +29,7 @@ public class InventoryResponse {
     private boolean Lowstock;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private Long version;
 
     public static InventoryResponse fromEntity(Inventory inventory){
         InventoryResponse response =  new InventoryResponse();
@@ -42,9 +44,11 @@ public class InventoryResponse {
         response.setMaxStockLevel(inventory.getMaxStockLevel());
         response.setUnitPrice(inventory.getUnitPrice());
         response.setLocation(inventory.getLocation());
+        response.setStatus(inventory.getStatus() == null ? null : inventory.getStatus().name());
         response.setLowstock(inventory.isLowStock());
         response.setCreatedAt(inventory.getCreatedAt());
         response.setUpdatedAt(inventory.getUpdatedAt());
+        response.setVersion(inventory.getVersion());
         return response;
 
     }
@@ -0,0 +1,26 @@
+package com.example.microservice1.Dto;
+
+import com.example.microservice1.model.LowStockTransition;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LowStockChange {
+    private Long id;
+    private String sku;
+    private String warehouseId;
+    private boolean lowStock;
+    private Integer quantity;
+    private Integer reorderLevel;
+    private Instant occurredAt;
+
+    public static LowStockChange fromEntity(LowStockTransition transition){
+        return new LowStockChange(transition.getId(), transition.getSku(), transition.getWarehouseId(),
+                transition.isLowStock(), transition.getQuantity(), transition.getReorderLevel(), transition.getOccurredAt());
+    }
+}
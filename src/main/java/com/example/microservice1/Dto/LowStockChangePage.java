@@ -0,0 +1,17 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//nextCursor is always returned; poll again with it as "after" to continue the feed
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LowStockChangePage {
+    private List<LowStockChange> items;
+    private Long nextCursor;
+}
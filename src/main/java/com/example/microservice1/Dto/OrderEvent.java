@@ -0,0 +1,30 @@
+package com.example.microservice1.Dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//Inbound from the order service on order-placed and order-cancelled, JSON keyed by orderId.
+//A cancellation only needs the SKUs; quantities are taken from the order's holds
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent {
+
+    @NotBlank(message = "Order Id is required")
+    private String orderId;
+
+    @NotEmpty(message = "At least one item is required")
+    private List<@Valid ReservationItem> items;
+
+    //how long the holds last, inventory.reservation.ttl when not given; ignored on cancellation
+    @Positive(message = "TTL must be positive")
+    private Integer ttlSeconds;
+}
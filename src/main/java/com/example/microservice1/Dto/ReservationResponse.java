@@ -0,0 +1,25 @@
+package com.example.microservice1.Dto;
+
+import com.example.microservice1.model.Reservation;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReservationResponse {
+    private Long id;
+    private String sku;
+    private Integer quantity;
+    private String orderId;
+    private Instant createdAt;
+    private Instant expiresAt;
+
+    public static ReservationResponse fromEntity(Reservation reservation){
+        return new ReservationResponse(reservation.getId(), reservation.getSku(), reservation.getQuantity(),
+                reservation.getOrderId(), reservation.getCreatedAt(), reservation.getExpiresAt());
+    }
+}
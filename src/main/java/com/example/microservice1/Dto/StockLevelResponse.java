@@ -0,0 +1,24 @@
+package com.example.microservice1.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//Stock of a SKU as of `at`, rebuilt from the snapshot taken at snapshotAt (null when replayed
+//from the row's creation) plus the movements after it
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockLevelResponse {
+    private String sku;
+    private String warehouseId;
+    private Instant at;
+    private Integer quantity;
+    private Integer reservedQuantity;
+    private Integer availableQuantity;
+    private Long version;
+    private Instant snapshotAt;
+    private Integer movementsReplayed;
+}
@@ -0,0 +1,28 @@
+package com.example.microservice1.Dto;
+
+import com.example.microservice1.Service.StockLedger;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockMovementResponse {
+    private Instant occurredAt;
+    private String sku;
+    private String warehouseId;
+    private String kind;
+    private Integer quantityDelta;
+    private Integer reservedDelta;
+    private Long version;
+    private String orderId;
+    private Long reservationId;
+
+    public static StockMovementResponse fromMovement(StockLedger.Movement movement){
+        return new StockMovementResponse(movement.occurredAt(), movement.sku(), movement.warehouseId(), movement.kind().name(),
+                movement.quantityDelta(), movement.reservedDelta(), movement.version(), movement.orderId(), movement.reservationId());
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.microservice1.Dto;
+
+import com.example.microservice1.model.WarehouseSummary;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WarehouseSummaryResponse {
+    private String warehouseId;
+    private long skuCount;
+    private long units;
+    private long reservedUnits;
+    private long availableUnits;
+    //sum of quantity * unitPrice
+    private BigDecimal stockValue;
+    private long lowStockCount;
+    private Instant updatedAt;
+    private Instant reconciledAt;
+
+    public static WarehouseSummaryResponse fromEntity(WarehouseSummary summary){
+        return new WarehouseSummaryResponse(summary.getWarehouseId(), summary.getSkuCount(), summary.getUnits(),
+                summary.getReservedUnits(), summary.getUnits() - summary.getReservedUnits(),
+                BigDecimal.valueOf(summary.getStockValueCents(), 2), summary.getLowStockCount(),
+                summary.getUpdatedAt(), summary.getReconciledAt());
+    }
+}
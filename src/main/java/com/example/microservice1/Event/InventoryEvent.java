@@ -0,0 +1,96 @@
+package com.example.microservice1.Event;
+
+import com.example.microservice1.model.Inventory;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//Stock change for a single SKU as published on the inventory-* topics. Carries the delta
+//and the resulting state, never the whole entity.
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryEvent {
+
+    private EventType type;
+    private String sku;
+    //set only for the batch types (ORDER_RESERVED, BULK_UPSERTED, ORDER_REJECTED), which carry one line per SKU
+    //instead of the fields above; orderId then identifies the order or import chunk
+    private String orderId;
+    private List<InventoryEvent> lines;
+    private int delta;
+    private int quantity;
+    private int reservedQuantity;
+    private int availableQuantity;
+    private long version;
+    private long occurredAt;
+
+    public static InventoryEvent of(EventType type, Inventory inventory, int delta){
+        return of(type, inventory.getSku(), delta, inventory.getQuantity(), inventory.getReservedQuantity(),
+                inventory.getAvailableQuantity(), inventory.getVersion());
+    }
+
+    public static InventoryEvent of(EventType type, String sku, int delta, int quantity, int reservedQuantity,
+                                    int availableQuantity, Long version){
+        InventoryEvent event = new InventoryEvent();
+        event.setType(type);
+        event.setSku(sku);
+        event.setDelta(delta);
+        event.setQuantity(quantity);
+        event.setReservedQuantity(reservedQuantity);
+        event.setAvailableQuantity(availableQuantity);
+        event.setVersion(version == null ? 0 : version);
+        event.setOccurredAt(System.currentTimeMillis());
+        return event;
+    }
+
+    public static InventoryEvent orderReserved(String orderId, List<InventoryEvent> lines){
+        return batch(EventType.ORDER_RESERVED, orderId, lines);
+    }
+
+    public static InventoryEvent orderRejected(String orderId, List<InventoryEvent> lines){
+        return batch(EventType.ORDER_REJECTED, orderId, lines);
+    }
+
+    public static InventoryEvent bulkUpserted(String chunkId, List<InventoryEvent> lines){
+        return batch(EventType.BULK_UPSERTED, chunkId, lines);
+    }
+
+    private static InventoryEvent batch(EventType type, String id, List<InventoryEvent> lines){
+        InventoryEvent event = new InventoryEvent();
+        event.setType(type);
+        event.setOrderId(id);
+        event.setLines(lines);
+        event.setOccurredAt(System.currentTimeMillis());
+        return event;
+    }
+
+    public enum EventType{
+        CREATED(null), UPDATED(null), RESERVED(null), RELEASED(null),
+        ORDER_RESERVED(RESERVED), BULK_UPSERTED(UPDATED),
+        //a hold ran past its TTL; delta is the reserved stock handed back, quantity is unchanged
+        EXPIRED(null),
+        //an order-placed line that could not be met; delta is the quantity asked for, nothing changed
+        REJECTED(null), ORDER_REJECTED(REJECTED),
+        //an order was cancelled; delta is the reserved stock handed back, quantity is unchanged
+        CANCELLED(null);
+
+        //for batch types, the type of each line
+        private final EventType lineType;
+
+        EventType(EventType lineType){
+            this.lineType = lineType;
+        }
+
+        public boolean isBatch(){
+            return lineType != null;
+        }
+
+        public EventType getLineType(){
+            return lineType;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.microservice1.Event;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed binary layout for InventoryEvent, schema version 1:
+//
+//   byte    magic 0x49 ('I')
+//   byte    schema version
+//   byte    event type (ordinal)
+//   SKU event:     string sku, zigzag delta, varint quantity, varint reserved,
+//                  zigzag available, varlong version
+//   batch event:   string orderId, varint line count, then one SKU event body per line
+//   long    occurredAt, epoch millis, big endian
+//
+// Strings are a varint byte length followed by UTF-8. A typical SKU event is around 25
+// bytes against several hundred for the JSON entity it replaces.
+public final class InventoryEventCodec {
+
+    static final byte MAGIC = 0x49;
+    static final byte SCHEMA_VERSION = 1;
+
+    private static final InventoryEvent.EventType[] TYPES = InventoryEvent.EventType.values();
+
+    private InventoryEventCodec(){
+    }
+
+    public static byte[] encode(InventoryEvent event){
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+        out.write(MAGIC);
+        out.write(SCHEMA_VERSION);
+        out.write(event.getType().ordinal());
+        if(event.getType().isBatch()){
+            writeString(out, event.getOrderId());
+            List<InventoryEvent> lines = event.getLines();
+            writeVarLong(out, lines.size());
+            for(InventoryEvent line : lines){
+                writeSkuBody(out, line);
+            }
+        } else {
+            writeSkuBody(out, event);
+        }
+        long occurredAt = event.getOccurredAt();
+        for(int shift = 56; shift >= 0; shift -= 8){
+            out.write((int) (occurredAt >>> shift));
+        }
+        return out.toByteArray();
+    }
+
+    public static InventoryEvent decode(byte[] data){
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try{
+            if(in.get() != MAGIC){
+                throw new SerializationException("Not an inventory event");
+            }
+            byte version = in.get();
+            if(version != SCHEMA_VERSION){
+                throw new SerializationException("Unsupported inventory event schema version " + version);
+            }
+            InventoryEvent.EventType type = TYPES[in.get()];
+            InventoryEvent event;
+            if(type.isBatch()){
+                String orderId = readString(in);
+                int count = (int) readVarLong(in);
+                List<InventoryEvent> lines = new ArrayList<>(count);
+                for(int i = 0; i < count; i++){
+                    InventoryEvent line = readSkuBody(in);
+                    line.setType(type.getLineType());
+                    lines.add(line);
+                }
+                event = new InventoryEvent();
+                event.setOrderId(orderId);
+                event.setLines(lines);
+            } else {
+                event = readSkuBody(in);
+            }
+            event.setType(type);
+            event.setOccurredAt(in.getLong());
+            if(event.getLines() != null){
+                event.getLines().forEach(line -> line.setOccurredAt(event.getOccurredAt()));
+            }
+            return event;
+        } catch (RuntimeException e){
+            if(e instanceof SerializationException){
+                throw e;
+            }
+            throw new SerializationException("Malformed inventory event", e);
+        }
+    }
+
+    private static void writeSkuBody(ByteArrayOutputStream out, InventoryEvent event){
+        writeString(out, event.getSku());
+        writeVarLong(out, zigzag(event.getDelta()));
+        writeVarLong(out, event.getQuantity());
+        writeVarLong(out, event.getReservedQuantity());
+        writeVarLong(out, zigzag(event.getAvailableQuantity()));
+        writeVarLong(out, event.getVersion());
+    }
+
+    private static InventoryEvent readSkuBody(ByteBuffer in){
+        InventoryEvent event = new InventoryEvent();
+        event.setSku(readString(in));
+        event.setDelta((int) unzigzag(readVarLong(in)));
+        event.setQuantity((int) readVarLong(in));
+        event.setReservedQuantity((int) readVarLong(in));
+        event.setAvailableQuantity((int) unzigzag(readVarLong(in)));
+        event.setVersion(readVarLong(in));
+        return event;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value){
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in){
+        int length = (int) readVarLong(in);
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value){
+        while((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in){
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new SerializationException("Varint is too long");
+    }
+
+    private static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
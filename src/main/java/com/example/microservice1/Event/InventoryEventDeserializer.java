@@ -0,0 +1,11 @@
+package com.example.microservice1.Event;
+
+import org.apache.kafka.common.serialization.Deserializer;
+
+public class InventoryEventDeserializer implements Deserializer<InventoryEvent> {
+
+    @Override
+    public InventoryEvent deserialize(String topic, byte[] data){
+        return data == null ? null : InventoryEventCodec.decode(data);
+    }
+}
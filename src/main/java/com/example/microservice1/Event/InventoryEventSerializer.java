@@ -0,0 +1,11 @@
+package com.example.microservice1.Event;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+public class InventoryEventSerializer implements Serializer<InventoryEvent> {
+
+    @Override
+    public byte[] serialize(String topic, InventoryEvent data){
+        return data == null ? null : InventoryEventCodec.encode(data);
+    }
+}
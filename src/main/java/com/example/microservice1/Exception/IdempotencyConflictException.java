@@ -0,0 +1,12 @@
+package com.example.microservice1.Exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//A request with the same Idempotency-Key is still running
+@ResponseStatus(HttpStatus.CONFLICT)
+public class IdempotencyConflictException extends RuntimeException {
+    public IdempotencyConflictException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.microservice1.Exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//An Idempotency-Key was sent again with a different request
+@ResponseStatus(HttpStatus.UNPROCESSABLE_CONTENT)
+public class IdempotencyKeyReuseException extends RuntimeException {
+    public IdempotencyKeyReuseException(String message){
+        super(message);
+    }
+}
@@ -3,15 +3,21 @@ package com.example.microservice1.Repository;
 
 import com.example.microservice1.model.Inventory;
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface InventoryRepository extends JpaRepository<Inventory,Long> {
@@ -21,23 +27,77 @@ public interface InventoryRepository extends JpaRepository<Inventory,Long> {
 
     Optional<Inventory>findBySku(String sku);
 
+    boolean existsBySku(String sku);
+
+    List<Inventory> findBySkuIn(Collection<String> skus);
+
     List<Inventory> findByWarehouseId(String warehouseId);
 
-    @Query("SELECT i FROM Inventory i WHERE i.quantity <= i.reorderLevel And i.InventoryStatus='ACTIVE'")
+    @Query("SELECT i FROM Inventory i WHERE i.lowStock = true AND i.status = com.example.microservice1.model.Inventory.InventoryStatus.ACTIVE")
     List<Inventory> findLowStocksItems();
 
-    @Query("SELECT i FROM Inventory i WHERE i.warehouseId = :warehouseId AND i.InventoryStatus = 'ACTIVE'")
+    @Query("SELECT i FROM Inventory i WHERE i.warehouseId = :warehouseId AND i.status = com.example.microservice1.model.Inventory.InventoryStatus.ACTIVE")
     List<Inventory> findActiveByWarehouse(@Param("warehouseId") String warehouseId);
 
+    // Keyset pages: seek past the last id seen instead of OFFSET, so every page costs the same
+    List<Inventory> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    List<Inventory> findByWarehouseIdAndIdGreaterThanOrderByIdAsc(String warehouseId, Long afterId, Limit limit);
+
+    @Query("SELECT i FROM Inventory i WHERE i.lowStock = true AND i.status = com.example.microservice1.model.Inventory.InventoryStatus.ACTIVE " +
+            "AND i.id > :afterId ORDER BY i.id")
+    List<Inventory> findLowStockItemsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // Streams are read through a server side cursor in fetch-size chunks; read only means
+    // Hibernate keeps no snapshot for dirty checking
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT i FROM Inventory i ORDER BY i.id")
+    Stream<Inventory> streamAll();
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT i FROM Inventory i WHERE i.warehouseId = :warehouseId ORDER BY i.id")
+    Stream<Inventory> streamByWarehouseId(@Param("warehouseId") String warehouseId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT i FROM Inventory i WHERE i.lowStock = true AND i.status = com.example.microservice1.model.Inventory.InventoryStatus.ACTIVE ORDER BY i.id")
+    Stream<Inventory> streamLowStockItems();
+
+    // Single-statement reservation: the WHERE clause is the stock check, so the affected row
+    // count alone says whether the reservation was granted. The version is bumped so cached
+    // copies can still be ordered, but nobody has to read it first.
     @Modifying(clearAutomatically = true)
-    @Query("UPDATE Inventory i SET i.reservedQuantity = i.reservedQuantity+ :quantity WHERE i.sku= :sku AND i.quantity - i.reservedQuantity>= :quantity")
+    @Query("UPDATE Inventory i SET i.reservedQuantity = i.reservedQuantity + :quantity, i.version = i.version + 1, i.updatedAt = LOCAL DATETIME " +
+            "WHERE i.sku = :sku AND i.quantity - i.reservedQuantity >= :quantity")
     int reserveStock(@Param("sku") String sku, @Param("quantity") Integer quantity);
 
+    // Several reservations applied as one statement (ReserveBatcher); the version still moves
+    // once per reservation, so each one's event carries a version of its own
     @Modifying(clearAutomatically = true)
-    @Query("UPDATE Inventory  i SET i.reservedQuantity = i.reservedQuantity - :quantity, i.quantity = i.quantity - :quantity WHERE i.sku=:sku")
-    int releaseStock(@Param("sku") String sku, @Param("quantity") Integer quantity);
-
+    @Query("UPDATE Inventory i SET i.reservedQuantity = i.reservedQuantity + :quantity, i.version = i.version + :reservations, i.updatedAt = LOCAL DATETIME " +
+            "WHERE i.sku = :sku AND i.quantity - i.reservedQuantity >= :quantity")
+    int reserveStockCoalesced(@Param("sku") String sku, @Param("quantity") Integer quantity, @Param("reservations") Long reservations);
 
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Inventory i SET i.reservedQuantity = i.reservedQuantity - :quantity, i.quantity = i.quantity - :quantity, " +
+            "i.lowStock = CASE WHEN i.quantity - :quantity <= i.reorderLevel THEN true ELSE false END, " +
+            "i.version = i.version + 1, i.updatedAt = LOCAL DATETIME " +
+            "WHERE i.sku = :sku AND i.reservedQuantity >= :quantity")
+    int releaseStock(@Param("sku") String sku, @Param("quantity") Integer quantity);
 
+    // Hands reserved stock back to the row without selling it: unused hot SKU lease and expired
+    // reservations. Unlike releaseStock the on-hand quantity is untouched
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Inventory i SET i.reservedQuantity = i.reservedQuantity - :quantity, i.version = i.version + 1, i.updatedAt = LOCAL DATETIME " +
+            "WHERE i.sku = :sku AND i.reservedQuantity >= :quantity")
+    int returnLease(@Param("sku") String sku, @Param("quantity") Integer quantity);
 
 }
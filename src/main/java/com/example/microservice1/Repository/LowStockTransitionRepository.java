@@ -0,0 +1,14 @@
+package com.example.microservice1.Repository;
+
+import com.example.microservice1.model.LowStockTransition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface LowStockTransitionRepository extends JpaRepository<LowStockTransition,Long> {
+
+    List<LowStockTransition> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+}
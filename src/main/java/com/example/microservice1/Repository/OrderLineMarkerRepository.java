@@ -0,0 +1,23 @@
+package com.example.microservice1.Repository;
+
+import com.example.microservice1.model.OrderLineMarker;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderLineMarkerRepository extends JpaRepository<OrderLineMarker,OrderLineMarker.Key> {
+
+    @Query("SELECT m FROM OrderLineMarker m WHERE m.sku = :sku AND m.orderId IN :orderIds")
+    List<OrderLineMarker> findBySkuAndOrderIds(@Param("sku") String sku, @Param("orderIds") Collection<String> orderIds);
+
+    @Modifying
+    @Query("DELETE FROM OrderLineMarker m WHERE m.updatedAt < :before")
+    int deleteUpdatedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,27 @@
+package com.example.microservice1.Repository;
+
+import com.example.microservice1.model.OutboxLane;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxLaneRepository extends JpaRepository<OutboxLane,Integer> {
+
+    // Lanes with something to send whose lease ran out or was handed back. SKIP LOCKED keeps
+    // relays claiming at the same moment from waiting on each other
+    @Query(value = "SELECT * FROM inventory_outbox_lane l WHERE l.leased_until < :now " +
+            "AND EXISTS (SELECT 1 FROM inventory_outbox o WHERE o.lane = l.id) " +
+            "ORDER BY l.id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxLane> lockFreeLanes(@Param("now") Instant now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE OutboxLane l SET l.owner = null, l.leasedUntil = :free WHERE l.id IN :ids AND l.owner = :owner")
+    int release(@Param("ids") Collection<Integer> ids, @Param("owner") String owner, @Param("free") Instant free);
+}
@@ -0,0 +1,21 @@
+package com.example.microservice1.Repository;
+
+import com.example.microservice1.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxEvent,Long> {
+
+    // Not locked: the caller holds the lease on these lanes, and nobody else deletes their rows
+    @Query(value = "SELECT * FROM inventory_outbox WHERE lane IN (:lanes) ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<OutboxEvent> findNextBatch(@Param("lanes") Collection<Integer> lanes, @Param("limit") int limit);
+
+    Optional<OutboxEvent> findFirstByOrderByIdAsc();
+}
@@ -0,0 +1,39 @@
+package com.example.microservice1.Repository;
+
+import com.example.microservice1.model.Reservation;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ReservationRepository extends JpaRepository<Reservation,Long> {
+
+    // Range scan on the expires_at index, so a sweep reads only what has expired. SKIP LOCKED
+    // lets several instances sweep side by side and never blocks on a hold being released.
+    @Query(value = "SELECT * FROM reservation WHERE expires_at <= :now ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Reservation> lockExpired(@Param("now") Instant now, @Param("limit") int limit);
+
+    // Oldest holds first. Every hold is at least one unit, so releasing n units never needs more than n rows
+    @Query(value = "SELECT * FROM reservation WHERE sku = :sku ORDER BY id LIMIT :limit FOR UPDATE", nativeQuery = true)
+    List<Reservation> lockOldestBySku(@Param("sku") String sku, @Param("limit") int limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Reservation r WHERE r.id = :id")
+    Optional<Reservation> findByIdWithLock(@Param("id") Long id);
+
+    // Orders among the given ones that already hold the SKU, i.e. whose order-placed line was applied
+    @Query("SELECT DISTINCT r.orderId FROM Reservation r WHERE r.sku = :sku AND r.orderId IN :orderIds")
+    List<String> findOrderIdsHolding(@Param("sku") String sku, @Param("orderIds") Collection<String> orderIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Reservation r WHERE r.sku = :sku AND r.orderId IN :orderIds ORDER BY r.id")
+    List<Reservation> lockBySkuAndOrderIds(@Param("sku") String sku, @Param("orderIds") Collection<String> orderIds);
+}
@@ -0,0 +1,37 @@
+package com.example.microservice1.Repository;
+
+import com.example.microservice1.model.WarehouseSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface WarehouseSummaryRepository extends JpaRepository<WarehouseSummary,String> {
+
+    // Adds a delta to the running totals, creating the row for a warehouse seen the first time.
+    // Commutes with every other delta, so instances can flush in any order.
+    @Modifying
+    @Query(value = "INSERT INTO warehouse_summary (warehouse_id, sku_count, units, reserved_units, stock_value_cents, low_stock_count, updated_at) " +
+            "VALUES (:warehouseId, :skuCount, :units, :reservedUnits, :stockValueCents, :lowStockCount, :now) " +
+            "ON CONFLICT (warehouse_id) DO UPDATE SET " +
+            "sku_count = warehouse_summary.sku_count + EXCLUDED.sku_count, " +
+            "units = warehouse_summary.units + EXCLUDED.units, " +
+            "reserved_units = warehouse_summary.reserved_units + EXCLUDED.reserved_units, " +
+            "stock_value_cents = warehouse_summary.stock_value_cents + EXCLUDED.stock_value_cents, " +
+            "low_stock_count = warehouse_summary.low_stock_count + EXCLUDED.low_stock_count, " +
+            "updated_at = EXCLUDED.updated_at", nativeQuery = true)
+    void addDelta(@Param("warehouseId") String warehouseId, @Param("skuCount") long skuCount, @Param("units") long units,
+                  @Param("reservedUnits") long reservedUnits, @Param("stockValueCents") long stockValueCents,
+                  @Param("lowStockCount") long lowStockCount, @Param("now") Instant now);
+
+    // What the totals should be, straight from the Inventory table, one row per warehouse
+    @Query(value = "SELECT warehouse_id, COUNT(*), COALESCE(SUM(quantity), 0), COALESCE(SUM(reserved_quantity), 0), " +
+            "COALESCE(SUM(ROUND(quantity * unit_price * 100)), 0), COUNT(*) FILTER (WHERE low_stock) " +
+            "FROM inventory GROUP BY warehouse_id", nativeQuery = true)
+    List<Object[]> aggregateInventory();
+}
@@ -0,0 +1,274 @@
+package com.example.microservice1.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+
+// Append-only log of every change to the stock leased by HotSkuLedger. Writes are group
+// committed: a single writer thread drains whatever is queued, writes it and forces it to
+// disk once, then acknowledges the whole group. Replaying the log tells a restarted
+// instance how much leased stock was never handed out, so it can be returned to Postgres.
+//
+// Record format is one line per change: "<type>,<sku>,<quantity>"
+//   L  stock leased from the Inventory row        R  stock granted to a caller
+//   X  stock returned to the Inventory row         S  snapshot of unused lease
+//   C / E  start and end of a snapshot block written on rotation
+@Slf4j
+final class HotSkuIntentLog implements Closeable {
+
+    static final char LEASED = 'L';
+    static final char GRANTED = 'R';
+    static final char RETURNED = 'X';
+    private static final char SNAPSHOT = 'S';
+    private static final char SNAPSHOT_START = 'C';
+    private static final char SNAPSHOT_END = 'E';
+
+    private static final Write POISON = new Write(List.of(), false);
+
+    private final Path directory;
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel channel;
+    private long segment;
+    private long recordsInSegment;
+    private volatile boolean closed;
+
+    HotSkuIntentLog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Long> segments = segments();
+        this.segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        this.channel = open(segment);
+        this.writer = new Thread(this::writeLoop, "hot-sku-intent-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    CompletableFuture<Void> append(char type, String sku, long quantity){
+        Write write = new Write(List.of(line(type, sku, quantity)), false);
+        enqueue(write);
+        return write.done;
+    }
+
+    // Starts a new segment holding only the given snapshot and drops every older segment.
+    // Callers must make sure nothing else is appended while this runs.
+    void rotate(Map<String,Long> unusedLease){
+        List<String> lines = new ArrayList<>(unusedLease.size() + 2);
+        lines.add(line(SNAPSHOT_START, "", 0));
+        unusedLease.forEach((sku, quantity) -> lines.add(line(SNAPSHOT, sku, quantity)));
+        lines.add(line(SNAPSHOT_END, "", 0));
+        Write write = new Write(lines, true);
+        enqueue(write);
+        write.done.join();
+    }
+
+    long recordsInSegment(){
+        return recordsInSegment;
+    }
+
+    // Unused lease per SKU according to every segment on disk
+    Map<String,Long> replay() throws IOException {
+        Map<String,Long> unused = new HashMap<>();
+        for(long id : segments()){
+            List<String[]> records = new ArrayList<>();
+            try(BufferedReader reader = Files.newBufferedReader(file(id), StandardCharsets.UTF_8)){
+                String line;
+                while((line = reader.readLine()) != null){
+                    String[] record = parse(line);
+                    //a torn trailing line was never acknowledged, so it is safe to ignore
+                    if(record != null){
+                        records.add(record);
+                    }
+                }
+            }
+            apply(records, unused);
+        }
+        unused.values().removeIf(quantity -> quantity == 0);
+        return unused;
+    }
+
+    private static String[] parse(String line){
+        int last = line.lastIndexOf(',');
+        if(line.length() < 4 || line.charAt(1) != ',' || last < 2){
+            return null;
+        }
+        String quantity = line.substring(last + 1);
+        if(quantity.isEmpty() || !quantity.chars().allMatch(c -> c == '-' || Character.isDigit(c))){
+            return null;
+        }
+        return new String[]{line.substring(0, 1), line.substring(2, last), quantity};
+    }
+
+    private static void apply(List<String[]> records, Map<String,Long> unused){
+        int start = 0;
+        if(!records.isEmpty() && records.get(0)[0].charAt(0) == SNAPSHOT_START){
+            int end = indexOfSnapshotEnd(records);
+            if(end < 0){
+                //rotation crashed before the snapshot was durable; the older segment still holds the truth
+                return;
+            }
+            unused.clear();
+            for(int i = 1; i < end; i++){
+                unused.put(records.get(i)[1], Long.parseLong(records.get(i)[2]));
+            }
+            start = end + 1;
+        }
+        for(int i = start; i < records.size(); i++){
+            String[] record = records.get(i);
+            long quantity = Long.parseLong(record[2]);
+            switch(record[0].charAt(0)){
+                case LEASED -> unused.merge(record[1], quantity, Long::sum);
+                case GRANTED, RETURNED -> unused.merge(record[1], -quantity, Long::sum);
+                default -> { }
+            }
+        }
+    }
+
+    private static int indexOfSnapshotEnd(List<String[]> records){
+        for(int i = 1; i < records.size(); i++){
+            if(records.get(i)[0].charAt(0) == SNAPSHOT_END){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void enqueue(Write write){
+        if(closed){
+            write.done.completeExceptionally(new IllegalStateException("Intent log is closed"));
+            return;
+        }
+        queue.add(write);
+    }
+
+    private void writeLoop(){
+        List<Write> batch = new ArrayList<>();
+        boolean stopping = false;
+        while(!stopping){
+            try{
+                batch.add(queue.take());
+            } catch (InterruptedException e){
+                continue;
+            }
+            queue.drainTo(batch);
+            stopping = batch.remove(POISON);
+            try{
+                writeBatch(batch);
+                batch.forEach(write -> write.done.complete(null));
+            } catch (IOException | RuntimeException e){
+                log.error("Hot SKU intent log write failed", e);
+                batch.forEach(write -> write.done.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Write> batch) throws IOException {
+        StringBuilder pending = new StringBuilder();
+        for(Write write : batch){
+            if(write.rotate){
+                flush(pending);
+                rotateTo(segment + 1, write.lines);
+                continue;
+            }
+            write.lines.forEach(pending::append);
+            recordsInSegment += write.lines.size();
+        }
+        flush(pending);
+    }
+
+    private void flush(StringBuilder pending) throws IOException {
+        if(pending.length() == 0){
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        channel.force(false);
+        pending.setLength(0);
+    }
+
+    private void rotateTo(long next, List<String> snapshot) throws IOException {
+        FileChannel nextChannel = open(next);
+        ByteBuffer buffer = ByteBuffer.wrap(String.join("", snapshot).getBytes(StandardCharsets.UTF_8));
+        while(buffer.hasRemaining()){
+            nextChannel.write(buffer);
+        }
+        nextChannel.force(false);
+        channel.close();
+        channel = nextChannel;
+        segment = next;
+        recordsInSegment = 0;
+        for(long id : segments()){
+            if(id < next){
+                Files.deleteIfExists(file(id));
+            }
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        try(Stream<Path> files = Files.list(directory)){
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("intent-") && name.endsWith(".log"))
+                    .map(name -> Long.parseLong(name.substring(7, name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private FileChannel open(long id) throws IOException {
+        return FileChannel.open(file(id), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path file(long id){
+        return directory.resolve("intent-" + id + ".log");
+    }
+
+    private static String line(char type, String sku, long quantity){
+        return type + "," + sku + "," + quantity + "\n";
+    }
+
+    @Override
+    public void close(){
+        closed = true;
+        //not interrupted: an interrupt during a FileChannel write would close the channel
+        queue.add(POISON);
+        try{
+            writer.join(5_000);
+            channel.close();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Write {
+        private final List<String> lines;
+        private final boolean rotate;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Write(List<String> lines, boolean rotate){
+            this.lines = lines;
+            this.rotate = rotate;
+        }
+    }
+}
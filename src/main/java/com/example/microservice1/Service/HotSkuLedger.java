@@ -0,0 +1,449 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.model.Inventory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Optional in-memory reservation path for SKUs that take most of the reserve traffic.
+//
+// A hot SKU leases a chunk of stock from its Inventory row with the same conditional
+// UPDATE used by ReservationEngine, so the lease already counts as reserved in Postgres and
+// other instances can never sell it twice. Callers are then served from the lease in
+// memory; only refills and returns of unused lease touch the database, and the returns are
+// applied together in one transaction per maintenance run. Every grant is written to the
+// intent log before it is acknowledged, so after a crash the log says exactly how much of
+// each lease was never handed out.
+//
+// SKUs are promoted when reservations against their row keep waiting on the row lock, and
+// demoted once their traffic falls away. Leased stock looks reserved to everyone else, so
+// leases stop at the low-water mark (low-water-chunks chunks left on the row): a refill that
+// would cut into it demotes the SKU instead, handing the unused lease back, and so does
+// maintenance once other instances have drained the row below it. The last units are then
+// sold through the database path, where every instance sees all of them.
+@Component
+@Slf4j
+public class HotSkuLedger {
+
+    //cap on SKUs tracked per observation window, keeps the tracker bounded under scans
+    private static final int MAX_OBSERVED_SKUS = 10_000;
+
+    private final InventoryRepository inventoryRepository;
+    private final StockLedger stockLedger;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String,StripedStockCounter> hotSkus = new ConcurrentHashMap<>();
+    private final Map<String,Contention> observed = new ConcurrentHashMap<>();
+    //grants and lease changes hold the read side, log rotation holds the write side
+    private final ReentrantReadWriteLock logLock = new ReentrantReadWriteLock();
+
+    @Value("${inventory.hot-sku.enabled:false}")
+    private boolean enabled;
+
+    @Value("${inventory.hot-sku.log-dir:data/hot-sku}")
+    private String logDirectory;
+
+    @Value("${inventory.hot-sku.lease-chunk:100}")
+    private int leaseChunk;
+
+    @Value("${inventory.hot-sku.low-water-chunks:4}")
+    private int lowWaterChunks;
+
+    @Value("${inventory.hot-sku.promote-min-calls:200}")
+    private long promoteMinCalls;
+
+    @Value("${inventory.hot-sku.promote-min-wait-micros:2000}")
+    private long promoteMinWaitMicros;
+
+    @Value("${inventory.hot-sku.demote-max-grants:20}")
+    private long demoteMaxGrants;
+
+    @Value("${inventory.hot-sku.rotate-after-records:100000}")
+    private long rotateAfterRecords;
+
+    private HotSkuIntentLog intentLog;
+    private volatile boolean recovered;
+
+    public HotSkuLedger(InventoryRepository inventoryRepository, StockLedger stockLedger, PlatformTransactionManager transactionManager){
+        this.inventoryRepository = inventoryRepository;
+        this.stockLedger = stockLedger;
+        //leases commit on their own, never as part of whatever the caller does with the grant
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if(enabled){
+            intentLog = new HotSkuIntentLog(Path.of(logDirectory));
+        }
+    }
+
+    // Reserves from the in-memory lease. Returns false when the SKU is not hot, or stopped being
+    // hot because its stock is running low, in which case the caller should go to the database
+    // as usual. Call it before opening a transaction (see ReserveBatcher): a refill leases in a
+    // transaction of its own, which inside the caller's would take a second connection, and a
+    // second JdbcBulkhead permit, per thread. If what the grant was for fails, hand it back
+    // with returnGrant.
+    public boolean tryReserve(String sku, int quantity){
+        if(!recovered){
+            return false;
+        }
+        StripedStockCounter counter = hotSkus.get(sku);
+        if(counter == null){
+            return false;
+        }
+        while(true){
+            logLock.readLock().lock();
+            try{
+                if(counter.isRetired()){
+                    return false;
+                }
+                if(counter.tryTake(quantity)){
+                    logGrant(sku, counter, quantity);
+                    return true;
+                }
+            } finally {
+                logLock.readLock().unlock();
+            }
+            if(!refill(sku, counter, quantity)){
+                return false;
+            }
+        }
+    }
+
+    public boolean isHot(String sku){
+        return recovered && hotSkus.containsKey(sku);
+    }
+
+    // Stock this instance leased for the SKU but has not granted yet
+    public long unusedLease(String sku){
+        StripedStockCounter counter = hotSkus.get(sku);
+        return counter == null ? 0 : counter.available();
+    }
+
+    // Contention seen on the database path, reported by InventoryService
+    public void recordContention(String sku, long waitNanos){
+        if(!enabled || hotSkus.containsKey(sku)){
+            return;
+        }
+        Contention contention = observed.get(sku);
+        if(contention == null){
+            if(observed.size() >= MAX_OBSERVED_SKUS){
+                return;
+            }
+            contention = observed.computeIfAbsent(sku, key -> new Contention());
+        }
+        contention.calls.increment();
+        contention.waitNanos.add(waitNanos);
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.hot-sku.maintenance-interval-ms:1000}")
+    public void maintain(){
+        if(!enabled){
+            return;
+        }
+        if(!recovered){
+            recover();
+            return;
+        }
+        returnIdleLeases(false);
+        promote();
+        if(intentLog.recordsInSegment() >= rotateAfterRecords){
+            rotateLog();
+        }
+    }
+
+    private void logGrant(String sku, StripedStockCounter counter, int quantity){
+        try{
+            intentLog.append(HotSkuIntentLog.GRANTED, sku, quantity).join();
+        } catch (RuntimeException e){
+            counter.add(quantity);
+            throw e;
+        }
+    }
+
+    // Undoes a tryReserve grant whose hold could not be recorded. The units go back to the lease,
+    // or to the row if the SKU was demoted in the meantime
+    public void returnGrant(String sku, int quantity){
+        StripedStockCounter counter = hotSkus.get(sku);
+        if(counter != null){
+            //retiring happens under the refill lock, so the counter cannot be drained under us
+            counter.refillLock().lock();
+            try{
+                if(!counter.isRetired()){
+                    logLock.readLock().lock();
+                    try{
+                        intentLog.append(HotSkuIntentLog.GRANTED, sku, -quantity).join();
+                        counter.add(quantity);
+                        return;
+                    } finally {
+                        logLock.readLock().unlock();
+                    }
+                }
+            } catch (RuntimeException e){
+                //stays reserved in Postgres; conservative, never oversold
+                log.error("Could not return failed grant of {} units for SKU: {}", quantity, sku, e);
+                return;
+            } finally {
+                counter.refillLock().unlock();
+            }
+        }
+        logLock.readLock().lock();
+        try{
+            intentLog.append(HotSkuIntentLog.GRANTED, sku, -quantity).join();
+            intentLog.append(HotSkuIntentLog.RETURNED, sku, quantity).join();
+        } catch (RuntimeException e){
+            log.error("Could not return failed grant of {} units for SKU: {}", quantity, sku, e);
+            return;
+        } finally {
+            logLock.readLock().unlock();
+        }
+        giveBackLeases(Map.of(sku, (long) quantity));
+    }
+
+    private boolean refill(String sku, StripedStockCounter counter, int quantity){
+        counter.refillLock().lock();
+        try{
+            if(counter.isRetired() || counter.available() >= quantity){
+                return true;
+            }
+            //what the lease still has counts towards the request
+            int leased = lease(sku, (int) (quantity - counter.available()));
+            if(leased == 0){
+                demote(sku, counter);
+                return false;
+            }
+            logLock.readLock().lock();
+            try{
+                counter.add(leased);
+                intentLog.append(HotSkuIntentLog.LEASED, sku, leased).join();
+            } finally {
+                logLock.readLock().unlock();
+            }
+            return true;
+        } finally {
+            counter.refillLock().unlock();
+        }
+    }
+
+    // Leases a chunk, or `needed` if that is more, but never into the low-water mark; 0 when
+    // `needed` does not fit above it
+    private int lease(String sku, int needed){
+        Integer leased = transactionTemplate.execute(status -> {
+            Inventory row = inventoryRepository.findBySkuWithLock(sku).orElse(null);
+            if(row == null){
+                return 0;
+            }
+            long spare = row.getAvailableQuantity() - lowWater();
+            if(spare < needed){
+                return 0;
+            }
+            int quantity = (int) Math.min(Math.max(needed, leaseChunk), spare);
+            inventoryRepository.reserveStock(sku, quantity);
+            recordMovement(sku, StockLedger.Kind.LEASED, quantity);
+            return quantity;
+        });
+        return leased == null ? 0 : leased;
+    }
+
+    private long lowWater(){
+        return (long) lowWaterChunks * leaseChunk;
+    }
+
+    // Called under the refill lock when the row can no longer back a lease
+    private void demote(String sku, StripedStockCounter counter){
+        long excess;
+        logLock.readLock().lock();
+        try{
+            counter.retire();
+            excess = counter.drain();
+            if(excess > 0){
+                intentLog.append(HotSkuIntentLog.RETURNED, sku, excess).join();
+            }
+        } finally {
+            logLock.readLock().unlock();
+        }
+        hotSkus.remove(sku, counter);
+        if(excess == 0 || giveBackLeases(Map.of(sku, excess))){
+            log.info("Demoted SKU: {} with {} units of lease unused, stock is down to the low-water mark", sku, excess);
+        }
+    }
+
+    private void returnLease(String sku, int quantity){
+        if(inventoryRepository.returnLease(sku, quantity) > 0){
+            recordMovement(sku, StockLedger.Kind.LEASE_RETURNED, -quantity);
+        }
+    }
+
+    // The row as the lease change left it, for its version
+    private void recordMovement(String sku, StockLedger.Kind kind, int reservedDelta){
+        inventoryRepository.findBySku(sku).ifPresent(row -> stockLedger.record(row, kind, 0, reservedDelta, null, null));
+    }
+
+    private void promote(){
+        Map<String,Contention> window = new HashMap<>(observed);
+        observed.clear();
+        window.forEach((sku, contention) -> {
+            long calls = contention.calls.sum();
+            long avgWaitMicros = contention.waitNanos.sum() / Math.max(1, calls) / 1_000;
+            if(calls >= promoteMinCalls && avgWaitMicros >= promoteMinWaitMicros
+                    && hotSkus.putIfAbsent(sku, newCounter()) == null){
+                log.info("Promoted SKU: {} to hot mode after {} calls averaging {}us", sku, calls, avgWaitMicros);
+            }
+        });
+    }
+
+    // Demotes SKUs whose traffic fell away or whose row fell below the low-water mark, and
+    // trims leases that outgrew their traffic. Everything handed back is applied to Postgres
+    // in one transaction.
+    private void returnIdleLeases(boolean demoteAll){
+        Map<String,Long> returns = new HashMap<>();
+        List<String> demoted = new ArrayList<>();
+        Set<String> low = demoteAll ? Set.of() : belowLowWater();
+        hotSkus.forEach((sku, counter) -> {
+            long grants = counter.grantsThenReset();
+            counter.refillLock().lock();
+            logLock.readLock().lock();
+            try{
+                long excess;
+                if(demoteAll || grants < demoteMaxGrants || low.contains(sku)){
+                    counter.retire();
+                    demoted.add(sku);
+                    excess = counter.drain();
+                } else if(counter.available() > 2L * leaseChunk){
+                    long drained = counter.drain();
+                    long keep = Math.min(drained, leaseChunk);
+                    counter.add(keep);
+                    excess = drained - keep;
+                } else {
+                    excess = 0;
+                }
+                if(excess > 0){
+                    //logged before the database change: a crash in between leaks stock rather than overselling it
+                    intentLog.append(HotSkuIntentLog.RETURNED, sku, excess).join();
+                    returns.put(sku, excess);
+                }
+            } finally {
+                logLock.readLock().unlock();
+                counter.refillLock().unlock();
+            }
+        });
+        demoted.forEach(hotSkus::remove);
+        if(!returns.isEmpty() && giveBackLeases(returns)){
+            log.info("Returned unused lease for {} SKUs, demoted {}", returns.size(), demoted.size());
+        }
+    }
+
+    // Hot SKUs whose row, leases aside, has less than the low-water mark left
+    private Set<String> belowLowWater(){
+        Set<String> low = new HashSet<>();
+        if(hotSkus.isEmpty()){
+            return low;
+        }
+        try{
+            for(Inventory row : inventoryRepository.findBySkuIn(hotSkus.keySet())){
+                if(row.getAvailableQuantity() < lowWater()){
+                    low.add(row.getSku());
+                }
+            }
+        } catch (RuntimeException e){
+            log.warn("Could not read stock of hot SKUs, checking the low-water mark on the next run", e);
+        }
+        return low;
+    }
+
+    // Applies returns already logged as RETURNED; if that fails they are leased again and kept for the next run
+    private boolean giveBackLeases(Map<String,Long> returns){
+        try{
+            transactionTemplate.executeWithoutResult(status ->
+                    returns.forEach((sku, quantity) -> returnLease(sku, quantity.intValue())));
+            return true;
+        } catch (RuntimeException e){
+            log.error("Returning unused lease failed, keeping it for the next run", e);
+            logLock.readLock().lock();
+            try{
+                returns.forEach((sku, quantity) -> {
+                    intentLog.append(HotSkuIntentLog.LEASED, sku, quantity).join();
+                    hotSkus.computeIfAbsent(sku, key -> newCounter()).add(quantity);
+                });
+            } finally {
+                logLock.readLock().unlock();
+            }
+            return false;
+        }
+    }
+
+    private void rotateLog(){
+        logLock.writeLock().lock();
+        try{
+            Map<String,Long> unused = new HashMap<>();
+            hotSkus.forEach((sku, counter) -> unused.put(sku, counter.available()));
+            intentLog.rotate(unused);
+        } finally {
+            logLock.writeLock().unlock();
+        }
+    }
+
+    // Hands back whatever a previous run leased but never granted, then starts from a clean log
+    private void recover(){
+        try{
+            Map<String,Long> unused = intentLog.replay();
+            if(!unused.isEmpty()){
+                transactionTemplate.executeWithoutResult(status ->
+                        unused.forEach((sku, quantity) -> {
+                            if(quantity > 0){
+                                returnLease(sku, quantity.intValue());
+                            }
+                        }));
+                log.info("Recovered unused hot SKU lease for {} SKUs", unused.size());
+            }
+            intentLog.rotate(Map.of());
+            recovered = true;
+        } catch (IOException | RuntimeException e){
+            log.error("Hot SKU intent log recovery failed, staying on the database path", e);
+        }
+    }
+
+    @PreDestroy
+    void close(){
+        if(intentLog == null){
+            return;
+        }
+        if(recovered){
+            try{
+                returnIdleLeases(true);
+            } catch (RuntimeException e){
+                log.warn("Could not return hot SKU leases on shutdown, they will be recovered on restart", e);
+            }
+        }
+        intentLog.close();
+    }
+
+    private StripedStockCounter newCounter(){
+        return new StripedStockCounter(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static final class Contention {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+    }
+}
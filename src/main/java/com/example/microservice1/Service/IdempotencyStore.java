@@ -0,0 +1,185 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Exception.IdempotencyConflictException;
+import com.example.microservice1.Exception.IdempotencyKeyReuseException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Remembers the response of a mutating call by its Idempotency-Key, so a client retrying after
+// a timeout gets the first response back without touching Postgres or Kafka again.
+//
+// Entries live in Redis for inventory.idempotency.ttl (a day), shared by every instance, with
+// a Caffeine copy of finished entries in front bounded by bytes rather than entries. Both
+// sides store the same compact form: the key is a 128-bit hash of the endpoint scope and the
+// client's key, the value a state marker, a 64-bit fingerprint of the request and, once the
+// call finished, its JSON response. A reservation entry is around 250 bytes in Redis, so a
+// day of keys costs keys per day times that, whatever the clients send as keys.
+//
+// The first request claims its key with SET NX and a short in-flight TTL. A repeat arriving
+// while it still runs gets 409, a repeat with a different body under the same key 422. A call
+// that fails drops its claim, so the client can retry it. If Redis is unreachable the store
+// keeps deduplicating within this instance rather than failing the call.
+@Component
+@Slf4j
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final String KEY_PREFIX = "idem:";
+    private static final char IN_FLIGHT = 'P';
+    private static final char DONE = 'D';
+    //marker plus 16 hex digits of fingerprint
+    private static final int HEADER_LENGTH = 17;
+
+    private final StringRedisTemplate redisTemplate;
+    private final JsonMapper jsonMapper;
+    private final Cache<String,String> completed;
+    private final Map<String,Boolean> running = new ConcurrentHashMap<>();
+    private final Counter replayed;
+    private final Duration ttl;
+
+    @Value("${inventory.idempotency.in-flight-ttl:30s}")
+    private Duration inFlightTtl = Duration.ofSeconds(30);
+
+    public IdempotencyStore(StringRedisTemplate redisTemplate, JsonMapper jsonMapper, MeterRegistry meterRegistry,
+                            @Value("${inventory.idempotency.ttl:24h}") Duration ttl,
+                            @Value("${inventory.idempotency.local-max-bytes:67108864}") long localMaxBytes){
+        this.redisTemplate = redisTemplate;
+        this.jsonMapper = jsonMapper;
+        this.ttl = ttl;
+        this.completed = Caffeine.newBuilder()
+                .maximumWeight(localMaxBytes)
+                .weigher((String key, String value) -> 2 * (key.length() + value.length()))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, "idempotency");
+        this.replayed = Counter.builder("inventory.idempotency.replayed")
+                .description("Requests answered from the idempotency store instead of being run again")
+                .register(meterRegistry);
+    }
+
+    // Runs the call once per key and scope; scope names the endpoint and its path variables
+    public <T> T execute(String key, String scope, Object request, Class<T> type, Supplier<T> call){
+        if(key == null || key.isBlank()){
+            return call.get();
+        }
+        String id = KEY_PREFIX + hash(scope + '\n' + key);
+        String fingerprint = fingerprint(scope, request);
+
+        String finished = completed.getIfPresent(id);
+        if(finished != null){
+            return replay(finished, fingerprint, key, type);
+        }
+        if(running.putIfAbsent(id, Boolean.TRUE) != null){
+            throw new IdempotencyConflictException("Request with Idempotency-Key " + key + " is still in progress");
+        }
+        try{
+            String existing = claim(id, fingerprint);
+            if(existing != null){
+                if(existing.charAt(0) == DONE){
+                    completed.put(id, existing);
+                    return replay(existing, fingerprint, key, type);
+                }
+                checkFingerprint(existing, fingerprint, key);
+                throw new IdempotencyConflictException("Request with Idempotency-Key " + key + " is still in progress");
+            }
+            T result;
+            try{
+                result = call.get();
+            } catch (RuntimeException e){
+                unclaim(id);
+                throw e;
+            }
+            String entry = DONE + fingerprint + jsonMapper.writeValueAsString(result);
+            completed.put(id, entry);
+            store(id, entry);
+            return result;
+        } finally {
+            running.remove(id);
+        }
+    }
+
+    private <T> T replay(String entry, String fingerprint, String key, Class<T> type){
+        checkFingerprint(entry, fingerprint, key);
+        replayed.increment();
+        return jsonMapper.readValue(entry.substring(HEADER_LENGTH), type);
+    }
+
+    private static void checkFingerprint(String entry, String fingerprint, String key){
+        if(!entry.regionMatches(1, fingerprint, 0, fingerprint.length())){
+            throw new IdempotencyKeyReuseException("Idempotency-Key " + key + " was already used for a different request");
+        }
+    }
+
+    // Returns null when the key is now ours, otherwise what is already stored under it
+    private String claim(String id, String fingerprint){
+        try{
+            if(Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(id, IN_FLIGHT + fingerprint, inFlightTtl))){
+                return null;
+            }
+            //the claim may have expired between the two calls, then the key is free after all
+            String existing = redisTemplate.opsForValue().get(id);
+            return existing == null ? claim(id, fingerprint) : existing;
+        } catch (RuntimeException e){
+            log.warn("Idempotency store unreachable, deduplicating on this instance only", e);
+            return null;
+        }
+    }
+
+    private void store(String id, String entry){
+        try{
+            redisTemplate.opsForValue().set(id, entry, ttl);
+        } catch (RuntimeException e){
+            log.warn("Could not store idempotent response, other instances will not see it", e);
+        }
+    }
+
+    private void unclaim(String id){
+        try{
+            redisTemplate.delete(id);
+        } catch (RuntimeException e){
+            log.warn("Could not drop idempotency claim, it expires after {}", inFlightTtl, e);
+        }
+    }
+
+    private String fingerprint(String scope, Object request){
+        byte[] body = jsonMapper.writeValueAsBytes(request);
+        MessageDigest digest = sha256();
+        digest.update(scope.getBytes(StandardCharsets.UTF_8));
+        digest.update(body);
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+
+    private static String hash(String value){
+        byte[] digest = sha256().digest(value.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+    }
+
+    private static MessageDigest sha256(){
+        try{
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.ImportError;
+import com.example.microservice1.Dto.ImportReport;
+import com.example.microservice1.Dto.InventoryRequest;
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEvent.EventType;
+import com.example.microservice1.model.Inventory;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Bulk catalog loads. The body is read line by line and upserted in chunks, each chunk in
+// its own transaction with one JDBC batch, so a 200k row load never sits in memory and a
+// bad row only costs that row. Every chunk publishes a single BULK_UPSERTED event carrying
+// one line per SKU instead of one event per row.
+@Service
+@Slf4j
+public class InventoryImportService {
+
+    public static final int CHUNK_SIZE = 1000;
+
+    //errors reported back to the caller, the rest are only counted
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final String SELECT_EXISTING =
+            "SELECT sku, quantity FROM inventory WHERE sku = ANY(?) ORDER BY sku FOR UPDATE";
+
+    private static final String SELECT_UPSERTED =
+            "SELECT sku, quantity, reserved_quantity, version FROM inventory WHERE sku = ANY(?)";
+
+    //an existing row is only overwritten if its new quantity still covers what is reserved
+    private static final String UPSERT =
+            "INSERT INTO inventory (id, sku, product_name, description, quantity, reserved_quantity, reorder_level, " +
+            "max_stock_level, unit_price, warehouse_id, location, low_stock, status, created_at, updated_at, version) " +
+            "VALUES (?, ?, ?, ?, ?, 0, ?, ?, ?, ?, ?, ?, 'ACTIVE', ?, ?, 0) " +
+            "ON CONFLICT (sku) DO UPDATE SET product_name = EXCLUDED.product_name, description = EXCLUDED.description, " +
+            "quantity = EXCLUDED.quantity, reorder_level = EXCLUDED.reorder_level, max_stock_level = EXCLUDED.max_stock_level, " +
+            "unit_price = EXCLUDED.unit_price, warehouse_id = EXCLUDED.warehouse_id, location = EXCLUDED.location, " +
+            "low_stock = EXCLUDED.low_stock, updated_at = EXCLUDED.updated_at, version = inventory.version + 1 " +
+            "WHERE inventory.reserved_quantity <= EXCLUDED.quantity";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxPublisher outboxPublisher;
+    private final LowStockFeed lowStockFeed;
+    private final WarehouseSummaryService warehouseSummaryService;
+    private final StockLedger stockLedger;
+    private final CacheManager cacheManager;
+    private final Validator validator;
+    private final JsonMapper jsonMapper;
+
+    public InventoryImportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  OutboxPublisher outboxPublisher, LowStockFeed lowStockFeed,
+                                  WarehouseSummaryService warehouseSummaryService, StockLedger stockLedger,
+                                  CacheManager cacheManager, Validator validator, JsonMapper jsonMapper){
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.outboxPublisher = outboxPublisher;
+        this.lowStockFeed = lowStockFeed;
+        this.warehouseSummaryService = warehouseSummaryService;
+        this.stockLedger = stockLedger;
+        this.cacheManager = cacheManager;
+        this.validator = validator;
+        this.jsonMapper = jsonMapper;
+    }
+
+    // First line is a header naming InventoryRequest fields, in any order
+    public ImportReport importCsv(InputStream body) throws IOException {
+        try(BufferedReader reader = reader(body)){
+            String header = reader.readLine();
+            if(header == null){
+                return new Import().report();
+            }
+            List<String> columns = splitCsv(header);
+            return run(reader, 2, row -> csvRow(columns, row));
+        }
+    }
+
+    public ImportReport importNdjson(InputStream body) throws IOException {
+        try(BufferedReader reader = reader(body)){
+            return run(reader, 1, row -> {
+                try{
+                    return jsonMapper.readValue(row, InventoryRequest.class);
+                } catch (JacksonException e){
+                    throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+                }
+            });
+        }
+    }
+
+    private ImportReport run(BufferedReader reader, long firstLine, Function<String,InventoryRequest> parser) throws IOException {
+        Import load = new Import();
+        Map<String,Row> chunk = new LinkedHashMap<>();
+        long lineNumber = firstLine - 1;
+        String text;
+        while((text = reader.readLine()) != null){
+            lineNumber++;
+            if(text.isBlank()){
+                continue;
+            }
+            load.rowsRead++;
+            InventoryRequest request;
+            try{
+                request = parser.apply(text);
+            } catch (IllegalArgumentException e){
+                load.reject(lineNumber, null, e.getMessage());
+                continue;
+            }
+            String violations = validate(request);
+            if(violations != null){
+                load.reject(lineNumber, request.getSku(), violations);
+                continue;
+            }
+            //a SKU repeated within a chunk keeps its last row; earlier ones count as rejected
+            Row previous = chunk.put(request.getSku(), new Row(lineNumber, request));
+            if(previous != null){
+                load.reject(previous.line, request.getSku(), "Superseded by line " + lineNumber);
+            }
+            if(chunk.size() == CHUNK_SIZE){
+                upsertChunk(load, chunk);
+                chunk = new LinkedHashMap<>();
+            }
+        }
+        if(!chunk.isEmpty()){
+            upsertChunk(load, chunk);
+        }
+        ImportReport report = load.report();
+        log.info("Imported {} of {} rows in {} chunks at {} rows/s, {} rejected",
+                report.getRowsUpserted(), report.getRowsRead(), report.getChunks(),
+                Math.round(report.getRowsPerSecond()), report.getRowsRejected());
+        return report;
+    }
+
+    private void upsertChunk(Import load, Map<String,Row> chunk){
+        String chunkId = load.id + "-" + (++load.chunks);
+        try{
+            List<Row> rejected = transactionTemplate.execute(status -> upsert(chunkId, chunk));
+            rejected.forEach(row -> load.reject(row.line, row.request.getSku(), "Quantity is below the reserved quantity"));
+            load.rowsUpserted += chunk.size() - rejected.size();
+            //an upsert can move a SKU between warehouses, so totals are recomputed rather than patched
+            warehouseSummaryService.reconcileSoon();
+            //upserts write no stock movements, the snapshot is what brings the ledger back in line
+            stockLedger.snapshotSoon();
+        } catch (DataAccessException e){
+            log.error("Import chunk {} failed, skipping its {} rows", chunkId, chunk.size(), e);
+            chunk.values().forEach(row -> load.reject(row.line, row.request.getSku(), "Chunk failed: " + e.getMostSpecificCause().getMessage()));
+        }
+    }
+
+    // Returns the rows that were left unchanged
+    private List<Row> upsert(String chunkId, Map<String,Row> chunk){
+        //row locks taken in SKU order, like reserveBatch, so concurrent loads can't deadlock
+        Map<String,Integer> previous = new HashMap<>();
+        jdbcTemplate.query(SELECT_EXISTING, ps -> ps.setArray(1, skuArray(ps, chunk.keySet())),
+                rs -> { previous.put(rs.getString(1), rs.getInt(2)); });
+
+        long[] ids = allocateIds(chunk.size() - previous.size());
+        Map<String,Long> newIds = new HashMap<>();
+        int nextId = 0;
+        for(String sku : chunk.keySet()){
+            if(!previous.containsKey(sku)){
+                newIds.put(sku, ids[nextId++]);
+            }
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Row> rows = new ArrayList<>(chunk.values());
+        int[][] counts = jdbcTemplate.batchUpdate(UPSERT, rows, rows.size(), (ps, row) -> {
+            InventoryRequest request = row.request;
+            //ids are only consumed by inserts, a conflicting row keeps its own
+            ps.setLong(1, newIds.getOrDefault(request.getSku(), 0L));
+            ps.setString(2, request.getSku());
+            ps.setString(3, request.getProductName());
+            ps.setString(4, request.getDescription() == null ? "" : request.getDescription());
+            ps.setInt(5, request.getQuantity());
+            ps.setInt(6, request.getReorderLevel());
+            ps.setInt(7, request.getMaxStockLevel());
+            ps.setBigDecimal(8, request.getUnitPrice());
+            ps.setString(9, request.getWarehouseId());
+            ps.setString(10, request.getLocation());
+            ps.setBoolean(11, request.getQuantity() <= request.getReorderLevel());
+            ps.setTimestamp(12, now);
+            ps.setTimestamp(13, now);
+        });
+
+        List<Row> unchanged = new ArrayList<>();
+        int index = 0;
+        for(int[] batch : counts){
+            for(int count : batch){
+                if(count == 0){
+                    unchanged.add(rows.get(index));
+                }
+                index++;
+            }
+        }
+        Set<String> unchangedSkus = unchanged.stream().map(row -> row.request.getSku()).collect(Collectors.toSet());
+
+        List<InventoryEvent> lines = new ArrayList<>(chunk.size());
+        Cache cache = cacheManager.getCache("inventory");
+        jdbcTemplate.query(SELECT_UPSERTED, ps -> ps.setArray(1, skuArray(ps, chunk.keySet())), rs -> {
+            String sku = rs.getString(1);
+            if(unchangedSkus.contains(sku)){
+                return;
+            }
+            int quantity = rs.getInt(2);
+            int reserved = rs.getInt(3);
+            Integer before = previous.get(sku);
+            lines.add(InventoryEvent.of(EventType.UPDATED, sku, quantity - (before == null ? 0 : before),
+                    quantity, reserved, quantity - reserved, rs.getLong(4)));
+            recordIfCrossed(chunk.get(sku).request, before);
+            if(cache != null){
+                //transaction aware, so this runs after commit
+                cache.evict(sku);
+            }
+        });
+
+        if(!lines.isEmpty()){
+            outboxPublisher.publish("inventory-updated", chunkId, InventoryEvent.bulkUpserted(chunkId, lines));
+        }
+        return unchanged;
+    }
+
+    private void recordIfCrossed(InventoryRequest request, Integer previousQuantity){
+        Inventory inventory = new Inventory();
+        inventory.setSku(request.getSku());
+        inventory.setWarehouseId(request.getWarehouseId());
+        inventory.setQuantity(request.getQuantity());
+        inventory.setReorderLevel(request.getReorderLevel());
+        lowStockFeed.recordIfCrossed(inventory, previousQuantity);
+    }
+
+    // Takes whole blocks from inventory_seq. Hibernate uses the same pooled-lo layout, a
+    // sequence value v owning ids v to v + ID_BLOCK_SIZE - 1, so the two never collide.
+    private long[] allocateIds(int count){
+        long[] ids = new long[Math.max(count, 0)];
+        if(count <= 0){
+            return ids;
+        }
+        int blocks = (count + Inventory.ID_BLOCK_SIZE - 1) / Inventory.ID_BLOCK_SIZE;
+        List<Long> starts = jdbcTemplate.queryForList(
+                "SELECT nextval('inventory_seq') FROM generate_series(1, ?)", Long.class, blocks);
+        for(int i = 0; i < count; i++){
+            ids[i] = starts.get(i / Inventory.ID_BLOCK_SIZE) + i % Inventory.ID_BLOCK_SIZE;
+        }
+        return ids;
+    }
+
+    private static Array skuArray(PreparedStatement ps, Set<String> skus) throws SQLException {
+        return ps.getConnection().createArrayOf("varchar", skus.toArray());
+    }
+
+    private String validate(InventoryRequest request){
+        Set<ConstraintViolation<InventoryRequest>> violations = validator.validate(request);
+        if(violations.isEmpty()){
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static InventoryRequest csvRow(List<String> columns, String text){
+        List<String> values = splitCsv(text);
+        if(values.size() != columns.size()){
+            throw new IllegalArgumentException("Expected " + columns.size() + " columns but found " + values.size());
+        }
+        InventoryRequest request = new InventoryRequest();
+        for(int i = 0; i < columns.size(); i++){
+            String value = values.get(i).isEmpty() ? null : values.get(i);
+            String column = columns.get(i).trim();
+            try{
+                switch(column){
+                    case "sku" -> request.setSku(value);
+                    case "productName" -> request.setProductName(value);
+                    case "description" -> request.setDescription(value);
+                    case "reorderLevel" -> request.setReorderLevel(value == null ? null : Integer.valueOf(value.trim()));
+                    case "quantity" -> request.setQuantity(value == null ? null : Integer.valueOf(value.trim()));
+                    case "maxStockLevel" -> request.setMaxStockLevel(value == null ? null : Integer.valueOf(value.trim()));
+                    case "unitPrice" -> request.setUnitPrice(value == null ? null : new BigDecimal(value.trim()));
+                    case "warehouseId" -> request.setWarehouseId(value);
+                    case "location" -> request.setLocation(value);
+                    default -> throw new IllegalArgumentException("Unknown column " + column);
+                }
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException("Invalid number in column " + column + ": " + value);
+            }
+        }
+        return request;
+    }
+
+    // RFC 4180 fields on a single line: quoted fields may hold commas and "" escapes
+    static List<String> splitCsv(String line){
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if(quoted){
+                if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"'){
+                    field.append('"');
+                    i++;
+                } else if(c == '"'){
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if(c == '"'){
+                quoted = true;
+            } else if(c == ','){
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if(quoted){
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static BufferedReader reader(InputStream body){
+        return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static final class Row {
+        private final long line;
+        private final InventoryRequest request;
+
+        private Row(long line, InventoryRequest request){
+            this.line = line;
+            this.request = request;
+        }
+    }
+
+    private static final class Import {
+        private final String id = UUID.randomUUID().toString();
+        private final long startNanos = System.nanoTime();
+        private final List<ImportError> errors = new ArrayList<>();
+        private long rowsRead;
+        private long rowsUpserted;
+        private long rowsRejected;
+        private int chunks;
+
+        private void reject(long line, String sku, String message){
+            rowsRejected++;
+            if(errors.size() < MAX_REPORTED_ERRORS){
+                errors.add(new ImportError(line, sku, message));
+            }
+        }
+
+        private ImportReport report(){
+            long elapsedNanos = System.nanoTime() - startNanos;
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            double rate = seconds > 0 ? rowsUpserted / seconds : 0;
+            return new ImportReport(rowsRead, rowsUpserted, rowsRejected, chunks, elapsedNanos / 1_000_000, rate, errors);
+        }
+    }
+}
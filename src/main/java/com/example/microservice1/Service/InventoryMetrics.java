@@ -0,0 +1,199 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Exception.InsufficientStockException;
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.Exception.ServiceBusyException;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import jakarta.persistence.OptimisticLockException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Timers for the inventory hot path, exported through /actuator/metrics and /actuator/prometheus.
+//
+//   inventory.operation  whole call, tagged operation, outcome and sku
+//   inventory.phase      one step inside it: lock_wait on the row, commit of the transaction
+//
+// Both publish histogram buckets rather than client-side percentiles, so recording stays a
+// few atomic increments and percentiles are computed by the backend across instances.
+//
+// The sku tag names only the current top-N SKUs by call count, everything else is "other".
+// The top set is recomputed every window from a bounded counter map. As the set moves, more
+// values get registered over the life of the process, so a meter filter (skuTagLimit, see
+// MetricsConfig) caps the distinct values: past the cap a newly hot SKU is recorded as
+// "other" too, its timings still counted, only without a series of its own.
+@Component
+public class InventoryMetrics {
+
+    public static final String OPERATION_TIMER = "inventory.operation";
+    public static final String PHASE_TIMER = "inventory.phase";
+    static final String OTHER_SKU = "other";
+
+    //cap on SKUs counted per window, like HotSkuLedger
+    private static final int MAX_COUNTED_SKUS = 10_000;
+
+    private final Meter.MeterProvider<Timer> operationTimers;
+    private final Meter.MeterProvider<Timer> phaseTimers;
+    private final Map<String,LongAdder> window = new ConcurrentHashMap<>();
+    private volatile Set<String> topSkus = Set.of();
+
+    @Value("${inventory.metrics.top-skus:10}")
+    private int topN = 10;
+
+    public InventoryMetrics(MeterRegistry meterRegistry){
+        this.operationTimers = Timer.builder(OPERATION_TIMER)
+                .description("Inventory operations by outcome, hot SKUs tagged individually")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.phaseTimers = Timer.builder(PHASE_TIMER)
+                .description("Time spent in one step of an inventory operation")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+    }
+
+    public <T> T record(String operation, String sku, Supplier<T> call){
+        long start = System.nanoTime();
+        String outcome = "success";
+        try{
+            return call.get();
+        } catch (RuntimeException e){
+            outcome = outcome(e);
+            throw e;
+        } finally {
+            operationTimers.withTags(Tags.of("operation", operation, "outcome", outcome, "sku", skuTag(sku)))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordLockWait(String operation, long nanos){
+        phaseTimers.withTags(Tags.of("operation", operation, "phase", "lock_wait")).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Call inside the operation's transaction; times the commit itself once it happens.
+    // Callbacks run in order on both sides of the commit, so the clock starts in the last
+    // callback before it and stops in the first one after it, leaving out e.g. cache writes.
+    public void timeCommit(String operation){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            return;
+        }
+        long[] start = new long[1];
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder(){
+                return LOWEST_PRECEDENCE;
+            }
+
+            @Override
+            public void beforeCompletion(){
+                start[0] = System.nanoTime();
+            }
+        });
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder(){
+                return HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCommit(){
+                recordCompletion(operation, "commit", start[0]);
+            }
+
+            @Override
+            public void afterCompletion(int status){
+                if(status != STATUS_COMMITTED){
+                    recordCompletion(operation, "rollback", start[0]);
+                }
+            }
+        });
+    }
+
+    private void recordCompletion(String operation, String phase, long start){
+        if(start != 0){
+            phaseTimers.withTags(Tags.of("operation", operation, "phase", phase))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    String skuTag(String sku){
+        if(sku == null){
+            return OTHER_SKU;
+        }
+        LongAdder count = window.get(sku);
+        if(count == null && window.size() < MAX_COUNTED_SKUS){
+            count = window.computeIfAbsent(sku, key -> new LongAdder());
+        }
+        if(count != null){
+            count.increment();
+        }
+        return topSkus.contains(sku) ? sku : OTHER_SKU;
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.metrics.top-sku-window-ms:60000}")
+    public void rollWindow(){
+        Map<String,Long> counts = window.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum()));
+        window.clear();
+        topSkus = counts.entrySet().stream()
+                .sorted(Map.Entry.<String,Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(topN)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    // Keeps the first maxSkuTags sku values of the operation timer and rewrites the rest to "other"
+    public static MeterFilter skuTagLimit(int maxSkuTags){
+        Set<String> kept = ConcurrentHashMap.newKeySet();
+        return new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id){
+                String sku = id.getTag("sku");
+                if(!OPERATION_TIMER.equals(id.getName()) || sku == null || OTHER_SKU.equals(sku) || kept.contains(sku)){
+                    return id;
+                }
+                synchronized(kept){
+                    if(kept.size() < maxSkuTags){
+                        kept.add(sku);
+                        return id;
+                    }
+                }
+                return id.replaceTags(Tags.of(id.getTagsAsIterable()).and("sku", OTHER_SKU));
+            }
+        };
+    }
+
+    static String outcome(Throwable e){
+        //a busy bulkhead surfaces wrapped, e.g. in CannotCreateTransactionException
+        for(Throwable cause = e; cause != null; cause = cause.getCause()){
+            if(cause instanceof ServiceBusyException){
+                return "busy";
+            }
+        }
+        if(e instanceof InsufficientStockException){
+            return "insufficient_stock";
+        }
+        if(e instanceof InventoryNotFoundException){
+            return "not_found";
+        }
+        if(e instanceof OptimisticLockingFailureException || e instanceof OptimisticLockException){
+            return "optimistic_lock";
+        }
+        return "error";
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.InventoryPage;
+import com.example.microservice1.Dto.InventoryResponse;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.model.Inventory;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Catalog reads that can cover millions of rows. Pages are keyset based and streams write
+// NDJSON row by row, detaching each entity once written, so memory stays flat no matter
+// how large the result is. Every method here is read only, so with inventory.replicas.urls
+// set it runs on a replica (see ReplicaRoutingConfig).
+@Service
+@RequiredArgsConstructor
+public class InventoryQueryService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    //rows written between flushes of the response stream
+    private static final int FLUSH_EVERY = 500;
+
+    private final InventoryRepository inventoryRepository;
+
+    private final EntityManager entityManager;
+
+    private final JsonMapper jsonMapper;
+
+    // Unpaged lists kept for existing clients; prefer the pages or streams below
+    @Transactional(readOnly = true)
+    public List<InventoryResponse> getAllInventory(){
+        return inventoryRepository.findAll().stream()
+                .map(InventoryResponse::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public List<InventoryResponse> getInventoryByWarehouse(String warehouseId){
+        return inventoryRepository.findByWarehouseId(warehouseId).stream()
+                .map(InventoryResponse::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public List<InventoryResponse> getLowStockItems(){
+        return inventoryRepository.findLowStocksItems().stream()
+                .map(InventoryResponse::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public InventoryPage getInventoryPage(Long after, int limit){
+        return page(inventoryRepository.findByIdGreaterThanOrderByIdAsc(cursor(after), pageSize(limit)), limit);
+    }
+
+    @Transactional(readOnly = true)
+    public InventoryPage getWarehousePage(String warehouseId, Long after, int limit){
+        return page(inventoryRepository.findByWarehouseIdAndIdGreaterThanOrderByIdAsc(warehouseId, cursor(after), pageSize(limit)), limit);
+    }
+
+    @Transactional(readOnly = true)
+    public InventoryPage getLowStockPage(Long after, int limit){
+        return page(inventoryRepository.findLowStockItemsAfter(cursor(after), pageSize(limit)), limit);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamAll(OutputStream out){
+        write(inventoryRepository::streamAll, out);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamByWarehouse(String warehouseId, OutputStream out){
+        write(() -> inventoryRepository.streamByWarehouseId(warehouseId), out);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamLowStockItems(OutputStream out){
+        write(inventoryRepository::streamLowStockItems, out);
+    }
+
+    private void write(Supplier<Stream<Inventory>> query, OutputStream out){
+        try(Stream<Inventory> rows = query.get()){
+            int written = 0;
+            for(Inventory inventory : (Iterable<Inventory>) rows::iterator){
+                out.write(jsonMapper.writeValueAsBytes(InventoryResponse.fromEntity(inventory)));
+                out.write('\n');
+                entityManager.detach(inventory);
+                if(++written % FLUSH_EVERY == 0){
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InventoryPage page(List<Inventory> rows, int limit){
+        List<InventoryResponse> items = rows.stream().map(InventoryResponse::fromEntity).toList();
+        Long next = rows.size() < Math.min(Math.max(limit, 1), MAX_PAGE_SIZE) ? null : rows.get(rows.size() - 1).getId();
+        return new InventoryPage(items, next);
+    }
+
+    private static Long cursor(Long after){
+        return after == null ? Long.MIN_VALUE : after;
+    }
+
+    private static Limit pageSize(int limit){
+        return Limit.of(Math.min(Math.max(limit, 1), MAX_PAGE_SIZE));
+    }
+}
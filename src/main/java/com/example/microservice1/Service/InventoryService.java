@@ -1,23 +1,47 @@
 package com.example.microservice1.Service;
 
+import com.example.microservice1.Dto.AvailabilityLine;
+import com.example.microservice1.Dto.AvailabilityResponse;
+import com.example.microservice1.Dto.BatchReservationRequest;
+import com.example.microservice1.Dto.BatchReservationResponse;
 import com.example.microservice1.Dto.InventoryRequest;
 import com.example.microservice1.Dto.InventoryResponse;
-import com.example.microservice1.Exception.InsufficientStockException;
+import com.example.microservice1.Dto.ReservationItem;
+import com.example.microservice1.Dto.ReservationResponse;
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEvent.EventType;
 import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.Exception.ReservationNotFoundException;
 import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.Repository.OrderLineMarkerRepository;
+import com.example.microservice1.Repository.ReservationRepository;
+import com.example.microservice1.config.TwoLevelCache;
 import com.example.microservice1.model.Inventory;
+import com.example.microservice1.model.OrderLineMarker;
+import com.example.microservice1.model.Reservation;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.context.annotation.Bean;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
 import org.springframework.stereotype.Service;
 
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 
 @Service
@@ -27,13 +51,38 @@ public class InventoryService {
 
     private final InventoryRepository inventoryRepository;
 
-    private final KafkaTemplate<String,Object> KafkaTemplate;
+    private final OutboxPublisher outboxPublisher;
 
+    private final CacheManager cacheManager;
+
+    private final ReservationEngine reservationEngine;
+
+    private final HotSkuLedger hotSkuLedger;
+
+    private final LowStockFeed lowStockFeed;
+
+    private final InventoryMetrics inventoryMetrics;
+
+    private final ReservationRepository reservationRepository;
+
+    private final WarehouseSummaryService warehouseSummaryService;
+
+    private final StockLedger stockLedger;
+
+    private final OrderLineMarkerRepository orderLineMarkerRepository;
+
+    @Value("${inventory.reservation.ttl:15m}")
+    private Duration reservationTtl = Duration.ofMinutes(15);
+
+    // Mutations write the fresh row into the cache instead of evicting it. The cache manager
+    // is transaction aware, so the put only happens after commit, and entries carry the row
+    // version so an older commit landing late cannot overwrite a newer one.
     @Transactional
-    @CacheEvict(value = "inventory", key = "#request.sku")
+    @CachePut(value = "inventory", key = "#request.sku")
     public InventoryResponse createInventory(InventoryRequest request){
         Inventory inventory = new Inventory();
         inventory.setSku(request.getSku());
+        inventory.setProductName(request.getProductName());
         inventory.setDescription(request.getDescription());
         inventory.setQuantity(request.getQuantity());
         inventory.setReorderLevel(request.getReorderLevel());
@@ -43,88 +92,535 @@ public class InventoryService {
         inventory.setLocation(request.getLocation());
 
         Inventory saved = inventoryRepository.save(inventory);
+        lowStockFeed.recordIfCrossed(saved, null);
+        warehouseSummaryService.recordChange(saved, 1, saved.getQuantity(), 0, false);
+        stockLedger.record(saved, StockLedger.Kind.CREATED, saved.getQuantity(), saved.getReservedQuantity(), null, null);
         log.info("Created inventory for SKU: {}",saved.getSku());
 
-        //sending the data to the kafka
-        KafkaTemplate.send("inventory-created",saved.getSku(),saved);
+        //queued in the outbox, relayed to kafka once this transaction commits
+        outboxPublisher.publish("inventory-created",saved.getSku(),InventoryEvent.of(EventType.CREATED,saved,saved.getQuantity()));
         return InventoryResponse.fromEntity(saved);
 
     }
 
 
-    @Cacheable(value = "inventory", key = "#sku")
+    //sync coalesces concurrent misses for the same SKU into one database load
+    @Cacheable(value = "inventory", key = "#sku", sync = true)
     public InventoryResponse getInventoryBySku(String sku){
         Inventory inventory = inventoryRepository.findBySku(sku)
                 .orElseThrow(()-> new InventoryNotFoundException("Inventory is not found for SKU:" + sku + "in warehouse"));
         return InventoryResponse.fromEntity(inventory);
 
     }
-    public List<InventoryResponse>getAllInventory(){
-        return inventoryRepository.findAll().stream()
-                .map(InventoryResponse::fromEntity)
-                .collect(Collectors.toList());
+    @Transactional
+    @CachePut(value = "inventory" ,key = "#sku")
+    public InventoryResponse updateQuantity(String sku, Integer quantity){
+        long start = System.nanoTime();
+        Inventory inventory = inventoryRepository.findBySkuWithLock(sku)
+                .orElseThrow(()-> new InventoryNotFoundException("Inventory not found for SKU: " + sku));
+        long waited = System.nanoTime() - start;
+        hotSkuLedger.recordContention(sku, waited);
+        inventoryMetrics.recordLockWait("update", waited);
+        inventoryMetrics.timeCommit("update");
+
+        int previousQuantity = inventory.getQuantity();
+        boolean wasLowStock = inventory.isLowStock();
+        int delta = quantity - previousQuantity;
+        inventory.setQuantity(quantity);
+        //flushed so the cached response carries the bumped version
+        Inventory updated = inventoryRepository.saveAndFlush(inventory);
+        lowStockFeed.recordIfCrossed(updated, previousQuantity);
+        warehouseSummaryService.recordChange(updated, 0, delta, 0, wasLowStock);
+        stockLedger.record(updated, StockLedger.Kind.UPDATED, delta, 0, null, null);
+        log.info("Updated quantity for SKU: {} to {}",updated.getSku(),quantity);
+        outboxPublisher.publish("inventory-updated",sku,InventoryEvent.of(EventType.UPDATED,updated,delta));
+
+        return InventoryResponse.fromEntity(updated);
+    }
+    public boolean checkAvailability(String sku,Integer quantity){
+        AvailabilityResponse response = checkAvailability(List.of(new ReservationItem(sku, quantity)));
+        if(!response.getNotFound().isEmpty()){
+            throw new InventoryNotFoundException("Inventory not found for sku "+sku);
+        }
+        return response.isAllAvailable();
     }
 
-    //
-    public List<InventoryResponse> getInventoryByWarehouse(String warehouseId){
-        return inventoryRepository.findByWarehouseId(warehouseId).stream()
-                .map(InventoryResponse::fromEntity)
-                .collect(Collectors.toList());
+    // Availability of a whole cart in one pass: cached rows are read together, and every SKU
+    // neither cache level has is loaded with one IN query and written back. A check is
+    // advisory, the reservation is what takes the stock, so a cached row is good enough and
+    // no transaction is held. Unused hot SKU lease counts as available, as in RESERVED events.
+    public AvailabilityResponse checkAvailability(List<ReservationItem> items){
+        Map<String,Integer> requested = new LinkedHashMap<>();
+        for(ReservationItem item : items){
+            requested.merge(item.getSku(), item.getQuantity(), Integer::sum);
+        }
+        Map<String,InventoryResponse> rows = cachedRows(requested.keySet());
+        List<String> misses = requested.keySet().stream().filter(sku -> !rows.containsKey(sku)).toList();
+        if(!misses.isEmpty()){
+            Map<String,InventoryResponse> loaded = new HashMap<>();
+            for(Inventory inventory : inventoryRepository.findBySkuIn(misses)){
+                loaded.put(inventory.getSku(), InventoryResponse.fromEntity(inventory));
+            }
+            backfill(loaded);
+            rows.putAll(loaded);
+        }
+
+        List<AvailabilityLine> lines = new ArrayList<>(requested.size());
+        List<String> notFound = new ArrayList<>();
+        requested.forEach((sku, quantity) -> {
+            InventoryResponse row = rows.get(sku);
+            if(row == null){
+                notFound.add(sku);
+                return;
+            }
+            int available = row.getAvailableQuantity() + (int) hotSkuLedger.unusedLease(sku);
+            lines.add(new AvailabilityLine(sku, quantity, available, available >= quantity));
+        });
+        boolean allAvailable = notFound.isEmpty() && lines.stream().allMatch(AvailabilityLine::isAvailable);
+        return new AvailabilityResponse(allAvailable, lines, notFound);
+    }
+
+    // Every reservation is recorded as a hold with an expiry; holds nobody releases in time are
+    // handed back by ReservationExpiryEngine.
+    @Transactional
+    public ReservationResponse reserveStock(String sku, Integer quantity, Duration ttl){
+        long start = System.nanoTime();
+        reservationEngine.reserve(sku, quantity);
+        //the conditional update queues on the row lock, so its duration is the lock wait
+        long waited = System.nanoTime() - start;
+        hotSkuLedger.recordContention(sku, waited);
+        inventoryMetrics.recordLockWait("reserve", waited);
+        inventoryMetrics.timeCommit("reserve");
+        Inventory inventory = reload(sku);
+        Reservation hold = hold(sku, quantity, null, ttl);
+        warehouseSummaryService.recordChange(inventory, 0, 0, quantity, inventory.isLowStock());
+        stockLedger.record(inventory, StockLedger.Kind.RESERVED, 0, quantity, null, hold.getId());
+
+        log.info("Reserved {} units for SKU: {}",quantity,sku);
+        outboxPublisher.publish("inventory-reserved",sku,InventoryEvent.of(EventType.RESERVED,inventory,quantity));
+        cachePut(inventory);
+        return ReservationResponse.fromEntity(hold);
     }
 
-    public List<InventoryResponse> getLowStockItems(){
-        return inventoryRepository.findLowStocksItems().stream()
-                .map(InventoryResponse::fromEntity)
-                .collect(Collectors.toList());
+    // The hold for a hot SKU grant, which ReserveBatcher takes from the lease before calling
+    // this. The grant comes out of stock already reserved on the row, so the row and its cached
+    // copy are unchanged and nothing is written back
+    @Transactional
+    public ReservationResponse reserveFromLease(String sku, Integer quantity, Duration ttl){
+        Reservation hold = hold(sku, quantity, null, ttl);
+        log.info("Reserved {} units for hot SKU: {}",quantity,sku);
+        outboxPublisher.publish("inventory-reserved",sku,hotReservationEvent(sku, quantity));
+        return ReservationResponse.fromEntity(hold);
     }
+
+    // Several reserve calls for one SKU in one transaction, see ReserveBatcher. They are granted
+    // in arrival order from an unlocked read of the row, each one that still fits in what is
+    // left, and all grants go to the row as one conditional update. If stock moved in between
+    // and the update no longer fits, the row is read again and the batch granted once more;
+    // a second miss turns the whole batch down. Every grant gets its own hold and its own
+    // event, numbered as if the reservations had been applied one after another. The result
+    // lines up with the calls, null where there was not enough stock left.
     @Transactional
-    @CacheEvict(value = "inventory" ,key = "#sku")
-    public InventoryResponse updateQuantity(String sku, Integer quantity){
-        Inventory inventory = inventoryRepository.findBySkuWithLock(sku)
+    public List<ReservationResponse> reserveCoalesced(String sku, List<Reserve> reserves){
+        Grants grants = firstFit(reload(sku).getAvailableQuantity(), reserves);
+        if(grants.count() > 0 && !applyCoalesced(sku, grants)){
+            grants = firstFit(reload(sku).getAvailableQuantity(), reserves);
+            if(grants.count() > 0 && !applyCoalesced(sku, grants)){
+                grants = new Grants(new boolean[reserves.size()], 0, 0);
+            }
+        }
+        return recordGrants(sku, reserves, grants);
+    }
+
+    //the conditional update queues on the row lock, so its duration is the lock wait
+    private boolean applyCoalesced(String sku, Grants grants){
+        long start = System.nanoTime();
+        int updated = inventoryRepository.reserveStockCoalesced(sku, grants.total(), grants.count());
+        long waited = System.nanoTime() - start;
+        hotSkuLedger.recordContention(sku, waited);
+        inventoryMetrics.recordLockWait("reserve", waited);
+        inventoryMetrics.timeCommit("reserve");
+        return updated > 0;
+    }
+
+    private Inventory lockForReserve(String sku){
+        long start = System.nanoTime();
+        Inventory locked = inventoryRepository.findBySkuWithLock(sku)
                 .orElseThrow(()-> new InventoryNotFoundException("Inventory not found for SKU: " + sku));
+        long waited = System.nanoTime() - start;
+        hotSkuLedger.recordContention(sku, waited);
+        inventoryMetrics.recordLockWait("reserve", waited);
+        inventoryMetrics.timeCommit("reserve");
+        return locked;
+    }
 
+    private record Grants(boolean[] granted, int total, long count) {
+    }
 
-        inventory.setQuantity(quantity);
-        Inventory updated = inventoryRepository.save(inventory);
-        log.info("Updated quantity for SKU: {} to {}",updated.getSku(),quantity);
-        KafkaTemplate.send("inventory-updated",sku,updated);
+    private static Grants firstFit(int available, List<Reserve> reserves){
+        int remaining = available;
+        int total = 0;
+        long count = 0;
+        boolean[] granted = new boolean[reserves.size()];
+        for(int i = 0; i < reserves.size(); i++){
+            int quantity = reserves.get(i).quantity();
+            if(quantity <= remaining){
+                granted[i] = true;
+                remaining -= quantity;
+                total += quantity;
+                count++;
+            }
+        }
+        return new Grants(granted, total, count);
+    }
 
-        return InventoryResponse.fromEntity(updated);
+    // Holds, ledger entries and events for grants already applied to the row
+    private List<ReservationResponse> recordGrants(String sku, List<Reserve> reserves, Grants grants){
+        List<ReservationResponse> responses = new ArrayList<>(reserves.size());
+        if(grants.count() == 0){
+            reserves.forEach(reserve -> responses.add(null));
+            return responses;
+        }
+        //the update still holds the row lock, so nothing else has moved it since
+        Inventory inventory = reload(sku);
+
+        int reserved = inventory.getReservedQuantity() - grants.total();
+        long version = inventory.getVersion() - grants.count();
+        for(int i = 0; i < reserves.size(); i++){
+            if(!grants.granted()[i]){
+                responses.add(null);
+                continue;
+            }
+            Reserve reserve = reserves.get(i);
+            reserved += reserve.quantity();
+            version++;
+            Reservation hold = hold(sku, reserve.quantity(), reserve.orderId(), reserve.ttl());
+            responses.add(ReservationResponse.fromEntity(hold));
+            stockLedger.record(sku, inventory.getWarehouseId(), version, StockLedger.Kind.RESERVED, 0, reserve.quantity(),
+                    reserve.orderId(), hold.getId());
+            outboxPublisher.publish("inventory-reserved",sku,InventoryEvent.of(EventType.RESERVED, sku, reserve.quantity(),
+                    inventory.getQuantity(), reserved, inventory.getQuantity() - reserved, version));
+        }
+        warehouseSummaryService.recordChange(inventory, 0, 0, grants.total(), inventory.isLowStock());
+
+        log.info("Reserved {} units for SKU: {} in {} coalesced reservations",grants.total(),sku,grants.count());
+        cachePut(inventory);
+        return responses;
     }
+
+    //orderId is null for calls through the reserve endpoint
+    public record Reserve(int quantity, Duration ttl, String orderId) {
+    }
+
+    // order-placed lines for one SKU, in arrival order (OrderEventConsumer). Every line applied
+    // leaves an OrderLineMarker for its order and SKU, and a line whose order already has one is
+    // skipped: a redelivered event never reserves twice, even after the hold was cancelled or
+    // expired, and a placement arriving after its cancellation reserves nothing. Orders holding
+    // the SKU through the batch endpoint are skipped as well. Markers are read under the row
+    // lock, which releaseOrderLines also takes before writing them, so the two cannot interleave.
+    // Lines that cannot be met are answered on inventory-rejected, keyed by order.
+    // Returns how many lines were granted.
     @Transactional
-    public boolean checkAvailability(String sku,Integer quantity){
-        Inventory inventory = inventoryRepository.findBySku(sku)
-                .orElseThrow(()-> new InventoryNotFoundException("Inventory not found for sku "+sku));
-        return inventory.getAvailableQuantity()>=quantity;
+    public int reserveOrderLines(String sku, List<Reserve> lines){
+        Inventory locked = lockForReserve(sku);
+        List<String> orderIds = lines.stream().map(Reserve::orderId).toList();
+        Set<String> applied = new HashSet<>(reservationRepository.findOrderIdsHolding(sku, orderIds));
+        orderLineMarkerRepository.findBySkuAndOrderIds(sku, orderIds).forEach(marker -> applied.add(marker.getOrderId()));
+        List<Reserve> pending = new ArrayList<>(lines.size());
+        for(Reserve line : lines){
+            //add() also drops a second line of the same order, the upstream merges lines per SKU
+            if(applied.add(line.orderId())){
+                pending.add(line);
+            }
+        }
+        if(pending.isEmpty()){
+            return 0;
+        }
+        //the row is locked, so the grants always fit
+        Grants grants = firstFit(locked.getAvailableQuantity(), pending);
+        if(grants.count() > 0){
+            inventoryRepository.reserveStockCoalesced(sku, grants.total(), grants.count());
+        }
+        List<ReservationResponse> granted = recordGrants(sku, pending, grants);
+        Instant now = Instant.now();
+        List<OrderLineMarker> markers = new ArrayList<>(pending.size());
+        Inventory inventory = null;
+        for(int i = 0; i < pending.size(); i++){
+            Reserve line = pending.get(i);
+            boolean reserved = granted.get(i) != null;
+            markers.add(new OrderLineMarker(line.orderId(), sku,
+                    reserved ? OrderLineMarker.State.RESERVED : OrderLineMarker.State.REJECTED, now));
+            if(reserved){
+                continue;
+            }
+            if(inventory == null){
+                inventory = reload(sku);
+            }
+            log.info("Rejected {} units of SKU: {} for order: {}",line.quantity(),sku,line.orderId());
+            outboxPublisher.publish("inventory-rejected",line.orderId(),InventoryEvent.orderRejected(line.orderId(),
+                    List.of(InventoryEvent.of(EventType.REJECTED,inventory,line.quantity()))));
+        }
+        orderLineMarkerRepository.saveAll(markers);
+        return (int) grants.count();
     }
 
+    // order-cancelled lines for one SKU: hands back whatever the orders still hold. Orders
+    // without a hold were released, expired or never reserved, and are left alone; either way
+    // each order is marked CANCELLED, so its placement is not applied if it is redelivered or
+    // has yet to arrive. Unlike a release the units were never sold, so only the reserved
+    // quantity goes down, as for an expired hold; on-hand stock, and with it the low-stock
+    // flag, stays as it was.
+    //
+    // Holds are locked before the row, as everywhere else. A placement committing in between
+    // left holds the first lookup did not see; its markers say so, and those holds are locked
+    // once more under the row lock. They were made a moment ago, so the expiry sweep is not
+    // holding them.
     @Transactional
-    @CacheEvict(value = "inventory", key = "#sku")
-    public void reserveStock(String sku, Integer quantity){
-        Inventory inventory = inventoryRepository.findBySkuWithLock(sku)
-                .orElseThrow(()->new InventoryNotFoundException("Inventory not found for SKU: "+ sku));
+    public int releaseOrderLines(String sku, Collection<String> orderIds){
+        List<Reservation> holds = new ArrayList<>(reservationRepository.lockBySkuAndOrderIds(sku, orderIds));
+        if(inventoryRepository.findBySkuWithLock(sku).isEmpty()){
+            return 0;
+        }
+        Set<String> held = new HashSet<>();
+        holds.forEach(hold -> held.add(hold.getOrderId()));
+        Map<String,OrderLineMarker> markers = new HashMap<>();
+        orderLineMarkerRepository.findBySkuAndOrderIds(sku, orderIds).forEach(marker -> markers.put(marker.getOrderId(), marker));
+        List<String> placedSince = markers.values().stream()
+                .filter(marker -> marker.getState() == OrderLineMarker.State.RESERVED && !held.contains(marker.getOrderId()))
+                .map(OrderLineMarker::getOrderId)
+                .toList();
+        if(!placedSince.isEmpty()){
+            holds.addAll(reservationRepository.lockBySkuAndOrderIds(sku, placedSince));
+        }
 
-        if(inventory.getAvailableQuantity() < quantity){
-            throw new InsufficientStockException("Insufficient stock for sku" + sku);
+        Instant now = Instant.now();
+        for(String orderId : orderIds){
+            OrderLineMarker marker = markers.get(orderId);
+            if(marker == null){
+                markers.put(orderId, new OrderLineMarker(orderId, sku, OrderLineMarker.State.CANCELLED, now));
+            } else {
+                marker.setState(OrderLineMarker.State.CANCELLED);
+                marker.setUpdatedAt(now);
+            }
+        }
+        //flushed now: the bulk updates below clear the persistence context
+        orderLineMarkerRepository.saveAllAndFlush(markers.values());
+        if(holds.isEmpty()){
+            return 0;
+        }
 
+        int quantity = holds.stream().mapToInt(Reservation::getQuantity).sum();
+        long start = System.nanoTime();
+        reservationEngine.cancel(sku, quantity);
+        inventoryMetrics.recordLockWait("cancel", System.nanoTime() - start);
+        inventoryMetrics.timeCommit("cancel");
+        reservationRepository.deleteAllInBatch(holds);
+        Inventory inventory = reload(sku);
+        warehouseSummaryService.recordChange(inventory, 0, 0, -quantity, inventory.isLowStock());
+        stockLedger.record(inventory, StockLedger.Kind.CANCELLED, 0, -quantity,
+                holds.size() == 1 ? holds.get(0).getOrderId() : null, holds.size() == 1 ? holds.get(0).getId() : null);
+
+        log.info("Cancelled {} reserved units for SKU: {} across {} orders",quantity,sku,holds.size());
+        outboxPublisher.publish("inventory-released",sku,InventoryEvent.of(EventType.CANCELLED,inventory,-quantity));
+        cachePut(inventory);
+        return holds.size();
+    }
+
+    // Drops markers last touched before `before`; by then the order events they guard have left the topic
+    @Transactional
+    public int purgeOrderLineMarkers(Instant before){
+        return orderLineMarkerRepository.deleteUpdatedBefore(before);
+    }
+
+    private Reservation hold(String sku, int quantity, String orderId, Duration ttl){
+        Instant now = Instant.now();
+        return reservationRepository.save(new Reservation(null, sku, quantity, orderId, now,
+                now.plus(ttl == null ? reservationTtl : ttl)));
+    }
+
+    // The row of a hot SKU counts the whole lease as reserved; what was really handed out is
+    // the row's reservation minus the part of the lease still held in memory
+    private InventoryEvent hotReservationEvent(String sku, int quantity){
+        Cache cache = cacheManager.getCache("inventory");
+        InventoryResponse row = cache == null ? null : cache.get(sku, InventoryResponse.class);
+        if(row == null){
+            row = InventoryResponse.fromEntity(reload(sku));
         }
-        inventory.setReservedQuantity(inventory.getReservedQuantity() + quantity);
-        inventoryRepository.save(inventory);
+        int unused = (int) hotSkuLedger.unusedLease(sku);
+        return InventoryEvent.of(EventType.RESERVED, sku, quantity, row.getQuantity(),
+                row.getReservedQuantity() - unused, row.getAvailableQuantity() + unused, row.getVersion());
+    }
 
-        log.info("Reserved {} units for SKU: {}",quantity,sku);
-        KafkaTemplate.send("inventory-reserved",sku,quantity);
+    // Reserves every line of an order or none of them. Lines are merged per SKU and applied in
+    // SKU order, so two orders touching the same SKUs always lock rows in the same sequence
+    // and cannot deadlock each other.
+    @Transactional
+    public BatchReservationResponse reserveBatch(BatchReservationRequest request){
+        inventoryMetrics.timeCommit("reserve_batch");
+        Map<String,Integer> quantities = new TreeMap<>();
+        for(ReservationItem item : request.getItems()){
+            quantities.merge(item.getSku(), item.getQuantity(), Integer::sum);
+        }
+
+        for(Map.Entry<String,Integer> entry : quantities.entrySet()){
+            //throwing rolls back every line already reserved in this transaction
+            reservationEngine.reserve(entry.getKey(), entry.getValue());
+        }
+
+        //holds only once every line is in: each reserve update clears the persistence context,
+        //which would drop a hold saved before it but not yet flushed
+        Duration ttl = request.getTtlSeconds() == null ? null : Duration.ofSeconds(request.getTtlSeconds());
+        List<ReservationItem> reserved = new ArrayList<>(quantities.size());
+        List<ReservationResponse> holds = new ArrayList<>(quantities.size());
+        Map<String,Long> holdIds = new HashMap<>();
+        int totalUnits = 0;
+        for(Map.Entry<String,Integer> entry : quantities.entrySet()){
+            String sku = entry.getKey();
+            int quantity = entry.getValue();
+            reserved.add(new ReservationItem(sku, quantity));
+            Reservation hold = hold(sku, quantity, request.getOrderId(), ttl);
+            holds.add(ReservationResponse.fromEntity(hold));
+            holdIds.put(sku, hold.getId());
+            totalUnits += quantity;
+        }
+
+        List<InventoryEvent> lines = new ArrayList<>(quantities.size());
+        for(Inventory inventory : inventoryRepository.findBySkuIn(quantities.keySet())){
+            int quantity = quantities.get(inventory.getSku());
+            lines.add(InventoryEvent.of(EventType.RESERVED, inventory, quantity));
+            warehouseSummaryService.recordChange(inventory, 0, 0, quantity, inventory.isLowStock());
+            stockLedger.record(inventory, StockLedger.Kind.RESERVED, 0, quantity, request.getOrderId(), holdIds.get(inventory.getSku()));
+            cachePut(inventory);
+        }
+
+        log.info("Reserved {} units across {} SKUs for order: {}",totalUnits,reserved.size(),request.getOrderId());
+        //one event per order instead of one per line
+        outboxPublisher.publish("inventory-reserved",request.getOrderId(),InventoryEvent.orderReserved(request.getOrderId(), lines));
+        return new BatchReservationResponse(request.getOrderId(), reserved, totalUnits, holds);
     }
 
-    public void releaseReservedStock(String sku,Integer quantity){
-        Inventory inventory = inventoryRepository.findBySkuWithLock(sku)
-                .orElseThrow(()->new InventoryNotFoundException("Inventory not found sku : " + sku));
+    // Releases by quantity rather than by hold, settling the SKU's oldest holds first. Holds are
+    // locked before the row, the same order the expiry sweep takes, so the two cannot deadlock.
+    @Transactional
+    @CachePut(value = "inventory", key = "#sku")
+    public InventoryResponse releaseReservedStock(String sku,Integer quantity){
+        List<Reservation> holds = reservationRepository.lockOldestBySku(sku, quantity);
+        long start = System.nanoTime();
+        reservationEngine.release(sku, quantity);
+        inventoryMetrics.recordLockWait("release", System.nanoTime() - start);
+        inventoryMetrics.timeCommit("release");
+        settle(holds, quantity);
+        return released(sku, quantity, null, null);
+    }
+
+    @Transactional
+    public ReservationResponse getReservation(Long id){
+        return reservationRepository.findById(id)
+                .map(ReservationResponse::fromEntity)
+                .orElseThrow(()-> new ReservationNotFoundException("Reservation not found: " + id));
+    }
 
-        inventory.setReservedQuantity(inventory.getReservedQuantity() - quantity);
-        inventory.setQuantity(inventory.getQuantity() - quantity);
-        inventoryRepository.save(inventory);
+    // Releases one hold in full, e.g. once its order shipped
+    @Transactional
+    public InventoryResponse releaseReservation(Long id){
+        Reservation hold = reservationRepository.findByIdWithLock(id)
+                .orElseThrow(()-> new ReservationNotFoundException("Reservation not found: " + id));
+        long start = System.nanoTime();
+        reservationEngine.release(hold.getSku(), hold.getQuantity());
+        inventoryMetrics.recordLockWait("release", System.nanoTime() - start);
+        inventoryMetrics.timeCommit("release");
+        reservationRepository.delete(hold);
+        InventoryResponse response = released(hold.getSku(), hold.getQuantity(), hold.getOrderId(), hold.getId());
+        cachePut(response);
+        return response;
+    }
+
+    // Deletes the holds the released units covered; a hold only partly covered keeps the rest.
+    // Units beyond the holds belong to reservations made before holds were recorded.
+    private void settle(List<Reservation> holds, int quantity){
+        int remaining = quantity;
+        List<Long> settled = new ArrayList<>(holds.size());
+        for(Reservation hold : holds){
+            if(remaining == 0){
+                break;
+            }
+            if(hold.getQuantity() <= remaining){
+                remaining -= hold.getQuantity();
+                settled.add(hold.getId());
+            } else {
+                hold.setQuantity(hold.getQuantity() - remaining);
+                reservationRepository.save(hold);
+                remaining = 0;
+            }
+        }
+        reservationRepository.deleteAllByIdInBatch(settled);
+    }
+
+    //orderId and reservationId only when the release is for a single hold
+    private InventoryResponse released(String sku, int quantity, String orderId, Long reservationId){
+        Inventory inventory = reload(sku);
+        lowStockFeed.recordIfCrossed(inventory, inventory.getQuantity() + quantity);
+        warehouseSummaryService.recordChange(inventory, 0, -quantity, -quantity,
+                inventory.getQuantity() + quantity <= inventory.getReorderLevel());
+        stockLedger.record(inventory, StockLedger.Kind.RELEASED, -quantity, -quantity, orderId, reservationId);
 
         log.info("Released {} units for SKU: {}",quantity,sku);
-        KafkaTemplate.send("inventory-released",sku,quantity);
+        outboxPublisher.publish("inventory-released",sku,InventoryEvent.of(EventType.RELEASED,inventory,-quantity));
+        return InventoryResponse.fromEntity(inventory);
+    }
+
+    private void cachePut(Inventory inventory){
+        cachePut(InventoryResponse.fromEntity(inventory));
+    }
+
+    private void cachePut(InventoryResponse response){
+        Cache cache = cacheManager.getCache("inventory");
+        if(cache != null){
+            cache.put(response.getSku(), response);
+        }
+    }
+
+    private Map<String,InventoryResponse> cachedRows(Collection<String> skus){
+        Map<String,InventoryResponse> rows = new HashMap<>();
+        Cache cache = cacheManager.getCache("inventory");
+        if(cache == null){
+            return rows;
+        }
+        if(target(cache) instanceof TwoLevelCache twoLevel){
+            twoLevel.getAll(skus).forEach((sku, value) -> rows.put((String) sku, (InventoryResponse) value));
+        } else {
+            for(String sku : skus){
+                InventoryResponse row = cache.get(sku, InventoryResponse.class);
+                if(row != null){
+                    rows.put(sku, row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Not through the transaction aware decorator: there is no transaction, and entries already
+    // cached must win over what was just read
+    private void backfill(Map<String,InventoryResponse> rows){
+        Cache cache = cacheManager.getCache("inventory");
+        if(cache == null || rows.isEmpty()){
+            return;
+        }
+        if(target(cache) instanceof TwoLevelCache twoLevel){
+            twoLevel.putAllIfAbsent(rows);
+        } else {
+            rows.forEach(cache::putIfAbsent);
+        }
+    }
+
+    private static Cache target(Cache cache){
+        return cache instanceof TransactionAwareCacheDecorator decorator ? decorator.getTargetCache() : cache;
+    }
+
+    // Re-reads a row after a bulk update; the update cleared the persistence context so this is fresh
+    private Inventory reload(String sku){
+        return inventoryRepository.findBySku(sku)
+                .orElseThrow(()-> new InventoryNotFoundException("Inventory not found for SKU: " + sku));
     }
 
 
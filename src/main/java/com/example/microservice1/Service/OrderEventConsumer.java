@@ -0,0 +1,246 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.OrderEvent;
+import com.example.microservice1.Dto.ReservationItem;
+import com.example.microservice1.Exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Applies order-placed / order-cancelled events from the order service, so it does not have to
+// block on the REST endpoints and bursts queue in Kafka instead of in front of the database.
+//
+// Each poll is split into order lines and the lines are sharded by SKU over `workers` virtual
+// threads, so parallelism follows cores rather than partitions while lines for one SKU are
+// still applied in the order they were read. A shard applies consecutive lines of the same
+// kind for the same SKU as one transaction (InventoryService.reserveOrderLines /
+// releaseOrderLines). The listener returns once every shard is done, and only then are the
+// poll's offsets committed.
+//
+// A record that cannot be parsed, is invalid or whose lines fail goes to <topic>.DLT. Failures
+// that say nothing about the record (no connection, bulkhead full, lock timeout) are thrown
+// instead, and the container hands the whole poll back after a back-off. Applying a record
+// twice is harmless: every order line applied leaves a marker (OrderLineMarker), and a line
+// whose order already has one is not reserved again; a cancellation only releases what the
+// order still holds. Markers are purged after marker-retention, which has to outlast the
+// longest a record can wait in its topic or be redelivered.
+@Component
+@Slf4j
+public class OrderEventConsumer {
+
+    public static final String ORDER_PLACED = "order-placed";
+    public static final String ORDER_CANCELLED = "order-cancelled";
+
+    private final InventoryService inventoryService;
+    private final InventoryMetrics inventoryMetrics;
+    private final DeadLetterPublishingRecoverer deadLetters;
+    private final JsonMapper jsonMapper;
+    private final Validator validator;
+    private final MeterRegistry meterRegistry;
+    private final int workers;
+    private final Duration markerRetention;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public OrderEventConsumer(InventoryService inventoryService, InventoryMetrics inventoryMetrics,
+                              DeadLetterPublishingRecoverer orderEventDeadLetters, JsonMapper jsonMapper,
+                              Validator validator, MeterRegistry meterRegistry,
+                              @Value("${inventory.orders.consumer.workers:0}") int workers,
+                              @Value("${inventory.orders.marker-retention:7d}") Duration markerRetention){
+        this.inventoryService = inventoryService;
+        this.inventoryMetrics = inventoryMetrics;
+        this.deadLetters = orderEventDeadLetters;
+        this.jsonMapper = jsonMapper;
+        this.validator = validator;
+        this.meterRegistry = meterRegistry;
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.markerRetention = markerRetention;
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.orders.marker-purge-interval-ms:3600000}")
+    public void purgeMarkers(){
+        try{
+            int purged = inventoryService.purgeOrderLineMarkers(Instant.now().minus(markerRetention));
+            if(purged > 0){
+                log.info("Purged {} order line markers older than {}", purged, markerRetention);
+            }
+        } catch (RuntimeException e){
+            log.error("Order line marker purge failed, retrying on the next run", e);
+        }
+    }
+
+    @KafkaListener(id = "order-events", topics = {ORDER_PLACED, ORDER_CANCELLED},
+            groupId = "${inventory.orders.consumer.group-id:inventory-service}",
+            containerFactory = "orderEventListenerFactory",
+            autoStartup = "${inventory.orders.consumer.enabled:true}")
+    public void consume(List<ConsumerRecord<String,byte[]>> records){
+        Map<ConsumerRecord<String,byte[]>,Exception> failed = new ConcurrentHashMap<>();
+        List<List<Line>> shards = new ArrayList<>(workers);
+        for(int i = 0; i < workers; i++){
+            shards.add(new ArrayList<>());
+        }
+        for(ConsumerRecord<String,byte[]> record : records){
+            try{
+                for(Line line : lines(record)){
+                    shards.get(Math.floorMod(line.sku().hashCode(), workers)).add(line);
+                }
+            } catch (RuntimeException e){
+                failed.put(record, e);
+            }
+        }
+
+        List<Future<?>> running = new ArrayList<>();
+        for(List<Line> shard : shards){
+            if(!shard.isEmpty()){
+                running.add(executor.submit(() -> applyShard(shard, failed)));
+            }
+        }
+        RuntimeException retry = null;
+        for(Future<?> shard : running){
+            try{
+                shard.get();
+            } catch (ExecutionException e){
+                if(retry == null){
+                    retry = e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while applying order events", e);
+            }
+        }
+        if(retry != null){
+            //the redelivered poll fails the same records again, they are dead-lettered then
+            throw retry;
+        }
+
+        failed.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.<ConsumerRecord<String,byte[]>,String>comparing(ConsumerRecord::topic)
+                        .thenComparingInt(ConsumerRecord::partition).thenComparingLong(ConsumerRecord::offset)))
+                .forEach(entry -> deadLetter(entry.getKey(), entry.getValue()));
+    }
+
+    private List<Line> lines(ConsumerRecord<String,byte[]> record){
+        OrderEvent event = jsonMapper.readValue(record.value(), OrderEvent.class);
+        Set<ConstraintViolation<OrderEvent>> violations = validator.validate(event);
+        if(!violations.isEmpty()){
+            throw new IllegalArgumentException("Invalid order event: " + violations.iterator().next().getMessage());
+        }
+        boolean placed = ORDER_PLACED.equals(record.topic());
+        Duration ttl = event.getTtlSeconds() == null ? null : Duration.ofSeconds(event.getTtlSeconds());
+        List<Line> lines = new ArrayList<>(event.getItems().size());
+        for(ReservationItem item : event.getItems()){
+            lines.add(new Line(record, placed, item.getSku(), new InventoryService.Reserve(item.getQuantity(), ttl, event.getOrderId())));
+        }
+        return lines;
+    }
+
+    // Lines per SKU in the order read; each run of the same kind is one transaction
+    private void applyShard(List<Line> shard, Map<ConsumerRecord<String,byte[]>,Exception> failed){
+        Map<String,List<Line>> bySku = new LinkedHashMap<>();
+        for(Line line : shard){
+            bySku.computeIfAbsent(line.sku(), sku -> new ArrayList<>()).add(line);
+        }
+        bySku.forEach((sku, lines) -> {
+            int start = 0;
+            for(int i = 1; i <= lines.size(); i++){
+                if(i == lines.size() || lines.get(i).placed() != lines.get(start).placed()){
+                    applyRun(sku, lines.subList(start, i), failed);
+                    start = i;
+                }
+            }
+        });
+    }
+
+    private void applyRun(String sku, List<Line> run, Map<ConsumerRecord<String,byte[]>,Exception> failed){
+        try{
+            apply(sku, run);
+        } catch (RuntimeException e){
+            if(isTransient(e) || run.size() == 1){
+                fail(run.get(0), e, failed);
+                return;
+            }
+            //find the line the run failed on, the others still go through
+            for(Line line : run){
+                try{
+                    apply(sku, List.of(line));
+                } catch (RuntimeException lineFailure){
+                    fail(line, lineFailure, failed);
+                }
+            }
+        }
+    }
+
+    private void apply(String sku, List<Line> run){
+        if(run.get(0).placed()){
+            List<InventoryService.Reserve> reserves = run.stream().map(Line::reserve).toList();
+            inventoryMetrics.record("order_placed", sku, () -> inventoryService.reserveOrderLines(sku, reserves));
+        } else {
+            List<String> orderIds = run.stream().map(line -> line.reserve().orderId()).toList();
+            inventoryMetrics.record("order_cancelled", sku, () -> inventoryService.releaseOrderLines(sku, orderIds));
+        }
+    }
+
+    private static void fail(Line line, RuntimeException e, Map<ConsumerRecord<String,byte[]>,Exception> failed){
+        if(isTransient(e)){
+            throw e;
+        }
+        failed.putIfAbsent(line.record(), e);
+    }
+
+    private void deadLetter(ConsumerRecord<String,byte[]> record, Exception e){
+        log.warn("Dead-lettering record {}-{}@{} for order: {}", record.topic(), record.partition(), record.offset(), record.key(), e);
+        //throws when the send fails, and the poll is redelivered rather than committed
+        deadLetters.accept(record, e);
+        Counter.builder("inventory.orders.dead_lettered")
+                .description("Order event records sent to their dead-letter topic")
+                .tag("topic", record.topic())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    static boolean isTransient(Throwable e){
+        for(Throwable cause = e; cause != null; cause = cause.getCause()){
+            if(cause instanceof ServiceBusyException || cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof CannotCreateTransactionException){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    void close(){
+        executor.close();
+    }
+
+    private record Line(ConsumerRecord<String,byte[]> record, boolean placed, String sku, InventoryService.Reserve reserve) {
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEventSerializer;
+import com.example.microservice1.Repository.OutboxRepository;
+import com.example.microservice1.model.OutboxEvent;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+// Records an event in the outbox table as part of the caller's transaction. Nothing reaches
+// Kafka until that transaction commits; OutboxRelay picks the rows up from there.
+@Component
+@RequiredArgsConstructor
+public class OutboxPublisher {
+
+    private final OutboxRepository outboxRepository;
+
+    private final InventoryEventSerializer inventoryEventSerializer;
+
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void publish(String topic, String key, InventoryEvent event){
+        byte[] payload = inventoryEventSerializer.serialize(topic, event);
+        outboxRepository.save(new OutboxEvent(null, topic, key, OutboxRelay.lane(key), payload, Instant.now()));
+    }
+}
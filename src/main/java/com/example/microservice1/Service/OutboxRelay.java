@@ -0,0 +1,209 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Repository.OutboxLaneRepository;
+import com.example.microservice1.Repository.OutboxRepository;
+import com.example.microservice1.model.OutboxEvent;
+import com.example.microservice1.model.OutboxLane;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drains the outbox table to Kafka in large batches. Events are spread over LANES lanes by
+// key, and a run first leases up to lanes-per-run lanes that have something to send, in a
+// transaction of its own. Their rows are then read in id order and sent as a whole, with no
+// transaction or connection held while Kafka acknowledges; a second short transaction deletes
+// them once every record was acknowledged. If anything fails the rows stay and are sent again
+// by the next run to lease the lane (at least once); consumers can drop duplicates with the
+// event-id header. Since a lane is only ever leased to one relay, events for one key leave in
+// id order even with several instances relaying; OutboxEvent.id says when that is commit order.
+// lane-lease has to outlast a send, send-timeout; a run stops taking batches once that is no
+// longer certain.
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    public static final String EVENT_ID_HEADER = "event-id";
+
+    //fixed: every instance has to map a key to the same lane
+    public static final int LANES = 64;
+
+    private final OutboxRepository outboxRepository;
+    private final OutboxLaneRepository outboxLaneRepository;
+    private final KafkaTemplate<String,byte[]> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Timer sendLatency;
+    private final Timer deliveryLatency;
+    private final String owner = UUID.randomUUID().toString();
+    private volatile boolean lanesCreated;
+
+    @Value("${inventory.outbox.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${inventory.outbox.send-timeout:30s}")
+    private Duration sendTimeout = Duration.ofSeconds(30);
+
+    @Value("${inventory.outbox.lanes-per-run:16}")
+    private int lanesPerRun = 16;
+
+    @Value("${inventory.outbox.lane-lease:2m}")
+    private Duration laneLease = Duration.ofMinutes(2);
+
+    public OutboxRelay(OutboxRepository outboxRepository, OutboxLaneRepository outboxLaneRepository,
+                       KafkaTemplate<String,byte[]> kafkaTemplate, PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry){
+        this.outboxRepository = outboxRepository;
+        this.outboxLaneRepository = outboxLaneRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        Gauge.builder("inventory.outbox.pending", pending, AtomicLong::get)
+                .description("Events written but not yet acknowledged by Kafka")
+                .register(meterRegistry);
+        Gauge.builder("inventory.outbox.lag", lagMillis, AtomicLong::get)
+                .description("Age of the oldest event still waiting in the outbox")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.sendLatency = Timer.builder("inventory.outbox.send")
+                .description("From handing a batch to the producer until Kafka acknowledged all of it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.deliveryLatency = Timer.builder("inventory.outbox.delivery")
+                .description("From writing an event to the outbox until Kafka acknowledged it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public static int lane(String key){
+        return Math.floorMod(key.hashCode(), LANES);
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.outbox.poll-interval-ms:200}")
+    public void relay(){
+        List<Integer> lanes = List.of();
+        try{
+            Instant leasedUntil = Instant.now().plus(laneLease);
+            lanes = claimLanes(leasedUntil);
+            if(!lanes.isEmpty()){
+                drain(lanes, leasedUntil);
+            }
+        } catch (RuntimeException e){
+            log.warn("Outbox relay run failed, will retry", e);
+        } finally {
+            release(lanes);
+            updateLag();
+        }
+    }
+
+    private List<Integer> claimLanes(Instant leasedUntil){
+        List<Integer> lanes = transactionTemplate.execute(status -> {
+            if(!lanesCreated){
+                createLanes();
+            }
+            List<OutboxLane> free = outboxLaneRepository.lockFreeLanes(Instant.now(), lanesPerRun);
+            free.forEach(lane -> {
+                lane.setOwner(owner);
+                lane.setLeasedUntil(leasedUntil);
+            });
+            return free.stream().map(OutboxLane::getId).toList();
+        });
+        lanesCreated = true;
+        return lanes == null ? List.of() : lanes;
+    }
+
+    // Once per instance; instances starting together may race, the loser retries on its next run
+    private void createLanes(){
+        Set<Integer> existing = new HashSet<>();
+        outboxLaneRepository.findAll().forEach(lane -> existing.add(lane.getId()));
+        List<OutboxLane> missing = new ArrayList<>();
+        for(int id = 0; id < LANES; id++){
+            if(!existing.contains(id)){
+                missing.add(new OutboxLane(id, null, Instant.EPOCH));
+            }
+        }
+        outboxLaneRepository.saveAllAndFlush(missing);
+    }
+
+    private void drain(List<Integer> lanes, Instant leasedUntil){
+        while(true){
+            List<OutboxEvent> batch = outboxRepository.findNextBatch(lanes, batchSize);
+            if(batch.isEmpty()){
+                return;
+            }
+            send(batch);
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.deleteAllInBatch(batch));
+            if(batch.size() < batchSize || Instant.now().plus(sendTimeout).isAfter(leasedUntil)){
+                return;
+            }
+        }
+    }
+
+    private void release(List<Integer> lanes){
+        if(lanes.isEmpty()){
+            return;
+        }
+        try{
+            transactionTemplate.executeWithoutResult(status -> outboxLaneRepository.release(lanes, owner, Instant.EPOCH));
+        } catch (RuntimeException e){
+            log.debug("Could not hand back outbox lanes, their lease runs out on its own", e);
+        }
+    }
+
+    private void send(List<OutboxEvent> batch){
+        long start = System.nanoTime();
+        List<CompletableFuture<SendResult<String,byte[]>>> sends = new ArrayList<>(batch.size());
+        for(OutboxEvent event : batch){
+            ProducerRecord<String,byte[]> record = new ProducerRecord<>(event.getTopic(), event.getEventKey(), event.getPayload());
+            record.headers().add(EVENT_ID_HEADER, Long.toString(event.getId()).getBytes(StandardCharsets.UTF_8));
+            sends.add(kafkaTemplate.send(record));
+        }
+        //everything is queued, no point waiting out linger.ms before we block on the acks
+        kafkaTemplate.flush();
+        try{
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                    .get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while relaying outbox", e);
+        } catch (ExecutionException | TimeoutException e){
+            throw new IllegalStateException("Kafka did not acknowledge outbox batch of " + batch.size(), e);
+        }
+        sendLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        Instant acknowledged = Instant.now();
+        batch.forEach(event -> deliveryLatency.record(Duration.between(event.getCreatedAt(), acknowledged)));
+    }
+
+    private void updateLag(){
+        try{
+            pending.set(outboxRepository.count());
+            lagMillis.set(outboxRepository.findFirstByOrderByIdAsc()
+                    .map(oldest -> Math.max(0, Duration.between(oldest.getCreatedAt(), Instant.now()).toMillis()))
+                    .orElse(0L));
+        } catch (RuntimeException e){
+            log.debug("Could not refresh outbox lag", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Exception.InsufficientStockException;
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.Repository.InventoryRepository;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+// Reserve/release built on the conditional UPDATE statements in InventoryRepository.
+// No row is read into Java and no lock is held beyond the single statement, so hot SKUs
+// are only serialized for the duration of one UPDATE instead of a whole transaction.
+@Component
+@RequiredArgsConstructor
+public class ReservationEngine {
+
+    private final InventoryRepository inventoryRepository;
+
+    @Transactional
+    public void reserve(String sku, int quantity){
+        if(inventoryRepository.reserveStock(sku, quantity) == 0){
+            throw rejected(sku, "Insufficient stock for sku " + sku);
+        }
+    }
+
+    @Transactional
+    public void release(String sku, int quantity){
+        if(inventoryRepository.releaseStock(sku, quantity) == 0){
+            throw rejected(sku, "Cannot release " + quantity + " units for sku " + sku + ", not enough reserved");
+        }
+    }
+
+    // Hands reserved stock back without selling it, e.g. for a cancelled order
+    @Transactional
+    public void cancel(String sku, int quantity){
+        if(inventoryRepository.returnLease(sku, quantity) == 0){
+            throw rejected(sku, "Cannot cancel " + quantity + " units for sku " + sku + ", not enough reserved");
+        }
+    }
+
+    // A zero row count means either the SKU is missing or the guard failed; only then do we
+    // pay for a lookup to tell the two apart.
+    private RuntimeException rejected(String sku, String message){
+        if(!inventoryRepository.existsBySku(sku)){
+            return new InventoryNotFoundException("Inventory not found for SKU: " + sku);
+        }
+        return new InsufficientStockException(message);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.InventoryResponse;
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEvent.EventType;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.Repository.ReservationRepository;
+import com.example.microservice1.model.Inventory;
+import com.example.microservice1.model.Reservation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Hands back holds whose TTL ran out. Scheduling a hold costs nothing beyond the reservation
+// row itself: its expires_at lands in an index, and each sweep range-scans that index for the
+// holds that are due, so the work per run follows the number of expiries rather than the
+// number of outstanding holds. Due holds are taken in batches; each batch returns its stock
+// with one UPDATE per SKU, deletes the holds and queues one EXPIRED event per SKU on
+// inventory-released, all in one transaction.
+//
+// The sweep is driven by the database rather than an in-memory timer, so holds survive a
+// restart and any number of instances can sweep at once without taking the same hold twice.
+@Component
+@Slf4j
+public class ReservationExpiryEngine {
+
+    private final ReservationRepository reservationRepository;
+    private final InventoryRepository inventoryRepository;
+    private final OutboxPublisher outboxPublisher;
+    private final CacheManager cacheManager;
+    private final WarehouseSummaryService warehouseSummaryService;
+    private final StockLedger stockLedger;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter expired;
+
+    @Value("${inventory.reservation.sweep-batch-size:1000}")
+    private int batchSize = 1000;
+
+    public ReservationExpiryEngine(ReservationRepository reservationRepository, InventoryRepository inventoryRepository,
+                                   OutboxPublisher outboxPublisher, CacheManager cacheManager,
+                                   WarehouseSummaryService warehouseSummaryService, StockLedger stockLedger,
+                                   PlatformTransactionManager transactionManager, MeterRegistry meterRegistry){
+        this.reservationRepository = reservationRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.outboxPublisher = outboxPublisher;
+        this.cacheManager = cacheManager;
+        this.warehouseSummaryService = warehouseSummaryService;
+        this.stockLedger = stockLedger;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.expired = Counter.builder("inventory.reservations.expired")
+                .description("Units handed back because their hold ran past its TTL")
+                .baseUnit("units")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval-ms:1000}")
+    public void sweep(){
+        Instant now = Instant.now();
+        try{
+            Integer swept;
+            do{
+                swept = transactionTemplate.execute(status -> expireBatch(now));
+            } while(swept != null && swept == batchSize);
+        } catch (RuntimeException e){
+            log.error("Reservation expiry sweep failed, retrying on the next run", e);
+        }
+    }
+
+    // Holds are locked before their rows, the same order releases take, and rows are updated
+    // in SKU order, so concurrent sweeps and releases cannot deadlock each other
+    int expireBatch(Instant now){
+        List<Reservation> due = reservationRepository.lockExpired(now, batchSize);
+        if(due.isEmpty()){
+            return 0;
+        }
+        Map<String,Integer> quantities = new TreeMap<>();
+        List<Long> ids = new ArrayList<>(due.size());
+        for(Reservation hold : due){
+            quantities.merge(hold.getSku(), hold.getQuantity(), Integer::sum);
+            ids.add(hold.getId());
+        }
+        reservationRepository.deleteAllByIdInBatch(ids);
+        Set<String> returned = new HashSet<>();
+        quantities.forEach((sku, quantity) -> {
+            if(inventoryRepository.returnLease(sku, quantity) == 0){
+                //row deleted or already short of reserved stock; the hold goes either way
+                log.warn("Could not hand back {} expired units for SKU: {}", quantity, sku);
+            } else {
+                returned.add(sku);
+            }
+        });
+
+        Cache cache = cacheManager.getCache("inventory");
+        long units = 0;
+        for(Inventory inventory : inventoryRepository.findBySkuIn(quantities.keySet())){
+            int quantity = quantities.get(inventory.getSku());
+            //nothing was handed back on a row that was short, so nothing is announced for it either
+            if(returned.contains(inventory.getSku())){
+                units += quantity;
+                outboxPublisher.publish("inventory-released", inventory.getSku(), InventoryEvent.of(EventType.EXPIRED, inventory, -quantity));
+                warehouseSummaryService.recordChange(inventory, 0, 0, -quantity, inventory.isLowStock());
+                stockLedger.record(inventory, StockLedger.Kind.EXPIRED, 0, -quantity, null, null);
+            }
+            if(cache != null){
+                cache.put(inventory.getSku(), InventoryResponse.fromEntity(inventory));
+            }
+        }
+        expired.increment(units);
+        log.info("Expired {} holds across {} SKUs", due.size(), quantities.size());
+        return due.size();
+    }
+}
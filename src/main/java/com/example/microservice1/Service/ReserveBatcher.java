@@ -0,0 +1,185 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.ReservationResponse;
+import com.example.microservice1.Exception.InsufficientStockException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Coalesces concurrent reserve calls for the same SKU. Calls queue per SKU and one drain
+// thread per busy SKU applies them a batch at a time through InventoryService.reserveCoalesced:
+// one conditional update, taking the row lock once, for the whole batch instead of one transaction
+// each queueing on that lock. Calls arriving while a batch is in the database make up the
+// next one, so batches grow with contention on their own; a SKU that just had a batch of
+// more than one also waits up to max-wait for stragglers before the next.
+//
+// A call that finds its SKU idle is applied alone through the plain reserveStock path, and
+// hot SKUs (HotSkuLedger) are served from their lease and skip the batcher altogether. The
+// lease is drawn on here, outside any transaction, and only the hold is recorded in one.
+@Component
+@Slf4j
+public class ReserveBatcher {
+
+    private final InventoryService inventoryService;
+    private final HotSkuLedger hotSkuLedger;
+    private final Map<String,Lane> lanes = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSizes;
+    private final Timer batchWaits;
+
+    @Value("${inventory.reserve-batching.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${inventory.reserve-batching.max-batch-size:256}")
+    private int maxBatchSize = 256;
+
+    @Value("${inventory.reserve-batching.max-wait:200us}")
+    private Duration maxWait = Duration.ofNanos(200_000);
+
+    public ReserveBatcher(InventoryService inventoryService, HotSkuLedger hotSkuLedger, MeterRegistry meterRegistry){
+        this.inventoryService = inventoryService;
+        this.hotSkuLedger = hotSkuLedger;
+        this.batchSizes = DistributionSummary.builder("inventory.reserve.batch.size")
+                .description("Reserve calls applied together per SKU")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchWaits = Timer.builder("inventory.reserve.batch.wait")
+                .description("Time a reserve call queued before its batch started")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public ReservationResponse reserve(String sku, int quantity, Duration ttl){
+        //taken before any transaction opens, see HotSkuLedger.tryReserve
+        if(hotSkuLedger.tryReserve(sku, quantity)){
+            try{
+                return inventoryService.reserveFromLease(sku, quantity, ttl);
+            } catch (RuntimeException e){
+                hotSkuLedger.returnGrant(sku, quantity);
+                throw e;
+            }
+        }
+        if(!enabled || hotSkuLedger.isHot(sku)){
+            return inventoryService.reserveStock(sku, quantity, ttl);
+        }
+        Pending pending = new Pending(new InventoryService.Reserve(quantity, ttl, null), System.nanoTime(), new CompletableFuture<>());
+        while(true){
+            Lane lane = lanes.computeIfAbsent(sku, key -> new Lane());
+            boolean drain;
+            lane.lock.lock();
+            try{
+                if(lane.retired){
+                    continue;
+                }
+                lane.queue.add(pending);
+                drain = !lane.draining;
+                lane.draining = true;
+            } finally {
+                lane.lock.unlock();
+            }
+            if(drain){
+                Thread.ofVirtual().name("reserve-batch-" + sku).start(() -> drain(sku, lane));
+            }
+            return await(pending.result());
+        }
+    }
+
+    private void drain(String sku, Lane lane){
+        while(true){
+            if(lane.lastBatchSize > 1 && !maxWait.isZero() && lane.size() < maxBatchSize){
+                LockSupport.parkNanos(maxWait.toNanos());
+            }
+            List<Pending> batch = new ArrayList<>();
+            lane.lock.lock();
+            try{
+                while(batch.size() < maxBatchSize && !lane.queue.isEmpty()){
+                    batch.add(lane.queue.poll());
+                }
+                if(batch.isEmpty()){
+                    lane.retired = true;
+                    lanes.remove(sku, lane);
+                    return;
+                }
+            } finally {
+                lane.lock.unlock();
+            }
+            lane.lastBatchSize = batch.size();
+            apply(sku, batch);
+        }
+    }
+
+    private void apply(String sku, List<Pending> batch){
+        long start = System.nanoTime();
+        batch.forEach(pending -> batchWaits.record(start - pending.enqueuedAt(), TimeUnit.NANOSECONDS));
+        batchSizes.record(batch.size());
+        try{
+            if(batch.size() == 1){
+                Pending pending = batch.get(0);
+                pending.result().complete(inventoryService.reserveStock(sku, pending.reserve().quantity(), pending.reserve().ttl()));
+                return;
+            }
+            List<ReservationResponse> granted = inventoryService.reserveCoalesced(sku, batch.stream().map(Pending::reserve).toList());
+            for(int i = 0; i < batch.size(); i++){
+                ReservationResponse response = granted.get(i);
+                if(response != null){
+                    batch.get(i).result().complete(response);
+                } else {
+                    batch.get(i).result().completeExceptionally(new InsufficientStockException("Insufficient stock for sku " + sku));
+                }
+            }
+        } catch (RuntimeException e){
+            //the batch rolled back as a whole, e.g. unknown SKU or no connection
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        } catch (Error e){
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+            throw e;
+        }
+    }
+
+    private static ReservationResponse await(CompletableFuture<ReservationResponse> result){
+        try{
+            return result.join();
+        } catch (CompletionException e){
+            if(e.getCause() instanceof RuntimeException cause){
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Pending(InventoryService.Reserve reserve, long enqueuedAt, CompletableFuture<ReservationResponse> result) {
+    }
+
+    private static final class Lane {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        private boolean draining;
+        //set once the lane is dropped from the map; callers holding it go round again
+        private boolean retired;
+        //only touched by the drain thread
+        private int lastBatchSize;
+
+        private int size(){
+            lock.lock();
+            try{
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.StockLevelResponse;
+import com.example.microservice1.Dto.StockMovementResponse;
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.model.Inventory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Append-only history of the stock on every Inventory row, for audit and for point-in-time
+// questions the row cannot answer ("stock of SKU X at time T").
+//
+// Each change to a row's quantity or reserved quantity is recorded as a movement: the two
+// deltas and the row version after the change. Movements are buffered per transaction and
+// inserted in one batch just before it commits, so they exist exactly when the change does.
+// Every snapshot-interval the rows changed since the previous run are copied into
+// stock_snapshot, and once a day every row is. The stock at T is then the nearest snapshot
+// at or before T plus the movements after it with a higher version, at most one interval of
+// them; comparing versions rather than timestamps makes the two line up exactly.
+//
+// On PostgreSQL both tables are partitioned by UTC day, created ahead of time (today and
+// partitions-ahead days with the tables, then by the maintenance run), and days past
+// retention-days are dropped as whole partitions. Rows outside every partition land in a
+// default partition rather than failing the mutation, and move to their day's partition
+// when it is created.
+// Elsewhere (H2 in tests and benchmarks) they are plain tables.
+//
+// Changes that bypass the movements, the bulk import, are covered by the next snapshot,
+// which the import asks for as soon as it is done.
+@Service
+@Slf4j
+public class StockLedger {
+
+    public enum Kind {
+        CREATED, UPDATED, RESERVED, RELEASED, EXPIRED, LEASED, LEASE_RETURNED, CANCELLED
+    }
+
+    public record Movement(Instant occurredAt, String sku, String warehouseId, Kind kind, int quantityDelta,
+                           int reservedDelta, long version, String orderId, Long reservationId) {
+    }
+
+    record Snapshot(Instant takenAt, String warehouseId, int quantity, int reservedQuantity, long version) {
+    }
+
+    private static final String MOVEMENT = "stock_movement";
+    private static final String SNAPSHOT = "stock_snapshot";
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+    //a change can read the clock, then commit after a snapshot already read its row
+    private static final Duration SLACK = Duration.ofMinutes(1);
+    private static final int MAX_MOVEMENTS = 1000;
+
+    private static final String INSERT_MOVEMENT = "INSERT INTO stock_movement " +
+            "(occurred_at, sku, warehouse_id, kind, quantity_delta, reserved_delta, version, order_id, reservation_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SNAPSHOT_ROWS = "INSERT INTO stock_snapshot " +
+            "(taken_at, sku, warehouse_id, quantity, reserved_quantity, version) " +
+            "SELECT ?, sku, warehouse_id, quantity, reserved_quantity, version FROM inventory";
+    private static final String LATEST_SNAPSHOT = "SELECT taken_at, warehouse_id, quantity, reserved_quantity, version " +
+            "FROM stock_snapshot WHERE sku = ? AND taken_at <= ? AND taken_at >= ? ORDER BY taken_at DESC LIMIT 1";
+    private static final String MOVEMENTS_SINCE = "SELECT occurred_at, sku, warehouse_id, kind, quantity_delta, reserved_delta, " +
+            "version, order_id, reservation_id FROM stock_movement " +
+            "WHERE sku = ? AND occurred_at >= ? AND occurred_at <= ? AND version > ? ORDER BY version";
+    private static final String MOVEMENTS_BETWEEN = "SELECT occurred_at, sku, warehouse_id, kind, quantity_delta, reserved_delta, " +
+            "version, order_id, reservation_id FROM stock_movement " +
+            "WHERE sku = ? AND occurred_at >= ? AND occurred_at < ? ORDER BY occurred_at, version LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean snapshotRequested = new AtomicBoolean();
+    //null until the tables are in place
+    private volatile Boolean partitioned;
+
+    @Value("${inventory.stock-ledger.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${inventory.stock-ledger.snapshot-interval:1h}")
+    private Duration snapshotInterval = Duration.ofHours(1);
+
+    @Value("${inventory.stock-ledger.retention-days:90}")
+    private int retentionDays = 90;
+
+    @Value("${inventory.stock-ledger.partitions-ahead:7}")
+    private int partitionsAhead = 7;
+
+    public StockLedger(JdbcTemplate jdbcTemplate, DataSource dataSource, PlatformTransactionManager transactionManager){
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Records how a mutation changed a row; `after` is the row once changed, version included
+    public void record(Inventory after, Kind kind, int quantityDelta, int reservedDelta, String orderId, Long reservationId){
+        record(after.getSku(), after.getWarehouseId(), after.getVersion(), kind, quantityDelta, reservedDelta, orderId, reservationId);
+    }
+
+    public void record(String sku, String warehouseId, long version, Kind kind, int quantityDelta, int reservedDelta,
+                       String orderId, Long reservationId){
+        if(!enabled){
+            return;
+        }
+        Movement movement = new Movement(Instant.now(), sku, warehouseId, kind, quantityDelta, reservedDelta, version,
+                orderId, reservationId);
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            insert(List.of(movement));
+            return;
+        }
+        //looked up per transaction: a REQUIRES_NEW inside one gets a batch of its own
+        for(TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()){
+            if(synchronization instanceof PendingMovements pending && pending.ledger() == this){
+                pending.movements().add(movement);
+                return;
+            }
+        }
+        PendingMovements pending = new PendingMovements(this, new ArrayList<>());
+        pending.movements().add(movement);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+    }
+
+    // For changes made without movements, e.g. a bulk import
+    public void snapshotSoon(){
+        snapshotRequested.set(true);
+    }
+
+    @Transactional(readOnly = true)
+    public StockLevelResponse stockAt(String sku, String warehouseId, Instant at){
+        ensureSchema();
+        //a full snapshot is taken every day, so one is normally found within the last day and a bit
+        Snapshot snapshot = latestSnapshot(sku, at, at.minus(Duration.ofDays(1)).minus(snapshotInterval).minus(SLACK));
+        if(snapshot == null){
+            snapshot = latestSnapshot(sku, at, Instant.EPOCH);
+        }
+        List<Movement> movements = jdbcTemplate.query(MOVEMENTS_SINCE, StockLedger::movement, sku,
+                utc(snapshot == null ? Instant.EPOCH : snapshot.takenAt().minus(SLACK)), utc(at),
+                snapshot == null ? -1 : snapshot.version());
+        StockLevelResponse level = replay(sku, at, snapshot, movements);
+        if(level == null || (warehouseId != null && !warehouseId.equals(level.getWarehouseId()))){
+            throw new InventoryNotFoundException("No stock history for SKU: " + sku + " at " + at);
+        }
+        return level;
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockMovementResponse> movements(String sku, Instant from, Instant to, int limit){
+        ensureSchema();
+        return jdbcTemplate.query(MOVEMENTS_BETWEEN, StockLedger::movement, sku, utc(from), utc(to),
+                        Math.min(Math.max(limit, 1), MAX_MOVEMENTS)).stream()
+                .map(StockMovementResponse::fromMovement)
+                .toList();
+    }
+
+    // The snapshot with the movements after it applied in version order. Without a snapshot the
+    // history has to start with the row being created, otherwise it begins after T.
+    static StockLevelResponse replay(String sku, Instant at, Snapshot snapshot, List<Movement> movements){
+        if(snapshot == null && (movements.isEmpty() || movements.get(0).kind() != Kind.CREATED)){
+            return null;
+        }
+        String warehouseId = snapshot == null ? null : snapshot.warehouseId();
+        int quantity = snapshot == null ? 0 : snapshot.quantity();
+        int reserved = snapshot == null ? 0 : snapshot.reservedQuantity();
+        long version = snapshot == null ? -1 : snapshot.version();
+        for(Movement movement : movements){
+            quantity += movement.quantityDelta();
+            reserved += movement.reservedDelta();
+            version = movement.version();
+            warehouseId = movement.warehouseId();
+        }
+        return new StockLevelResponse(sku, warehouseId, at, quantity, reserved, quantity - reserved, version,
+                snapshot == null ? null : snapshot.takenAt(), movements.size());
+    }
+
+    // Keeps partitions ahead of the clock, drops expired ones and takes the snapshots that are
+    // due. Instances take turns through the rows of stock_ledger_run, each held for the update.
+    @Scheduled(fixedDelayString = "${inventory.stock-ledger.maintenance-interval-ms:60000}")
+    public void maintain(){
+        if(!enabled){
+            return;
+        }
+        try{
+            ensureSchema();
+            Instant now = Instant.now();
+            if(partitioned){
+                transactionTemplate.executeWithoutResult(status -> {
+                    if(claim("partitions", now, now.minus(Duration.ofHours(1))) != null){
+                        managePartitions(now);
+                    }
+                });
+            }
+            Instant startOfDay = LocalDate.ofInstant(now, ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant();
+            Boolean full = transactionTemplate.execute(status -> {
+                if(claim("full-snapshot", now, startOfDay) == null){
+                    return false;
+                }
+                int rows = jdbcTemplate.update(SNAPSHOT_ROWS, utc(now));
+                log.info("Took a full stock snapshot of {} rows", rows);
+                return true;
+            });
+            if(Boolean.TRUE.equals(full)){
+                snapshotRequested.set(false);
+                return;
+            }
+            Instant due = snapshotRequested.getAndSet(false) ? now : now.minus(snapshotInterval);
+            transactionTemplate.executeWithoutResult(status -> {
+                Instant previous = claim("snapshot", now, due);
+                if(previous != null){
+                    LocalDateTime since = LocalDateTime.ofInstant(previous.minus(SLACK), ZoneId.systemDefault());
+                    int rows = jdbcTemplate.update(SNAPSHOT_ROWS + " WHERE updated_at >= ?", utc(now), since);
+                    log.debug("Took stock snapshots of {} rows changed since {}", rows, since);
+                }
+            });
+        } catch (RuntimeException e){
+            log.error("Stock ledger maintenance failed, retrying on the next run", e);
+        }
+    }
+
+    // Returns when the task last ran and takes it over, or null if it ran at or after dueBefore
+    private Instant claim(String task, Instant now, Instant dueBefore){
+        Instant last = jdbcTemplate.queryForObject("SELECT last_run FROM stock_ledger_run WHERE name = ? FOR UPDATE",
+                (rs, row) -> rs.getObject(1, OffsetDateTime.class).toInstant(), task);
+        if(last == null || !last.isBefore(dueBefore)){
+            return null;
+        }
+        jdbcTemplate.update("UPDATE stock_ledger_run SET last_run = ? WHERE name = ?", utc(now), task);
+        return last;
+    }
+
+    private void managePartitions(Instant now){
+        LocalDate today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        LocalDate oldest = today.minusDays(retentionDays);
+        for(String table : List.of(MOVEMENT, SNAPSHOT)){
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try(Statement statement = connection.createStatement()){
+                    createPartitions(statement, table, today);
+                }
+                return null;
+            });
+            List<String> partitions = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                    "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?",
+                    String.class, table);
+            for(String partition : partitions){
+                String suffix = partition.substring(table.length() + 1);
+                if(suffix.matches("\\d{8}") && LocalDate.parse(suffix, DAY).isBefore(oldest)){
+                    jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                    log.info("Dropped expired stock ledger partition {}", partition);
+                }
+            }
+        }
+    }
+
+    // Created on first use on a connection of its own, outside whatever transaction is running
+    void ensureSchema(){
+        if(partitioned != null){
+            return;
+        }
+        synchronized(this){
+            if(partitioned != null){
+                return;
+            }
+            try{
+                createSchema();
+            } catch (SQLException e){
+                //another instance creating the same tables at the same moment, they exist now
+                log.debug("Creating the stock ledger tables failed, trying once more", e);
+                try{
+                    createSchema();
+                } catch (SQLException again){
+                    throw new IllegalStateException("Could not create the stock ledger tables", again);
+                }
+            }
+        }
+    }
+
+    private void createSchema() throws SQLException {
+        try(Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()){
+            connection.setAutoCommit(true);
+            boolean postgres = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+            String partitionBy = postgres ? " PARTITION BY RANGE (%s)" : "";
+            statement.execute("CREATE TABLE IF NOT EXISTS stock_movement (" +
+                    "occurred_at TIMESTAMP WITH TIME ZONE NOT NULL, sku VARCHAR(100) NOT NULL, " +
+                    "warehouse_id VARCHAR(255) NOT NULL, kind VARCHAR(20) NOT NULL, quantity_delta INTEGER NOT NULL, " +
+                    "reserved_delta INTEGER NOT NULL, version BIGINT NOT NULL, order_id VARCHAR(255), reservation_id BIGINT)"
+                    + partitionBy.formatted("occurred_at"));
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_stock_movement_sku ON stock_movement (sku, occurred_at)");
+            statement.execute("CREATE TABLE IF NOT EXISTS stock_snapshot (" +
+                    "taken_at TIMESTAMP WITH TIME ZONE NOT NULL, sku VARCHAR(100) NOT NULL, " +
+                    "warehouse_id VARCHAR(255) NOT NULL, quantity INTEGER NOT NULL, reserved_quantity INTEGER NOT NULL, " +
+                    "version BIGINT NOT NULL)" + partitionBy.formatted("taken_at"));
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_stock_snapshot_sku ON stock_snapshot (sku, taken_at)");
+            if(postgres){
+                statement.execute("CREATE TABLE IF NOT EXISTS stock_movement_default PARTITION OF stock_movement DEFAULT");
+                statement.execute("CREATE TABLE IF NOT EXISTS stock_snapshot_default PARTITION OF stock_snapshot DEFAULT");
+                //before anything is written, so today's rows do not start out in the default partition
+                LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                connection.setAutoCommit(false);
+                try{
+                    createPartitions(statement, MOVEMENT, today);
+                    createPartitions(statement, SNAPSHOT, today);
+                    connection.commit();
+                } catch (SQLException e){
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+            statement.execute("CREATE TABLE IF NOT EXISTS stock_ledger_run (" +
+                    "name VARCHAR(50) PRIMARY KEY, last_run TIMESTAMP WITH TIME ZONE NOT NULL)");
+            for(String task : List.of("partitions", "full-snapshot", "snapshot")){
+                statement.execute("INSERT INTO stock_ledger_run (name, last_run) SELECT '" + task + "', " +
+                        "TIMESTAMP WITH TIME ZONE '1970-01-01 00:00:00+00' " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM stock_ledger_run WHERE name = '" + task + "')");
+            }
+            partitioned = postgres;
+        }
+    }
+
+    // Creates the partitions from today to partitions-ahead days out that do not exist yet, in
+    // the caller's transaction. Rows that landed in the default partition meanwhile would make a
+    // plain CREATE ... PARTITION OF fail, so the default partition is detached, the new one
+    // created, the day's rows moved over and the default attached again; all of it holds the
+    // parent locked, but runs once per new day.
+    private void createPartitions(Statement statement, String table, LocalDate today) throws SQLException {
+        String column = MOVEMENT.equals(table) ? "occurred_at" : "taken_at";
+        String defaultPartition = table + "_default";
+        for(int i = 0; i <= partitionsAhead; i++){
+            LocalDate day = today.plusDays(i);
+            String partition = table + "_" + DAY.format(day);
+            try(ResultSet exists = statement.executeQuery("SELECT to_regclass('" + partition + "') IS NOT NULL")){
+                if(exists.next() && exists.getBoolean(1)){
+                    continue;
+                }
+            }
+            String from = "'" + day + " 00:00:00+00'";
+            String to = "'" + day.plusDays(1) + " 00:00:00+00'";
+            String range = column + " >= " + from + " AND " + column + " < " + to;
+            statement.execute("ALTER TABLE " + table + " DETACH PARTITION " + defaultPartition);
+            statement.execute("CREATE TABLE " + partition + " PARTITION OF " + table + " FOR VALUES FROM (" + from + ") TO (" + to + ")");
+            int moved = statement.executeUpdate("INSERT INTO " + table + " SELECT * FROM " + defaultPartition + " WHERE " + range);
+            statement.executeUpdate("DELETE FROM " + defaultPartition + " WHERE " + range);
+            statement.execute("ALTER TABLE " + table + " ATTACH PARTITION " + defaultPartition + " DEFAULT");
+            if(moved > 0){
+                log.info("Moved {} rows from {} into the new partition {}", moved, defaultPartition, partition);
+            }
+        }
+    }
+
+    private void insert(List<Movement> movements){
+        ensureSchema();
+        jdbcTemplate.batchUpdate(INSERT_MOVEMENT, movements, movements.size(), (ps, movement) -> {
+            ps.setObject(1, utc(movement.occurredAt()));
+            ps.setString(2, movement.sku());
+            ps.setString(3, movement.warehouseId());
+            ps.setString(4, movement.kind().name());
+            ps.setInt(5, movement.quantityDelta());
+            ps.setInt(6, movement.reservedDelta());
+            ps.setLong(7, movement.version());
+            ps.setString(8, movement.orderId());
+            if(movement.reservationId() == null){
+                ps.setNull(9, Types.BIGINT);
+            } else {
+                ps.setLong(9, movement.reservationId());
+            }
+        });
+    }
+
+    private Snapshot latestSnapshot(String sku, Instant at, Instant notBefore){
+        List<Snapshot> snapshots = jdbcTemplate.query(LATEST_SNAPSHOT, (rs, row) -> new Snapshot(
+                rs.getObject(1, OffsetDateTime.class).toInstant(), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getLong(5)),
+                sku, utc(at), utc(notBefore));
+        return snapshots.isEmpty() ? null : snapshots.get(0);
+    }
+
+    private static Movement movement(ResultSet rs, int row) throws SQLException {
+        long reservationId = rs.getLong(9);
+        return new Movement(rs.getObject(1, OffsetDateTime.class).toInstant(), rs.getString(2), rs.getString(3),
+                Kind.valueOf(rs.getString(4)), rs.getInt(5), rs.getInt(6), rs.getLong(7), rs.getString(8),
+                rs.wasNull() ? null : reservationId);
+    }
+
+    private static OffsetDateTime utc(Instant instant){
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+    // The movements of one transaction, written just before it commits and dropped on rollback
+    private record PendingMovements(StockLedger ledger, List<Movement> movements) implements TransactionSynchronization {
+
+        @Override
+        public void beforeCommit(boolean readOnly){
+            ledger.insert(movements);
+        }
+    }
+}
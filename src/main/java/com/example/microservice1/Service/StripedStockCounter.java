@@ -0,0 +1,110 @@
+package com.example.microservice1.Service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Stock held in memory for one hot SKU, spread over padded cells so concurrent reservers
+// mostly CAS on different cache lines. A reserver only falls back to the shared lock when
+// its own cell cannot cover the request, at which point all cells are pooled and re-spread.
+final class StripedStockCounter {
+
+    //8 longs = 64 bytes, keeps neighbouring stripes off the same cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+    private final ReentrantLock rebalanceLock = new ReentrantLock();
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private final LongAdder grants = new LongAdder();
+    private volatile boolean retired;
+
+    StripedStockCounter(int stripes){
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.cells = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+    }
+
+    boolean tryTake(int quantity){
+        int start = probe();
+        for(int i = 0; i <= mask; i++){
+            int index = ((start + i) & mask) * PADDING;
+            long current;
+            while((current = cells.get(index)) >= quantity){
+                if(cells.compareAndSet(index, current, current - quantity)){
+                    grants.increment();
+                    return true;
+                }
+            }
+        }
+        return takeFromPool(quantity);
+    }
+
+    // No single cell had enough, but the sum might
+    private boolean takeFromPool(int quantity){
+        rebalanceLock.lock();
+        try{
+            long total = drain();
+            if(total >= quantity){
+                add(total - quantity);
+                grants.increment();
+                return true;
+            }
+            add(total);
+            return false;
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    void add(long quantity){
+        int stripes = mask + 1;
+        long share = quantity / stripes;
+        long remainder = quantity % stripes;
+        for(int i = 0; i < stripes; i++){
+            long amount = share + (i < remainder ? 1 : 0);
+            if(amount != 0){
+                cells.addAndGet(i * PADDING, amount);
+            }
+        }
+    }
+
+    long drain(){
+        long total = 0;
+        for(int i = 0; i <= mask; i++){
+            total += cells.getAndSet(i * PADDING, 0);
+        }
+        return total;
+    }
+
+    long available(){
+        long total = 0;
+        for(int i = 0; i <= mask; i++){
+            total += cells.get(i * PADDING);
+        }
+        return total;
+    }
+
+    long grantsThenReset(){
+        return grants.sumThenReset();
+    }
+
+    ReentrantLock refillLock(){
+        return refillLock;
+    }
+
+    boolean isRetired(){
+        return retired;
+    }
+
+    void retire(){
+        retired = true;
+    }
+
+    private int probe(){
+        long id = Thread.currentThread().threadId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        return (h * 0x9E3779B9) >>> 16;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.WarehouseSummaryResponse;
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.Repository.WarehouseSummaryRepository;
+import com.example.microservice1.model.Inventory;
+import com.example.microservice1.model.WarehouseSummary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-warehouse totals (SKUs, units, reserved units, stock value, low-stock SKUs) served from
+// one row per warehouse instead of summing the warehouse's rows on every request.
+//
+// InventoryService reports the delta of every mutation once it commits. Deltas are summed in
+// memory and added to the summary rows once a second, one upsert per warehouse, so the
+// reservation hot path never waits on a shared summary row. What can drift is what never
+// becomes a delta: stock leased by hot SKUs, rows changed by the bulk import, and deltas an
+// instance held when it died. The reconciliation recomputes every warehouse from the
+// Inventory table and overwrites whatever disagrees; it runs on a timer and soon after each
+// import.
+@Service
+@Slf4j
+public class WarehouseSummaryService {
+
+    private final WarehouseSummaryRepository warehouseSummaryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String,Delta> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean reconcileRequested = new AtomicBoolean();
+    private final Counter drifted;
+
+    public WarehouseSummaryService(WarehouseSummaryRepository warehouseSummaryRepository,
+                                   PlatformTransactionManager transactionManager, MeterRegistry meterRegistry){
+        this.warehouseSummaryRepository = warehouseSummaryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.drifted = Counter.builder("inventory.warehouse-summary.drifted")
+                .description("Warehouse summaries the reconciliation found out of step with the Inventory table")
+                .register(meterRegistry);
+    }
+
+    @Transactional(readOnly = true)
+    public WarehouseSummaryResponse getSummary(String warehouseId){
+        return warehouseSummaryRepository.findById(warehouseId)
+                .map(WarehouseSummaryResponse::fromEntity)
+                .orElseThrow(()-> new InventoryNotFoundException("No inventory in warehouse: " + warehouseId));
+    }
+
+    @Transactional(readOnly = true)
+    public List<WarehouseSummaryResponse> getSummaries(){
+        return warehouseSummaryRepository.findAll().stream()
+                .map(WarehouseSummaryResponse::fromEntity)
+                .toList();
+    }
+
+    // Records how a mutation changed a row; counted only if the surrounding transaction commits.
+    // wasLowStock is the row's low-stock state before the change.
+    public void recordChange(Inventory after, int skuDelta, int unitsDelta, int reservedDelta, boolean wasLowStock){
+        int lowStockDelta = (after.isLowStock() ? 1 : 0) - (wasLowStock ? 1 : 0);
+        if(skuDelta == 0 && unitsDelta == 0 && reservedDelta == 0 && lowStockDelta == 0){
+            return;
+        }
+        long valueDelta = (long) unitsDelta * cents(after);
+        String warehouseId = after.getWarehouseId();
+        Runnable apply = () -> pending.computeIfAbsent(warehouseId, key -> new Delta())
+                .add(skuDelta, unitsDelta, reservedDelta, valueDelta, lowStockDelta);
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit(){
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    // For changes too broad to track as deltas, e.g. a bulk import
+    public void reconcileSoon(){
+        reconcileRequested.set(true);
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.warehouse-summary.flush-interval-ms:1000}")
+    public void flush(){
+        Map<String,long[]> batch = new HashMap<>();
+        pending.forEach((warehouseId, delta) -> {
+            long[] sums = delta.drain();
+            if(sums != null){
+                batch.put(warehouseId, sums);
+            }
+        });
+        if(!batch.isEmpty()){
+            try{
+                Instant now = Instant.now();
+                transactionTemplate.executeWithoutResult(status -> batch.forEach((warehouseId, sums) ->
+                        warehouseSummaryRepository.addDelta(warehouseId, sums[0], sums[1], sums[2], sums[3], sums[4], now)));
+            } catch (RuntimeException e){
+                log.error("Flushing warehouse summary deltas failed, keeping them for the next run", e);
+                batch.forEach((warehouseId, sums) -> pending.computeIfAbsent(warehouseId, key -> new Delta())
+                        .add(sums[0], sums[1], sums[2], sums[3], sums[4]));
+            }
+        }
+        if(reconcileRequested.getAndSet(false)){
+            reconcile();
+        }
+    }
+
+    // Reconciles right after a flush, so deltas this instance already held are not counted
+    // twice; ones arriving in between, here or on other instances, are off until the next run
+    @Scheduled(fixedDelayString = "${inventory.warehouse-summary.reconcile-interval-ms:600000}",
+            initialDelayString = "${inventory.warehouse-summary.reconcile-initial-delay-ms:10000}")
+    public void scheduleReconcile(){
+        reconcileSoon();
+    }
+
+    void reconcile(){
+        try{
+            Integer fixed = transactionTemplate.execute(status -> reconcileAll(Instant.now()));
+            if(fixed != null && fixed > 0){
+                log.warn("Reconciled {} warehouse summaries that had drifted", fixed);
+            }
+        } catch (RuntimeException e){
+            log.error("Warehouse summary reconciliation failed, retrying on the next run", e);
+        }
+    }
+
+    int reconcileAll(Instant now){
+        Map<String,WarehouseSummary> current = new HashMap<>();
+        warehouseSummaryRepository.findAll().forEach(summary -> current.put(summary.getWarehouseId(), summary));
+        int fixed = 0;
+        for(Object[] row : warehouseSummaryRepository.aggregateInventory()){
+            WarehouseSummary actual = new WarehouseSummary((String) row[0], number(row[1]), number(row[2]), number(row[3]),
+                    number(row[4]), number(row[5]), now, now);
+            WarehouseSummary summary = current.remove(actual.getWarehouseId());
+            if(summary == null || !sameTotals(summary, actual)){
+                fixed++;
+            }
+            warehouseSummaryRepository.save(actual);
+        }
+        //warehouses that no longer hold any SKU
+        fixed += current.size();
+        warehouseSummaryRepository.deleteAll(current.values());
+        drifted.increment(fixed);
+        return fixed;
+    }
+
+    private static boolean sameTotals(WarehouseSummary a, WarehouseSummary b){
+        return a.getSkuCount() == b.getSkuCount() && a.getUnits() == b.getUnits()
+                && a.getReservedUnits() == b.getReservedUnits() && a.getStockValueCents() == b.getStockValueCents()
+                && a.getLowStockCount() == b.getLowStockCount();
+    }
+
+    private static long number(Object value){
+        return ((Number) Objects.requireNonNull(value)).longValue();
+    }
+
+    private static long cents(Inventory inventory){
+        return inventory.getUnitPrice() == null ? 0 : inventory.getUnitPrice().movePointRight(2).longValue();
+    }
+
+    // Running sums for one warehouse; drained field by field, which never loses an update
+    private static final class Delta {
+        private final LongAdder skuCount = new LongAdder();
+        private final LongAdder units = new LongAdder();
+        private final LongAdder reservedUnits = new LongAdder();
+        private final LongAdder stockValueCents = new LongAdder();
+        private final LongAdder lowStockCount = new LongAdder();
+
+        void add(long skus, long unitsDelta, long reservedDelta, long valueDelta, long lowStockDelta){
+            skuCount.add(skus);
+            units.add(unitsDelta);
+            reservedUnits.add(reservedDelta);
+            stockValueCents.add(valueDelta);
+            lowStockCount.add(lowStockDelta);
+        }
+
+        long[] drain(){
+            long[] sums = {skuCount.sumThenReset(), units.sumThenReset(), reservedUnits.sumThenReset(),
+                    stockValueCents.sumThenReset(), lowStockCount.sumThenReset()};
+            for(long sum : sums){
+                if(sum != 0){
+                    return sums;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.microservice1.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Takes a bulkhead permit for every connection handed out and gives it back when the
+// connection is closed, i.e. returned to the pool
+public class BulkheadDataSource extends DelegatingDataSource {
+
+    private final JdbcBulkhead bulkhead;
+
+    public BulkheadDataSource(DataSource target, JdbcBulkhead bulkhead){
+        super(target);
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        bulkhead.acquire();
+        try{
+            return guard(obtainTargetDataSource().getConnection());
+        } catch (SQLException | RuntimeException e){
+            bulkhead.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        bulkhead.acquire();
+        try{
+            return guard(obtainTargetDataSource().getConnection(username, password));
+        } catch (SQLException | RuntimeException e){
+            bulkhead.release();
+            throw e;
+        }
+    }
+
+    private Connection guard(Connection connection){
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if(method.getName().equals("close") && method.getParameterCount() == 0){
+                        try{
+                            connection.close();
+                        } finally {
+                            if(released.compareAndSet(false, true)){
+                                bulkhead.release();
+                            }
+                        }
+                        return null;
+                    }
+                    if(method.getName().equals("equals")){
+                        return proxy == args[0];
+                    }
+                    if(method.getName().equals("hashCode")){
+                        return System.identityHashCode(proxy);
+                    }
+                    if(method.getName().equals("unwrap") && ((Class<?>) args[0]).isInstance(connection)){
+                        return connection;
+                    }
+                    try{
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e){
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
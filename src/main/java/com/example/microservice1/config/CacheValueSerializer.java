@@ -0,0 +1,271 @@
+package com.example.microservice1.config;
+
+import com.example.microservice1.Dto.InventoryResponse;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// L2 value codec. InventoryResponse entries are written as
+//
+//   byte    format: 0x01 binary, 0x02 JSON; 0x80 set when the body is deflated
+//   varint  body length before deflating, only when deflated
+//   body
+//
+// The binary body is a varint presence bitmap (bit 16 carries the low stock flag) followed
+// by the present fields in declaration order: numbers as zigzag varints, strings as a varint
+// byte length and UTF-8, prices as scale and unscaled bytes, timestamps as UTC epoch seconds
+// and nanos. The JSON body is the plain InventoryResponse without type metadata; the type is
+// implied by the format byte. Bodies longer than compressAbove bytes are deflated.
+//
+// Anything else, e.g. the null marker, still goes through the default-typed JSON serializer,
+// and entries it wrote start with '{', so values cached before the switch stay readable until
+// they expire.
+public final class CacheValueSerializer implements RedisSerializer<Object> {
+
+    public enum Codec { BINARY, JSON }
+
+    static final int FORMAT_BINARY = 0x01;
+    static final int FORMAT_JSON = 0x02;
+    static final int DEFLATED = 0x80;
+
+    private static final int LOW_STOCK_BIT = 16;
+
+    private final Codec codec;
+    private final int compressAbove;
+    private final RedisSerializer<Object> legacy = RedisSerializer.json();
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    public CacheValueSerializer(Codec codec, int compressAbove){
+        this.codec = codec;
+        this.compressAbove = compressAbove;
+    }
+
+    @Override
+    public byte[] serialize(Object value){
+        if(!(value instanceof InventoryResponse response)){
+            return legacy.serialize(value);
+        }
+        int format;
+        byte[] body;
+        if(codec == Codec.BINARY){
+            format = FORMAT_BINARY;
+            body = encode(response);
+        } else {
+            format = FORMAT_JSON;
+            try{
+                body = jsonMapper.writeValueAsBytes(response);
+            } catch (JacksonException e){
+                throw new SerializationException("Could not write cache value", e);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 8);
+        if(body.length > compressAbove){
+            out.write(format | DEFLATED);
+            writeVarLong(out, body.length);
+            deflate(body, out);
+        } else {
+            out.write(format);
+            out.write(body, 0, body.length);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes){
+        if(bytes == null || bytes.length == 0){
+            return null;
+        }
+        int format = bytes[0] & ~DEFLATED & 0xFF;
+        if(format != FORMAT_BINARY && format != FORMAT_JSON){
+            return legacy.deserialize(bytes);
+        }
+        try{
+            ByteBuffer in = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            byte[] body;
+            if((bytes[0] & DEFLATED) != 0){
+                body = inflate(in, (int) readVarLong(in));
+            } else {
+                body = new byte[in.remaining()];
+                in.get(body);
+            }
+            return format == FORMAT_BINARY
+                    ? decode(ByteBuffer.wrap(body))
+                    : jsonMapper.readValue(body, InventoryResponse.class);
+        } catch (RuntimeException | DataFormatException e){
+            if(e instanceof SerializationException serializationException){
+                throw serializationException;
+            }
+            throw new SerializationException("Malformed cache value", e);
+        }
+    }
+
+    static byte[] encode(InventoryResponse value){
+        Object[] fields = fields(value);
+        long present = value.isLowstock() ? 1L << LOW_STOCK_BIT : 0;
+        for(int i = 0; i < fields.length; i++){
+            if(fields[i] != null){
+                present |= 1L << i;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(96);
+        writeVarLong(out, present);
+        for(Object field : fields){
+            switch(field){
+                case null -> { }
+                case String string -> writeBytes(out, string.getBytes(StandardCharsets.UTF_8));
+                case Integer number -> writeVarLong(out, zigzag(number));
+                case Long number -> writeVarLong(out, zigzag(number));
+                case BigDecimal decimal -> {
+                    writeVarLong(out, zigzag(decimal.scale()));
+                    writeBytes(out, decimal.unscaledValue().toByteArray());
+                }
+                case LocalDateTime time -> {
+                    writeVarLong(out, zigzag(time.toEpochSecond(ZoneOffset.UTC)));
+                    writeVarLong(out, time.getNano());
+                }
+                default -> throw new IllegalStateException("No encoding for " + field.getClass());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Same order as the bitmap bits
+    private static Object[] fields(InventoryResponse value){
+        return new Object[]{value.getId(), value.getSku(), value.getProductName(), value.getQuantity(),
+                value.getDescription(), value.getReservedQuantity(), value.getAvailableQuantity(),
+                value.getReorderLevel(), value.getMaxStockLevel(), value.getUnitPrice(), value.getWarehouseId(),
+                value.getLocation(), value.getStatus(), value.getCreatedAt(), value.getUpdatedAt(), value.getVersion()};
+    }
+
+    static InventoryResponse decode(ByteBuffer in){
+        long present = readVarLong(in);
+        InventoryResponse value = new InventoryResponse();
+        value.setId(has(present, 0) ? unzigzag(readVarLong(in)) : null);
+        value.setSku(has(present, 1) ? readString(in) : null);
+        value.setProductName(has(present, 2) ? readString(in) : null);
+        value.setQuantity(has(present, 3) ? readInt(in) : null);
+        value.setDescription(has(present, 4) ? readString(in) : null);
+        value.setReservedQuantity(has(present, 5) ? readInt(in) : null);
+        value.setAvailableQuantity(has(present, 6) ? readInt(in) : null);
+        value.setReorderLevel(has(present, 7) ? readInt(in) : null);
+        value.setMaxStockLevel(has(present, 8) ? readInt(in) : null);
+        if(has(present, 9)){
+            int scale = (int) unzigzag(readVarLong(in));
+            value.setUnitPrice(new BigDecimal(new BigInteger(readBytes(in)), scale));
+        }
+        value.setWarehouseId(has(present, 10) ? readString(in) : null);
+        value.setLocation(has(present, 11) ? readString(in) : null);
+        value.setStatus(has(present, 12) ? readString(in) : null);
+        value.setCreatedAt(has(present, 13) ? readTime(in) : null);
+        value.setUpdatedAt(has(present, 14) ? readTime(in) : null);
+        value.setVersion(has(present, 15) ? unzigzag(readVarLong(in)) : null);
+        value.setLowstock(has(present, LOW_STOCK_BIT));
+        return value;
+    }
+
+    private static boolean has(long present, int bit){
+        return (present & (1L << bit)) != 0;
+    }
+
+    private static void deflate(byte[] body, ByteArrayOutputStream out){
+        //favour speed, the entries are small and written on the request path
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try{
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, body.length)];
+            while(!deflater.finished()){
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer in, int length) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try{
+            inflater.setInput(in);
+            byte[] body = new byte[length];
+            int read = 0;
+            while(read < length && !inflater.finished()){
+                int inflated = inflater.inflate(body, read, length - read);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+                    break;
+                }
+                read += inflated;
+            }
+            if(read != length){
+                throw new SerializationException("Truncated cache value");
+            }
+            return body;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static Integer readInt(ByteBuffer in){
+        return (int) unzigzag(readVarLong(in));
+    }
+
+    private static LocalDateTime readTime(ByteBuffer in){
+        long seconds = unzigzag(readVarLong(in));
+        return LocalDateTime.ofEpochSecond(seconds, (int) readVarLong(in), ZoneOffset.UTC);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes){
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] readBytes(ByteBuffer in){
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer in){
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value){
+        while((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in){
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new SerializationException("Varint is too long");
+    }
+
+    private static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.microservice1.config;
+
+import com.example.microservice1.Exception.ServiceBusyException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caps how many threads hold a database connection at once. With virtual threads every
+// request gets its own thread, so without this thousands of them would queue inside the
+// connection pool and hold their requests open until the pool's own timeout. Here they wait
+// on a fair semaphore for a bounded time and are turned away with a 503 after that.
+public class JdbcBulkhead implements MeterBinder {
+
+    private final Semaphore permits;
+    private final int maxPermits;
+    private final Duration maxWait;
+    private final LongAdder rejected = new LongAdder();
+
+    public JdbcBulkhead(int maxPermits, Duration maxWait){
+        this.permits = new Semaphore(maxPermits, true);
+        this.maxPermits = maxPermits;
+        this.maxWait = maxWait;
+    }
+
+    void acquire(){
+        if(permits.tryAcquire()){
+            return;
+        }
+        try{
+            if(permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)){
+                return;
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        throw new ServiceBusyException("No database connection available within " + maxWait.toMillis() + "ms");
+    }
+
+    void release(){
+        permits.release();
+    }
+
+    int available(){
+        return permits.availablePermits();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        Gauge.builder("inventory.jdbc.bulkhead.in-use", permits, p -> maxPermits - p.availablePermits())
+                .description("Threads currently holding a database connection")
+                .register(registry);
+        Gauge.builder("inventory.jdbc.bulkhead.waiting", permits, Semaphore::getQueueLength)
+                .description("Threads waiting for a database connection")
+                .register(registry);
+        FunctionCounter.builder("inventory.jdbc.bulkhead.rejected", rejected, LongAdder::sum)
+                .description("Requests turned away because no connection freed up in time")
+                .register(registry);
+    }
+}
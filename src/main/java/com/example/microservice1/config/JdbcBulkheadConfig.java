@@ -0,0 +1,52 @@
+package com.example.microservice1.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// Puts the JdbcBulkhead in front of the application's DataSource. Permits default to the
+// Hikari pool size, so a thread that gets a permit never waits inside the pool as well.
+// That relies on every thread holding at most one connection: nothing opens a transaction
+// of its own (REQUIRES_NEW) while inside another, or threads holding every permit would all
+// wait for one more. HotSkuLedger leases, the one such transaction on a request path, are
+// therefore taken before the caller's transaction opens.
+@Configuration
+@ConditionalOnProperty(name = "inventory.jdbc.bulkhead.enabled", matchIfMissing = true)
+public class JdbcBulkheadConfig {
+
+    @Bean
+    public JdbcBulkhead jdbcBulkhead(
+            @Value("${inventory.jdbc.bulkhead.permits:${spring.datasource.hikari.maximum-pool-size:10}}") int permits,
+            @Value("${inventory.jdbc.bulkhead.max-wait:2s}") Duration maxWait){
+        return new JdbcBulkhead(permits, maxWait);
+    }
+
+    // Ordered ahead of ReplicaRoutingConfig's wrapper, so the bulkhead sits right on the pool
+    @Bean
+    public static BeanPostProcessor jdbcBulkheadDataSourceWrapper(ObjectProvider<JdbcBulkhead> bulkhead){
+        return new BulkheadWrapper(bulkhead);
+    }
+
+    private record BulkheadWrapper(ObjectProvider<JdbcBulkhead> bulkhead) implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName){
+            if(bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)){
+                return new BulkheadDataSource(dataSource, bulkhead.getObject());
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder(){
+            return HIGHEST_PRECEDENCE;
+        }
+    }
+}
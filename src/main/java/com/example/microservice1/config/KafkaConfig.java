@@ -1,14 +1,56 @@
 package com.example.microservice1.config;
 
 
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEventDeserializer;
+import com.example.microservice1.Event.InventoryEventSerializer;
+import com.example.microservice1.Service.OrderEventConsumer;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.kafka.autoconfigure.KafkaProperties;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.HashMap;
+import java.util.Map;
 
 @Configuration
 public class KafkaConfig {
 
+    // The NewTopic beans below are created, or checked, once the application is ready instead
+    // of while the context starts (spring.kafka.admin.auto-create=false): KafkaAdmin holds up
+    // startup for a broker round trip, or for its whole operation timeout when the broker is
+    // unreachable. Turn inventory.kafka.create-topics off where topics are provisioned up front.
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> topicCreator(KafkaAdmin kafkaAdmin,
+                                                                   @Value("${inventory.kafka.create-topics:true}") boolean createTopics){
+        return event -> {
+            if(createTopics){
+                Thread.ofVirtual().name("kafka-topic-creator").start(kafkaAdmin::initialize);
+            }
+        };
+    }
+
     @Bean
     public NewTopic inventoryCreatedTopic(){
         return TopicBuilder.name("inventory-created")
@@ -42,4 +84,119 @@ public class KafkaConfig {
                 .build();
     }
 
+    //answers order-placed lines that could not be met, keyed by order
+    @Bean
+    public NewTopic inventoryRejectedTopic() {
+        return TopicBuilder.name("inventory-rejected")
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+
+    // Inbound from the order service, consumed by OrderEventConsumer. Each has a dead-letter
+    // topic with as many partitions, records that cannot be applied keep their partition there.
+    @Bean
+    public NewTopic orderPlacedTopic() {
+        return TopicBuilder.name(OrderEventConsumer.ORDER_PLACED)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+
+    @Bean
+    public NewTopic orderCancelledTopic() {
+        return TopicBuilder.name(OrderEventConsumer.ORDER_CANCELLED)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+
+    @Bean
+    public NewTopic orderPlacedDeadLetterTopic() {
+        return TopicBuilder.name(OrderEventConsumer.ORDER_PLACED + ".DLT")
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+
+    @Bean
+    public NewTopic orderCancelledDeadLetterTopic() {
+        return TopicBuilder.name(OrderEventConsumer.ORDER_CANCELLED + ".DLT")
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+
+    // Producer used by OutboxRelay. Tuned for throughput rather than per-record latency:
+    // records are batched and compressed, and idempotence keeps retries from duplicating or
+    // reordering records within a partition.
+    @Bean
+    public ProducerFactory<String,byte[]> outboxProducerFactory(KafkaProperties kafkaProperties){
+        Map<String,Object> props = new HashMap<>(kafkaProperties.buildProducerProperties());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        props.putIfAbsent(ProducerConfig.LINGER_MS_CONFIG, 20);
+        props.putIfAbsent(ProducerConfig.BATCH_SIZE_CONFIG, 256 * 1024);
+        props.putIfAbsent(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        return new DefaultKafkaProducerFactory<>(props);
+    }
+
+    @Bean
+    public KafkaTemplate<String,byte[]> outboxKafkaTemplate(ProducerFactory<String,byte[]> outboxProducerFactory){
+        return new KafkaTemplate<>(outboxProducerFactory);
+    }
+
+    // Events are encoded with InventoryEventSerializer when they are written to the outbox,
+    // so the relay only ever ships the finished bytes
+    @Bean
+    public InventoryEventSerializer inventoryEventSerializer(){
+        return new InventoryEventSerializer();
+    }
+
+    // For consumers of the inventory-* topics, including this service's own listeners
+    @Bean
+    public ConsumerFactory<String,InventoryEvent> inventoryEventConsumerFactory(KafkaProperties kafkaProperties){
+        Map<String,Object> props = new HashMap<>(kafkaProperties.buildConsumerProperties());
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, InventoryEventDeserializer.class);
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    // Order events are read as raw bytes and parsed by OrderEventConsumer, so a malformed
+    // record can be dead-lettered as it arrived instead of failing in the deserializer
+    @Bean
+    public ConsumerFactory<String,byte[]> orderEventConsumerFactory(KafkaProperties kafkaProperties){
+        Map<String,Object> props = new HashMap<>(kafkaProperties.buildConsumerProperties());
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.putIfAbsent(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    // Batch listener; offsets of a poll are committed once the listener returned, i.e. after
+    // every record in it was applied or dead-lettered. A listener that throws (database or
+    // broker unavailable) gets the same batch again after the back-off, for as long as it takes.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String,byte[]> orderEventListenerFactory(
+            ConsumerFactory<String,byte[]> orderEventConsumerFactory,
+            @Value("${inventory.orders.consumer.concurrency:3}") int concurrency,
+            @Value("${inventory.orders.consumer.retry-interval-ms:1000}") long retryInterval){
+        ConcurrentKafkaListenerContainerFactory<String,byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(orderEventConsumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(retryInterval, FixedBackOff.UNLIMITED_ATTEMPTS)));
+        return factory;
+    }
+
+    // Sends a record to <topic>.DLT, same key and partition, with the failure in kafka_dlt-* headers
+    @Bean
+    public DeadLetterPublishingRecoverer orderEventDeadLetters(KafkaTemplate<String,byte[]> outboxKafkaTemplate){
+        return new DeadLetterPublishingRecoverer(outboxKafkaTemplate);
+    }
 }
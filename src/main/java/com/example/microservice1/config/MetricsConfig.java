@@ -0,0 +1,17 @@
+package com.example.microservice1.config;
+
+import com.example.microservice1.Service.InventoryMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // Hard bound on distinct sku tag values over the life of the process; values past it are recorded as "other"
+    @Bean
+    public MeterFilter inventorySkuTagLimit(@Value("${inventory.metrics.max-sku-tags:100}") int maxSkuTags){
+        return InventoryMetrics.skuTagLimit(maxSkuTags);
+    }
+}
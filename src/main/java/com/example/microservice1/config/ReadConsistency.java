@@ -0,0 +1,102 @@
+package com.example.microservice1.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.io.IOException;
+import java.time.Duration;
+
+// Read-your-writes across replicas. Every successful mutation answers with a Read-After
+// header, the time its transaction had committed by. A client that sends that value back on
+// its next reads is only served by replicas known to have caught up to it, otherwise by the
+// primary. Clients that do not care simply leave the header out.
+public final class ReadConsistency {
+
+    public static final String HEADER = "Inventory-Read-After";
+
+    private static final ThreadLocal<Long> READ_AFTER = new ThreadLocal<>();
+
+    private ReadConsistency(){
+    }
+
+    static long readAfter(){
+        Long readAfter = READ_AFTER.get();
+        return readAfter == null ? 0 : readAfter;
+    }
+
+    // Takes the header off incoming requests for the duration of the request. The skew
+    // allowance covers clocks of the instance that wrote and the one that reads disagreeing.
+    @Component
+    @ConditionalOnProperty("inventory.replicas.urls")
+    public static class Filter extends OncePerRequestFilter {
+
+        private final long clockSkewMillis;
+
+        public Filter(@Value("${inventory.replicas.clock-skew:100ms}") Duration clockSkew){
+            this.clockSkewMillis = clockSkew.toMillis();
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            Long readAfter = parse(request.getHeader(HEADER));
+            if(readAfter == null){
+                chain.doFilter(request, response);
+                return;
+            }
+            READ_AFTER.set(readAfter + clockSkewMillis);
+            try{
+                chain.doFilter(request, response);
+            } finally {
+                READ_AFTER.remove();
+            }
+        }
+
+        private static Long parse(String header){
+            if(header == null){
+                return null;
+            }
+            try{
+                return Long.parseLong(header.trim());
+            } catch (NumberFormatException e){
+                return null;
+            }
+        }
+    }
+
+    // Stamps mutation responses. The service transaction has committed by the time the body
+    // is written, so the current time is never earlier than the commit.
+    @ControllerAdvice
+    @ConditionalOnProperty("inventory.replicas.urls")
+    public static class Stamp implements ResponseBodyAdvice<Object> {
+
+        @Override
+        public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType){
+            return true;
+        }
+
+        @Override
+        public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType contentType,
+                                      Class<? extends HttpMessageConverter<?>> converterType,
+                                      ServerHttpRequest request, ServerHttpResponse response){
+            String method = request.getMethod().name();
+            if(!method.equals("GET") && !method.equals("HEAD")){
+                response.getHeaders().set(HEADER, Long.toString(System.currentTimeMillis()));
+            }
+            return body;
+        }
+    }
+}
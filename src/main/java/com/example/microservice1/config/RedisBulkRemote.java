@@ -0,0 +1,140 @@
+package com.example.microservice1.config;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Multi-key and conditional access to the entries of one RedisCache, with the keys,
+// serializers and TTL that cache is configured with: reads are a single MGET, writes one
+// pipelined SET NX per key. RedisCache itself only offers single-key, unconditional
+// operations, one round trip each.
+//
+// Versioned entries keep their version next to them under <key>#version, with the same TTL,
+// so a script can compare and write in one step without decoding the value. Both keys are
+// touched by one script, which assumes a single Redis primary rather than a cluster.
+class RedisBulkRemote implements TwoLevelCache.BulkRemote {
+
+    private static final byte[] PUT_IF_NEWER = (
+            "local current = redis.call('GET', KEYS[2]) " +
+            "if current and tonumber(current) > tonumber(ARGV[2]) then return 0 end " +
+            "if ARGV[3] == '0' then " +
+            "  redis.call('SET', KEYS[1], ARGV[1]) redis.call('SET', KEYS[2], ARGV[2]) " +
+            "else " +
+            "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3]) redis.call('SET', KEYS[2], ARGV[2], 'PX', ARGV[3]) " +
+            "end " +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+
+    private final String name;
+    private final RedisCacheConfiguration config;
+    private final StringRedisTemplate redisTemplate;
+
+    RedisBulkRemote(RedisCache cache, StringRedisTemplate redisTemplate){
+        this.name = cache.getName();
+        this.config = cache.getCacheConfiguration();
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Map<Object,Object> getAll(Collection<?> keys){
+        List<Object> ordered = new ArrayList<>(keys);
+        byte[][] redisKeys = ordered.stream().map(this::redisKey).toArray(byte[][]::new);
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(redisKeys));
+        Map<Object,Object> found = new HashMap<>();
+        for(int i = 0; values != null && i < values.size(); i++){
+            byte[] bytes = values.get(i);
+            if(bytes == null){
+                continue;
+            }
+            Object value = config.getValueSerializationPair().read(ByteBuffer.wrap(bytes));
+            if(value != null && !(value instanceof NullValue)){
+                found.put(ordered.get(i), value);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Set<Object> putAllIfAbsent(Map<?,?> values){
+        List<Object> ordered = new ArrayList<>(values.keySet());
+        List<Integer> valueResults = new ArrayList<>(ordered.size());
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            int commands = 0;
+            for(Object key : ordered){
+                Object value = values.get(key);
+                byte[] bytes = ByteUtils.getBytes(config.getValueSerializationPair().write(value));
+                Expiration expiration = expiration(key, value);
+                connection.stringCommands().set(redisKey(key), bytes, expiration, RedisStringCommands.SetOption.ifAbsent());
+                valueResults.add(commands++);
+                if(value instanceof VersionedCacheValue versioned && versioned.getVersion() != null){
+                    //an existing marker belongs to a write at least this new, putIfNewer compares against it
+                    connection.stringCommands().set(versionKey(key), version(versioned.getVersion()), expiration,
+                            RedisStringCommands.SetOption.ifAbsent());
+                    commands++;
+                }
+            }
+            return null;
+        });
+        Set<Object> written = new HashSet<>();
+        for(int i = 0; i < ordered.size(); i++){
+            if(Boolean.TRUE.equals(results.get(valueResults.get(i)))){
+                written.add(ordered.get(i));
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public boolean putIfNewer(Object key, Object value, long version){
+        byte[] bytes = ByteUtils.getBytes(config.getValueSerializationPair().write(value));
+        Expiration expiration = expiration(key, value);
+        long ttlMillis = expiration.isPersistent() ? 0 : expiration.getExpirationTimeInMilliseconds();
+        Long written = redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                .eval(PUT_IF_NEWER, ReturnType.INTEGER, 2, redisKey(key), versionKey(key), bytes, version(version),
+                        version(ttlMillis)));
+        return written != null && written == 1;
+    }
+
+    private Expiration expiration(Object key, Object value){
+        Duration ttl = config.getTtlFunction().getTimeToLive(key, value);
+        return ttl == null || ttl.isZero() || ttl.isNegative() || ttl.equals(RedisCacheWriter.TtlFunction.NO_EXPIRATION)
+                ? Expiration.persistent()
+                : Expiration.from(ttl);
+    }
+
+    // Same key RedisCache would build: optional cache prefix, then the converted key
+    private byte[] redisKey(Object key){
+        return ByteUtils.getBytes(config.getKeySerializationPair().write(keyString(key)));
+    }
+
+    private byte[] versionKey(Object key){
+        return ByteUtils.getBytes(config.getKeySerializationPair().write(keyString(key) + "#version"));
+    }
+
+    private String keyString(Object key){
+        String converted = key instanceof String string ? string : config.getConversionService().convert(key, String.class);
+        return config.usePrefix() ? config.getKeyPrefixFor(name) + converted : converted;
+    }
+
+    private static byte[] version(long value){
+        return Long.toString(value).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,54 +1,98 @@
 package com.example.microservice1.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
-import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.time.Duration;
+import java.util.Set;
 
+@Slf4j
 @Configuration
 @EnableCaching
 public class RedisConfig {
 
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
-
-        PolymorphicTypeValidator typeValidator = BasicPolymorphicTypeValidator
-                .builder()
-                .allowIfBaseType(Object.class)
-                .build();
-
-        objectMapper.activateDefaultTyping(typeValidator, ObjectMapper.DefaultTyping.NON_FINAL);
-
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                             StringRedisTemplate redisTemplate,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${inventory.cache.local.max-size:10000}") long localMaxSize,
+                                             @Value("${inventory.cache.local.ttl:30s}") Duration localTtl,
+                                             @Value("${inventory.cache.codec:binary}") CacheValueSerializer.Codec codec,
+                                             @Value("${inventory.cache.compress-above:512}") int compressAbove) {
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofMinutes(10))
                 .serializeKeysWith(
                         RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer())
                 )
                 .serializeValuesWith(
-                        RedisSerializationContext.SerializationPair.fromSerializer(
-                                RedisSerializer.json()
-                        )
+                        RedisSerializationContext.SerializationPair.fromSerializer(cacheValueSerializer(codec, compressAbove))
                 );
 
-        return RedisCacheManager.builder(connectionFactory)
+        //L2, shared by every instance
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(config)
+                .initialCacheNames(Set.of("inventory"))
                 .build();
-    }
-}
+        redisCacheManager.afterPropertiesSet();
 
+        return new TwoLevelCacheManager(redisCacheManager, redisTemplate, meterRegistry, localMaxSize, localTtl);
+    }
 
+    // What L2 entries are written with; also used by the benchmarks
+    public static RedisSerializer<Object> cacheValueSerializer(CacheValueSerializer.Codec codec, int compressAbove) {
+        return new CacheValueSerializer(codec, compressAbove);
+    }
 
+    // Not started with the context: subscribing needs Redis up, so the listener is subscribed once the
+    // application is ready, on its own thread and retried every retry-interval until Redis answers.
+    // Until then, and while a lost subscription is being recovered, L1 entries only expire by their TTL
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListener(RedisConnectionFactory connectionFactory,
+                                                                  TwoLevelCacheManager cacheManager,
+                                                                  @Value("${inventory.cache.invalidation.retry-interval:5s}") Duration retryInterval) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(TwoLevelCacheManager.INVALIDATION_CHANNEL));
+        container.setAutoStartup(false);
+        container.setRecoveryBackoff(new FixedBackOff(retryInterval.toMillis(), FixedBackOff.UNLIMITED_ATTEMPTS));
+        return container;
+    }
 
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> cacheInvalidationSubscriber(RedisMessageListenerContainer cacheInvalidationListener,
+                                                                                 @Value("${inventory.cache.invalidation.retry-interval:5s}") Duration retryInterval) {
+        return event -> Thread.ofVirtual().name("cache-invalidation-subscriber").start(() -> {
+            while(event.getApplicationContext().isActive()){
+                try{
+                    cacheInvalidationListener.start();
+                    return;
+                }catch(RuntimeException e){
+                    //start() leaves the container marked as started when the subscription fails
+                    cacheInvalidationListener.stop();
+                    log.warn("Cannot subscribe to cache invalidations, retrying in {}: {}", retryInterval, e.getMessage());
+                }
+                try{
+                    Thread.sleep(retryInterval);
+                }catch(InterruptedException e){
+                    return;
+                }
+            }
+        });
+    }
+}
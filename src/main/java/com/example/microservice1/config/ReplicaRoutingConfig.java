@@ -0,0 +1,81 @@
+package com.example.microservice1.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Sends read-only transactions to read replicas, everything else to the primary. Enabled by
+// listing replica JDBC URLs in inventory.replicas.urls.
+//
+// The application DataSource becomes a LazyConnectionDataSourceProxy: it fetches the real
+// connection only at the first statement, by which time the transaction manager has marked
+// it read only, and then takes it from ReplicaRoutingDataSource instead of the primary.
+// Replicas are only used within inventory.replicas.max-lag, and never for a client whose
+// last write they have not replayed yet (see ReadConsistency).
+//
+// Replica pools are not beans, so the JdbcBulkhead keeps guarding primary connections only;
+// each replica pool bounds its own waiters with its connection timeout.
+@Configuration
+@ConditionalOnProperty("inventory.replicas.urls")
+public class ReplicaRoutingConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReplicaSet replicaSet(
+            @Value("${inventory.replicas.urls}") List<String> urls,
+            @Value("${inventory.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${inventory.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${inventory.replicas.pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int poolSize,
+            @Value("${inventory.replicas.connection-timeout:2s}") Duration connectionTimeout,
+            @Value("${inventory.replicas.max-lag:1s}") Duration maxLag,
+            @Value("${inventory.replicas.lag-query:" + ReplicaSet.POSTGRES_LAG_QUERY + "}") String lagQuery){
+        List<DataSource> pools = new ArrayList<>(urls.size());
+        for(int i = 0; i < urls.size(); i++){
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + i);
+            pool.setJdbcUrl(urls.get(i).trim());
+            pool.setUsername(username);
+            pool.setPassword(password);
+            pool.setMaximumPoolSize(poolSize);
+            pool.setConnectionTimeout(connectionTimeout.toMillis());
+            pool.setReadOnly(true);
+            pools.add(pool);
+        }
+        return new ReplicaSet(pools, maxLag, lagQuery);
+    }
+
+    // Runs after the other DataSource post-processors, so what it routes to the primary is the
+    // bulkhead-guarded pool
+    @Bean
+    public static BeanPostProcessor replicaRoutingDataSourceWrapper(ObjectProvider<ReplicaSet> replicaSet){
+        return new RoutingWrapper(replicaSet);
+    }
+
+    private record RoutingWrapper(ObjectProvider<ReplicaSet> replicaSet) implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName){
+            if(bean instanceof DataSource primary && !(bean instanceof LazyConnectionDataSourceProxy)){
+                LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+                routing.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, replicaSet.getObject()));
+                return routing;
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder(){
+            return LOWEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.microservice1.config;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Where read-only connections come from: a replica chosen by ReplicaSet, or the primary when
+// none is fresh enough for this request. A replica that fails to hand out a connection is
+// taken out until its next successful probe and the read goes to the primary instead.
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final ReplicaSet replicaSet;
+
+    public ReplicaRoutingDataSource(DataSource primary, ReplicaSet replicaSet){
+        this.primary = primary;
+        this.replicaSet = replicaSet;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        ReplicaSet.Replica replica = replicaSet.choose(ReadConsistency.readAfter());
+        if(replica != null){
+            try{
+                return replica.dataSource.getConnection();
+            } catch (SQLException e){
+                replicaSet.markDown(replica, e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.microservice1.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// The read replicas and how far behind each one is. Every probe asks each replica for its
+// replay lag; a replica is eligible for reads while it answers and its lag stays within
+// maxLag. Each replica also keeps the point in time it is known to have caught up to, the
+// start of its last probe minus the lag it reported, which is what read-your-writes checks
+// a client's last write against.
+@Slf4j
+public class ReplicaSet implements MeterBinder {
+
+    // Zero while the replica has replayed everything it received, otherwise the age of the
+    // last transaction it replayed. On a server that is not in recovery both LSNs are null
+    // and the replay timestamp too, so a primary listed here reports zero.
+    public static final String POSTGRES_LAG_QUERY =
+            "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder fallbacks = new LongAdder();
+    private final Duration maxLag;
+    private final String lagQuery;
+
+    public ReplicaSet(List<DataSource> dataSources, Duration maxLag, String lagQuery){
+        for(int i = 0; i < dataSources.size(); i++){
+            replicas.add(new Replica("replica-" + i, dataSources.get(i)));
+        }
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+    }
+
+    // Round robin over the replicas that are up, within maxLag and caught up to readAfter
+    // (epoch millis, 0 for none). Null means the read has to go to the primary.
+    Replica choose(long readAfter){
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for(int i = 0; i < size; i++){
+            Replica replica = replicas.get((start + i) % size);
+            if(replica.up && replica.lagMillis <= maxLag.toMillis() && replica.caughtUpTo >= readAfter){
+                return replica;
+            }
+        }
+        fallbacks.increment();
+        return null;
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.replicas.probe-interval-ms:500}")
+    public void probe(){
+        for(Replica replica : replicas){
+            long start = System.currentTimeMillis();
+            try(Connection connection = replica.dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery(lagQuery)){
+                long lag = result.next() ? Math.max(0, result.getLong(1)) : Long.MAX_VALUE;
+                replica.lagMillis = lag;
+                replica.caughtUpTo = start - lag;
+                if(!replica.up){
+                    log.info("Replica {} is back, {}ms behind", replica.name, lag);
+                }
+                replica.up = true;
+            } catch (Exception e){
+                markDown(replica, e);
+            }
+        }
+    }
+
+    void markDown(Replica replica, Exception cause){
+        if(replica.up){
+            log.warn("Replica {} is unreachable, reading from the primary until it answers again", replica.name, cause);
+        }
+        replica.up = false;
+    }
+
+    List<Replica> replicas(){
+        return replicas;
+    }
+
+    void close(){
+        for(Replica replica : replicas){
+            if(replica.dataSource instanceof AutoCloseable closeable){
+                try{
+                    closeable.close();
+                } catch (Exception e){
+                    log.warn("Could not close replica pool {}", replica.name, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        for(Replica replica : replicas){
+            Gauge.builder("inventory.replica.lag", replica, r -> r.up ? r.lagMillis : Double.NaN)
+                    .description("Replay lag of a read replica as of its last probe")
+                    .baseUnit("milliseconds")
+                    .tag("replica", replica.name)
+                    .register(registry);
+        }
+        FunctionCounter.builder("inventory.replica.fallbacks", fallbacks, LongAdder::sum)
+                .description("Read-only transactions sent to the primary because no replica was fresh enough")
+                .register(registry);
+    }
+
+    static final class Replica {
+        final String name;
+        final DataSource dataSource;
+        //nothing is routed to a replica before its first probe
+        volatile boolean up;
+        volatile long lagMillis = Long.MAX_VALUE;
+        volatile long caughtUpTo;
+
+        Replica(String name, DataSource dataSource){
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.microservice1.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+// Near cache (L1, on heap, per instance) in front of a shared cache (L2, Redis). Reads try
+// L1 first and only pay the network hop and deserialization on an L1 miss. Every write or
+// evict is announced through the invalidation callback so other instances drop their L1 copy.
+//
+// Puts of VersionedCacheValue entries are ordered by version: an older version never
+// replaces a newer one in either level. That includes values a miss loaded from the
+// database, which can finish after a commit already put a newer version. In L2 the compare
+// and the write are one Redis script, so it holds across instances, not just within one.
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private static final int PUT_LOCK_STRIPES = 64;
+
+    private final String name;
+    private final Cache<Object,Object> local;
+    private final org.springframework.cache.Cache remote;
+    private final BiConsumer<String,Object> invalidation;
+
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+    private final LongAdder remoteEvictions = new LongAdder();
+    private final LongAdder stalePuts = new LongAdder();
+    private final ReentrantLock[] putLocks = new ReentrantLock[PUT_LOCK_STRIPES];
+    private final Map<Object,CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+    private volatile Timer remoteReads;
+    private volatile Timer remoteWrites;
+    private volatile Timer remoteBulkReads;
+    private volatile BulkRemote bulkRemote;
+
+    public TwoLevelCache(String name, Cache<Object,Object> local, org.springframework.cache.Cache remote,
+                         BiConsumer<String,Object> invalidation){
+        super(true);
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.invalidation = invalidation;
+        for(int i = 0; i < PUT_LOCK_STRIPES; i++){
+            putLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public String getName(){
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache(){
+        return this;
+    }
+
+    @Override
+    protected Object lookup(Object key){
+        Object value = local.getIfPresent(key);
+        if(value != null){
+            return value;
+        }
+        value = lookupRemote(key);
+        if(value != null){
+            local.put(key, value);
+        }
+        return value;
+    }
+
+    // Concurrent callers for the same key share one L2 lookup and at most one load. The load
+    // runs outside any monitor: Caffeine's get(key, loader) computes inside a map bin lock,
+    // which would pin a virtual thread for the whole Redis and database round trip.
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader){
+        Object value = local.getIfPresent(key);
+        if(value != null){
+            return (T) fromStoreValue(value);
+        }
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loads.putIfAbsent(key, load);
+        if(inFlight != null){
+            return (T) fromStoreValue(await(inFlight));
+        }
+        try{
+            Object stored = lookupRemote(key);
+            if(stored != null){
+                local.put(key, stored);
+            } else {
+                stored = toStoreValue(load(key, valueLoader));
+                if(fromStoreValue(stored) instanceof VersionedCacheValue versioned && versioned.getVersion() != null){
+                    //the caller still gets what it read, but a newer commit keeps its entry
+                    putVersioned(key, versioned);
+                } else {
+                    remotePut(key, fromStoreValue(stored));
+                    local.put(key, stored);
+                }
+            }
+            load.complete(stored);
+            return (T) fromStoreValue(stored);
+        } catch (RuntimeException e){
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value){
+        if(!(value instanceof VersionedCacheValue versioned) || versioned.getVersion() == null){
+            remotePut(key, value);
+            local.put(key, toStoreValue(value));
+            invalidation.accept(name, key);
+            return;
+        }
+        if(putVersioned(key, versioned)){
+            invalidation.accept(name, key);
+        }
+    }
+
+    // Writes the value to both levels unless either holds a newer version; false if it was stale
+    private boolean putVersioned(Object key, VersionedCacheValue value){
+        //serializes puts for the same key on this instance so the L1 check and the write cannot interleave
+        ReentrantLock lock = putLocks[Math.floorMod(key.hashCode(), PUT_LOCK_STRIPES)];
+        lock.lock();
+        try{
+            Object current = local.getIfPresent(key);
+            if(isNewer(current, value)){
+                stalePuts.increment();
+                return false;
+            }
+            if(bulkRemote != null){
+                if(!remotePutIfNewer(key, value)){
+                    stalePuts.increment();
+                    //whatever L1 has is older than L2, the next read takes the newer entry from there
+                    local.invalidate(key);
+                    return false;
+                }
+            } else {
+                if(current == null){
+                    ValueWrapper wrapper = remoteGet(key);
+                    current = wrapper == null ? null : wrapper.get();
+                }
+                if(isNewer(current, value)){
+                    stalePuts.increment();
+                    return false;
+                }
+                remotePut(key, value);
+            }
+            local.put(key, value);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isNewer(Object current, VersionedCacheValue value){
+        return current instanceof VersionedCacheValue existing && existing.getVersion() != null
+                && existing.getVersion() > value.getVersion();
+    }
+
+    // Lookup of many keys in one pass: L1 first, then every key L1 did not have from L2 in a
+    // single round trip. Keys found in neither level are absent from the result.
+    public Map<Object,Object> getAll(Collection<?> keys){
+        Map<Object,Object> found = new HashMap<>(local.getAllPresent(keys));
+        List<Object> misses = new ArrayList<>();
+        for(Object key : new LinkedHashSet<>(keys)){
+            if(!found.containsKey(key)){
+                misses.add(key);
+            }
+        }
+        if(!misses.isEmpty()){
+            Map<Object,Object> remoteValues = remoteGetAll(misses);
+            remoteHits.add(remoteValues.size());
+            remoteMisses.add(misses.size() - remoteValues.size());
+            remoteValues.forEach((key, value) -> {
+                Object stored = toStoreValue(value);
+                local.put(key, stored);
+                found.put(key, stored);
+            });
+        }
+        Map<Object,Object> values = new HashMap<>();
+        found.forEach((key, stored) -> {
+            Object value = fromStoreValue(stored);
+            if(value != null){
+                values.put(key, value);
+            }
+        });
+        return values;
+    }
+
+    // Writes back values just loaded from the database, without replacing anything already
+    // cached: an entry that appeared meanwhile came from a commit and is at least as new.
+    // Like a single load, nothing is announced to other instances, none of them had the key.
+    public void putAllIfAbsent(Map<?,?> values){
+        if(values.isEmpty()){
+            return;
+        }
+        Set<Object> written = bulkRemote != null ? bulkRemote.putAllIfAbsent(values) : remotePutAllIfAbsent(values);
+        for(Object key : written){
+            local.asMap().putIfAbsent(key, toStoreValue(values.get(key)));
+        }
+    }
+
+    @Override
+    public void evict(Object key){
+        remote.evict(key);
+        local.invalidate(key);
+        remoteEvictions.increment();
+        invalidation.accept(name, key);
+    }
+
+    @Override
+    public void clear(){
+        remote.clear();
+        local.invalidateAll();
+        invalidation.accept(name, null);
+    }
+
+    // Another instance changed the entry: only our L1 copy is stale, L2 is already current
+    void evictLocal(Object key){
+        if(key == null){
+            local.invalidateAll();
+        } else {
+            local.invalidate(key);
+        }
+    }
+
+    Cache<Object,Object> getLocalCache(){
+        return local;
+    }
+
+    long remoteHits(){
+        return remoteHits.sum();
+    }
+
+    long remoteMisses(){
+        return remoteMisses.sum();
+    }
+
+    long remoteEvictions(){
+        return remoteEvictions.sum();
+    }
+
+    long stalePuts(){
+        return stalePuts.sum();
+    }
+
+    // Round trip to Redis, including deserialization, recorded per operation
+    void timeRemote(Timer reads, Timer writes, Timer bulkReads){
+        this.remoteReads = reads;
+        this.remoteWrites = writes;
+        this.remoteBulkReads = bulkReads;
+    }
+
+    // Without one, multi-key calls fall back to one L2 round trip per key
+    void bulkRemote(BulkRemote bulkRemote){
+        this.bulkRemote = bulkRemote;
+    }
+
+    private ValueWrapper remoteGet(Object key){
+        long start = System.nanoTime();
+        try{
+            return remote.get(key);
+        } finally {
+            if(remoteReads != null){
+                remoteReads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void remotePut(Object key, Object value){
+        long start = System.nanoTime();
+        try{
+            remote.put(key, value);
+        } finally {
+            if(remoteWrites != null){
+                remoteWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private boolean remotePutIfNewer(Object key, VersionedCacheValue value){
+        long start = System.nanoTime();
+        try{
+            return bulkRemote.putIfNewer(key, value, value.getVersion());
+        } finally {
+            if(remoteWrites != null){
+                remoteWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private Map<Object,Object> remoteGetAll(List<Object> keys){
+        if(bulkRemote == null){
+            Map<Object,Object> found = new HashMap<>();
+            for(Object key : keys){
+                ValueWrapper wrapper = remoteGet(key);
+                if(wrapper != null && wrapper.get() != null){
+                    found.put(key, wrapper.get());
+                }
+            }
+            return found;
+        }
+        long start = System.nanoTime();
+        try{
+            return bulkRemote.getAll(keys);
+        } finally {
+            if(remoteBulkReads != null){
+                remoteBulkReads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private Set<Object> remotePutAllIfAbsent(Map<?,?> values){
+        Set<Object> written = new HashSet<>();
+        values.forEach((key, value) -> {
+            if(remote.putIfAbsent(key, value) == null){
+                written.add(key);
+            }
+        });
+        return written;
+    }
+
+    private Object lookupRemote(Object key){
+        ValueWrapper wrapper = remoteGet(key);
+        if(wrapper == null){
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        return toStoreValue(wrapper.get());
+    }
+
+    // Operations against the shared cache that the Spring Cache API has no atomic or multi-key
+    // form of, see RedisBulkRemote
+    interface BulkRemote {
+
+        // Values found, by key; keys without an entry are left out
+        Map<Object,Object> getAll(Collection<?> keys);
+
+        // Keys that were written, i.e. had no entry yet
+        Set<Object> putAllIfAbsent(Map<?,?> values);
+
+        // Writes the value unless the entry already has a higher version, as one atomic step;
+        // true if it was written
+        boolean putIfNewer(Object key, Object value, long version);
+    }
+
+    private static Object await(CompletableFuture<Object> load){
+        try{
+            return load.join();
+        } catch (CompletionException e){
+            if(e.getCause() instanceof RuntimeException cause){
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static <T> T load(Object key, Callable<T> valueLoader){
+        try{
+            return valueLoader.call();
+        } catch (Exception e){
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+}
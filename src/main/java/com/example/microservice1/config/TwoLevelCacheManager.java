@@ -0,0 +1,126 @@
+package com.example.microservice1.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Builds a TwoLevelCache for every cache the Redis manager knows about and keeps the L1
+// copies of all instances in step through a Redis pub/sub channel.
+//
+// Caches are handed out transaction aware: a put or evict issued inside a transaction is
+// only applied once that transaction commits, so a rolled back change never reaches either
+// level and readers never see a value ahead of the database.
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "inventory-cache-invalidation";
+
+    private final CacheManager remote;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final long localMaxSize;
+    private final Duration localTtl;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String,TwoLevelCache> caches = new ConcurrentHashMap<>();
+    private final Map<String,Cache> decorated = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager remote, StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                                long localMaxSize, Duration localTtl){
+        this.remote = remote;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.localMaxSize = localMaxSize;
+        this.localTtl = localTtl;
+    }
+
+    @Override
+    public Cache getCache(String name){
+        return decorated.computeIfAbsent(name, key -> {
+            TwoLevelCache cache = caches.computeIfAbsent(key, this::create);
+            return cache == null ? null : new TransactionAwareCacheDecorator(cache);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames(){
+        return remote.getCacheNames();
+    }
+
+    private TwoLevelCache create(String name){
+        Cache remoteCache = remote.getCache(name);
+        if(remoteCache == null){
+            return null;
+        }
+        com.github.benmanes.caffeine.cache.Cache<Object,Object> local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+        TwoLevelCache cache = new TwoLevelCache(name, local, remoteCache, this::publishInvalidation);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, local, name, Tags.of("level", "l1"));
+        Tags remoteTags = Tags.of("cache", name, "level", "l2");
+        FunctionCounter.builder("cache.gets", cache, TwoLevelCache::remoteHits)
+                .tags(remoteTags).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("cache.gets", cache, TwoLevelCache::remoteMisses)
+                .tags(remoteTags).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", cache, TwoLevelCache::remoteEvictions)
+                .tags(remoteTags).register(meterRegistry);
+        FunctionCounter.builder("cache.puts.stale", cache, TwoLevelCache::stalePuts)
+                .tag("cache", name).register(meterRegistry);
+        cache.timeRemote(remoteTimer(remoteTags, "get"), remoteTimer(remoteTags, "put"), remoteTimer(remoteTags, "get_all"));
+        if(remoteCache instanceof RedisCache redisCache){
+            cache.bulkRemote(new RedisBulkRemote(redisCache, redisTemplate));
+        }
+        return cache;
+    }
+
+    private Timer remoteTimer(Tags tags, String operation){
+        return Timer.builder("cache.latency")
+                .description("Round trip to the shared cache, serialization included")
+                .tags(tags).tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    // Payload is "<instance>\n<cache>\n<key>", an empty key means the whole cache
+    private void publishInvalidation(String cacheName, Object key){
+        String payload = instanceId + "\n" + cacheName + "\n" + (key == null ? "" : key.toString());
+        try{
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, payload);
+        } catch (RuntimeException e){
+            //other instances fall back to their L1 TTL
+            log.warn("Could not publish cache invalidation for {}:{}", cacheName, key, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern){
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n", 3);
+        if(parts.length != 3 || instanceId.equals(parts[0])){
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if(cache != null){
+            cache.evictLocal(parts[2].isEmpty() ? null : parts[2]);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.microservice1.config;
+
+// Cached values that carry their row version. TwoLevelCache refuses to overwrite a newer
+// version with an older one, so out-of-order commits cannot leave a stale entry behind.
+public interface VersionedCacheValue {
+
+    Long getVersion();
+}
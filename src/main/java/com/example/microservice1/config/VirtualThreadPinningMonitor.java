@@ -0,0 +1,82 @@
+package com.example.microservice1.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Reports virtual threads that block while pinned to their carrier (inside synchronized or a
+// native frame). A pinned thread holds one of the few carrier threads for the whole wait, so
+// a pinning call on the request path quietly caps throughput at the carrier count.
+//
+// Listens to the JFR jdk.VirtualThreadPinned event, counts every occurrence and logs the
+// stack of each distinct pinning site once.
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(name = "inventory.virtual-threads.pinning-monitor.enabled", matchIfMissing = true)
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    //distinct sites logged, the counter still counts everything past this
+    private static final int MAX_LOGGED_SITES = 100;
+
+    private final Counter pinned;
+    private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream recording;
+
+    @Value("${inventory.virtual-threads.pinning-monitor.threshold:20ms}")
+    private Duration threshold;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry){
+        this.pinned = Counter.builder("inventory.virtual-threads.pinned")
+                .description("Virtual threads that blocked while pinned to a carrier thread")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start(){
+        recording = new RecordingStream();
+        recording.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+        recording.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        recording.startAsync();
+    }
+
+    private void onPinned(RecordedEvent event){
+        pinned.increment();
+        if(event.getStackTrace() == null || loggedSites.size() >= MAX_LOGGED_SITES){
+            return;
+        }
+        String stack = event.getStackTrace().getFrames().stream()
+                .limit(12)
+                .map(VirtualThreadPinningMonitor::frame)
+                .collect(Collectors.joining("\n\tat "));
+        if(loggedSites.add(stack)){
+            log.warn("Virtual thread pinned for {}ms at\n\tat {}", event.getDuration().toMillis(), stack);
+        }
+    }
+
+    private static String frame(RecordedFrame frame){
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    @PreDestroy
+    void stop(){
+        if(recording != null){
+            recording.close();
+        }
+    }
+}
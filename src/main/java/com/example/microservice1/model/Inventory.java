@@ -18,7 +18,8 @@ import java.math.BigDecimal;
 @Entity
 @Table(name="Inventory",indexes = {
         @Index(name = "idx_sku",columnList = "sku"),
-        @Index(name = "idx_warehouse",columnList = "warehouse_id")
+        @Index(name = "idx_warehouse",columnList = "warehouse_id"),
+        @Index(name = "idx_low_stock_warehouse",columnList = "low_stock, warehouse_id")
 })
 
 @EntityListeners(AuditingEntityListener.class)
@@ -27,8 +28,13 @@ import java.math.BigDecimal;
 @AllArgsConstructor
 public class Inventory {
 
+    public static final int ID_BLOCK_SIZE = 50;
+
+    // Sequence ids let Hibernate batch inserts (IDENTITY can't) and let the bulk import
+    // reserve whole id blocks; blocks follow the pooled-lo layout set in application.properties
     @Id
-    @GeneratedValue()
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_seq")
+    @SequenceGenerator(name = "inventory_seq", sequenceName = "inventory_seq", allocationSize = Inventory.ID_BLOCK_SIZE)
     private Long id;
 
     @Column(nullable = false,unique = true,length = 100)
@@ -61,6 +67,16 @@ public class Inventory {
     @Column(length=50)
     private String Location;
 
+    // Denormalized quantity <= reorderLevel. Comparing two columns can't use an index, this
+    // flag can; it is kept in step by the callbacks below and by the bulk updates in
+    // InventoryRepository that touch quantity.
+    @Column(name = "low_stock",nullable = false)
+    private boolean lowStock;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false,length = 20)
+    private InventoryStatus status = InventoryStatus.ACTIVE;
+
 
     @CreatedDate
     @Column(nullable = false)
@@ -82,6 +98,12 @@ public class Inventory {
         return quantity <= reorderLevel;
     }
 
+    @PrePersist
+    @PreUpdate
+    void refreshLowStock(){
+        lowStock = isLowStock();
+    }
+
     public enum InventoryStatus{
         ACTIVE,INACTIVE,DISCONTINUED
     }
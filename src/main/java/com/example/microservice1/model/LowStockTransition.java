@@ -0,0 +1,44 @@
+package com.example.microservice1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//Appended whenever a SKU crosses its reorder level in either direction, read as a change feed
+
+@Entity
+@Table(name = "low_stock_transition")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LowStockTransition {
+
+    //one id per row: with blocks per instance, ids would stop following the order rows are written in,
+    //and LowStockFeed pages by id
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "low_stock_transition_seq")
+    @SequenceGenerator(name = "low_stock_transition_seq", sequenceName = "low_stock_transition_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String sku;
+
+    @Column(nullable = false)
+    private String warehouseId;
+
+    //true when the SKU dropped to or below its reorder level, false when it recovered
+    @Column(nullable = false)
+    private boolean lowStock;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(nullable = false)
+    private Integer reorderLevel;
+
+    @Column(nullable = false)
+    private Instant occurredAt;
+}
@@ -0,0 +1,84 @@
+package com.example.microservice1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+//What became of an order's line for one SKU, kept after its hold is gone (released, cancelled or
+//expired) so a redelivered or late order event can tell the line was already handled. Purged once
+//older than inventory.orders.marker-retention
+
+@Entity
+@Table(name = "order_line_marker", indexes = {
+        @Index(name = "idx_order_line_marker_updated_at", columnList = "updated_at")
+})
+@IdClass(OrderLineMarker.Key.class)
+@Data
+@NoArgsConstructor
+public class OrderLineMarker implements Persistable<OrderLineMarker.Key> {
+
+    public enum State {
+        //the order-placed line was granted a hold
+        RESERVED,
+        //the order-placed line was turned down and ORDER_REJECTED published
+        REJECTED,
+        //an order-cancelled line was applied, whether or not the placement had arrived yet
+        CANCELLED
+    }
+
+    @Id
+    @Column(length = 100)
+    private String orderId;
+
+    @Id
+    @Column(length = 100)
+    private String sku;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private State state;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    //markers are created for lines that have none, so saving a new one is a plain INSERT rather than a merge
+    @Transient
+    private boolean fresh;
+
+    public OrderLineMarker(String orderId, String sku, State state, Instant updatedAt){
+        this.orderId = orderId;
+        this.sku = sku;
+        this.state = state;
+        this.updatedAt = updatedAt;
+        this.fresh = true;
+    }
+
+    @Override
+    public Key getId(){
+        return new Key(orderId, sku);
+    }
+
+    @Override
+    public boolean isNew(){
+        return fresh;
+    }
+
+    @PostLoad
+    @PostPersist
+    void stored(){
+        fresh = false;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String orderId;
+        private String sku;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.microservice1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//An event waiting to be relayed to Kafka, written in the same transaction as the change it describes
+
+@Entity
+@Table(name = "inventory_outbox", indexes = {
+        @Index(name = "idx_inventory_outbox_lane", columnList = "lane, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    //one id per row, drawn when the event is written, not when it commits. OutboxRelay sends a
+    //lane in id order and relies on ids following commit order for each key. That holds where the
+    //writer holds the lock on the inventory rows the event describes (the conditional UPDATE, or
+    //FOR UPDATE) from before the id until commit: every stock change, expiry, cancellation and
+    //rejection.
+    //A new row's CREATED event comes first anyway, as nothing else can touch the row before it
+    //commits. RESERVED events for hot SKU grants (InventoryService.reserveFromLease) are
+    //written without the row lock, so two of them for one SKU may be sent out of commit order
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_outbox_seq")
+    @SequenceGenerator(name = "inventory_outbox_seq", sequenceName = "inventory_outbox_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String topic;
+
+    @Column(name = "event_key", nullable = false, length = 100)
+    private String eventKey;
+
+    //OutboxRelay.lane(eventKey)
+    @Column(nullable = false)
+    private Integer lane;
+
+    @Column(nullable = false)
+    private byte[] payload;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+}
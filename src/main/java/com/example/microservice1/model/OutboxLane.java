@@ -0,0 +1,29 @@
+package com.example.microservice1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//The outbox events whose key hashes to one lane. A relay leases the lane before sending any of
+//them, so events with the same key are never in flight from two relays at once
+
+@Entity
+@Table(name = "inventory_outbox_lane")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxLane {
+
+    @Id
+    private Integer id;
+
+    //the relay holding the lease, null when free
+    @Column(length = 100)
+    private String owner;
+
+    @Column(nullable = false)
+    private Instant leasedUntil;
+}
@@ -0,0 +1,43 @@
+package com.example.microservice1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//Stock held for a caller until it is released or its TTL runs out. Only outstanding holds
+//are kept; released and expired ones are deleted, so the table stays the size of what is held
+
+@Entity
+@Table(name = "reservation", indexes = {
+        @Index(name = "idx_reservation_expires_at", columnList = "expires_at"),
+        @Index(name = "idx_reservation_sku", columnList = "sku, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Reservation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reservation_seq")
+    @SequenceGenerator(name = "reservation_seq", sequenceName = "reservation_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String sku;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    //set when the hold was made for an order, through a batch reservation or an order-placed event
+    @Column(length = 100)
+    private String orderId;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
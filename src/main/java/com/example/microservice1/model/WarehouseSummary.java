@@ -0,0 +1,43 @@
+package com.example.microservice1.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//Running totals for one warehouse, kept up to date from mutation deltas and reconciled
+//against the Inventory table from time to time. Stock value is held in cents.
+
+@Entity
+@Table(name = "warehouse_summary")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WarehouseSummary {
+
+    @Id
+    @Column(length = 255)
+    private String warehouseId;
+
+    @Column(nullable = false)
+    private long skuCount;
+
+    @Column(nullable = false)
+    private long units;
+
+    @Column(nullable = false)
+    private long reservedUnits;
+
+    @Column(nullable = false)
+    private long stockValueCents;
+
+    @Column(nullable = false)
+    private long lowStockCount;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    private Instant reconciledAt;
+}
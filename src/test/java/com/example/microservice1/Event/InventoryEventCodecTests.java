@@ -0,0 +1,88 @@
+package com.example.microservice1.Event;
+
+import com.example.microservice1.Event.InventoryEvent.EventType;
+import com.example.microservice1.model.Inventory;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InventoryEventCodecTests {
+
+    @Test
+    void skuEventRoundTrips() {
+        InventoryEvent event = InventoryEvent.of(EventType.RELEASED, inventory(), -3);
+
+        InventoryEvent decoded = InventoryEventCodec.decode(InventoryEventCodec.encode(event));
+
+        assertThat(decoded).isEqualTo(event);
+    }
+
+    @Test
+    void orderEventRoundTrips() {
+        InventoryEvent line = InventoryEvent.of(EventType.RESERVED, inventory(), 2);
+        InventoryEvent event = InventoryEvent.orderReserved("ORDER-9", List.of(line, line));
+
+        InventoryEvent decoded = InventoryEventCodec.decode(InventoryEventCodec.encode(event));
+
+        assertThat(decoded.getOrderId()).isEqualTo("ORDER-9");
+        assertThat(decoded.getLines()).hasSize(2);
+        assertThat(decoded.getLines().get(0).getAvailableQuantity()).isEqualTo(line.getAvailableQuantity());
+    }
+
+    @Test
+    void bulkEventLinesKeepTheirType() {
+        InventoryEvent line = InventoryEvent.of(EventType.UPDATED, inventory(), 1_250);
+        InventoryEvent event = InventoryEvent.bulkUpserted("import-1", List.of(line));
+
+        InventoryEvent decoded = InventoryEventCodec.decode(InventoryEventCodec.encode(event));
+
+        assertThat(decoded.getType()).isEqualTo(EventType.BULK_UPSERTED);
+        assertThat(decoded.getLines().get(0)).isEqualTo(line);
+    }
+
+    // Bytes per event against the payloads published before: the JSON entity for
+    // created/updated and a bare Integer for reserve/release
+    @Test
+    void isSmallerThanPreviousPayloads() {
+        Inventory inventory = inventory();
+        byte[] binary = InventoryEventCodec.encode(InventoryEvent.of(EventType.UPDATED, inventory, 5));
+        byte[] entityJson = JsonMapper.builder().build().writeValueAsBytes(inventory);
+
+        assertThat(binary.length).isLessThan(40);
+        assertThat(binary.length * 5).isLessThan(entityJson.length);
+    }
+
+    @Test
+    void rejectsUnknownSchemaVersion() {
+        byte[] bytes = InventoryEventCodec.encode(InventoryEvent.of(EventType.CREATED, inventory(), 10));
+        bytes[1] = 9;
+
+        assertThatThrownBy(() -> InventoryEventCodec.decode(bytes)).isInstanceOf(SerializationException.class);
+    }
+
+    private static Inventory inventory() {
+        Inventory inventory = new Inventory();
+        inventory.setId(42L);
+        inventory.setSku("SKU-000123");
+        inventory.setProductName("Wireless keyboard");
+        inventory.setDescription("Full size wireless keyboard with numeric pad");
+        inventory.setQuantity(1_250);
+        inventory.setReservedQuantity(37);
+        inventory.setReorderLevel(100);
+        inventory.setMaxStockLevel(5_000);
+        inventory.setUnitPrice(new BigDecimal("49.99"));
+        inventory.setWarehouseId("WH-NORTH-01");
+        inventory.setLocation("A-12-03");
+        inventory.setCreatedAt(LocalDateTime.now());
+        inventory.setUpdatedAt(LocalDateTime.now());
+        inventory.setVersion(17L);
+        return inventory;
+    }
+}
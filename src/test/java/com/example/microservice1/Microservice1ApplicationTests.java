@@ -3,7 +3,14 @@ package com.example.microservice1;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Starts without Redis, Kafka or the registry: the cache invalidation subscription, topic creation
+// and order consumers run after startup, and are retried rather than failing the context
+@SpringBootTest(properties = {
+        "inventory.cache.invalidation.retry-interval=1h",
+        "inventory.kafka.create-topics=false",
+        "inventory.orders.consumer.enabled=false",
+        "eureka.client.enabled=false"
+})
 class Microservice1ApplicationTests {
 
     @Test
@@ -0,0 +1,60 @@
+package com.example.microservice1.Service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotSkuIntentLogTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayReturnsLeaseThatWasNeverGranted() throws Exception {
+        try (HotSkuIntentLog log = new HotSkuIntentLog(directory)) {
+            log.append(HotSkuIntentLog.LEASED, "HOT-1", 100).join();
+            log.append(HotSkuIntentLog.GRANTED, "HOT-1", 30).join();
+            log.append(HotSkuIntentLog.GRANTED, "HOT-1", 5).join();
+            log.append(HotSkuIntentLog.LEASED, "HOT-2", 10).join();
+            log.append(HotSkuIntentLog.RETURNED, "HOT-2", 10).join();
+        }
+        //a torn write from the crash must not break replay
+        Files.writeString(directory.resolve("intent-0.log"), "R,HOT-1,", StandardOpenOption.APPEND);
+
+        try (HotSkuIntentLog log = new HotSkuIntentLog(directory)) {
+            assertThat(log.replay()).containsExactly(Map.entry("HOT-1", 65L));
+        }
+    }
+
+    @Test
+    void rotationKeepsOnlyTheSnapshot() throws Exception {
+        try (HotSkuIntentLog log = new HotSkuIntentLog(directory)) {
+            log.append(HotSkuIntentLog.LEASED, "HOT-1", 100).join();
+            log.append(HotSkuIntentLog.GRANTED, "HOT-1", 60).join();
+            log.rotate(Map.of("HOT-1", 40L));
+            log.append(HotSkuIntentLog.GRANTED, "HOT-1", 15).join();
+
+            assertThat(Files.exists(directory.resolve("intent-0.log"))).isFalse();
+            assertThat(log.replay()).containsExactly(Map.entry("HOT-1", 25L));
+        }
+    }
+
+    @Test
+    void incompleteSnapshotFallsBackToOlderSegment() throws Exception {
+        try (HotSkuIntentLog log = new HotSkuIntentLog(directory)) {
+            log.append(HotSkuIntentLog.LEASED, "HOT-1", 50).join();
+        }
+        Files.writeString(directory.resolve("intent-1.log"), "C,,0\nS,HOT-1,", StandardCharsets.UTF_8);
+
+        try (HotSkuIntentLog log = new HotSkuIntentLog(directory)) {
+            assertThat(log.replay()).containsExactly(Map.entry("HOT-1", 50L));
+        }
+    }
+}
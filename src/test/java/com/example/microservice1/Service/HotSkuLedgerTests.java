@@ -0,0 +1,160 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.model.Inventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Two instances' ledgers sharing one row, each falling back to the database path as InventoryService does
+@DataJpaTest
+@Import(StockLedger.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HotSkuLedgerTests {
+
+    private static final int STOCK = 1000;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    private final List<HotSkuLedger> ledgers = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        ledgers.forEach(HotSkuLedger::close);
+        inventoryRepository.deleteAll();
+    }
+
+    @Test
+    void twoInstancesSellEveryLastUnit() throws Exception {
+        inventoryRepository.saveAndFlush(inventory("HOT-1", STOCK));
+        HotSkuLedger first = ledger("a");
+        HotSkuLedger second = ledger("b");
+
+        int sold = 0;
+        for(int i = 0; i < STOCK; i++){
+            //both take traffic at first, then only the second; the first sits on its lease until maintenance
+            HotSkuLedger ledger = i < STOCK / 2 && i % 2 == 0 ? first : second;
+            assertThat(reserve(ledger, "HOT-1")).as("unit %d", i + 1).isTrue();
+            sold++;
+            if(i % 50 == 49){
+                first.maintain();
+                second.maintain();
+            }
+        }
+
+        assertThat(sold).isEqualTo(STOCK);
+        assertThat(reserve(first, "HOT-1")).isFalse();
+        assertThat(reserve(second, "HOT-1")).isFalse();
+        Inventory row = inventoryRepository.findBySku("HOT-1").orElseThrow();
+        assertThat(row.getReservedQuantity()).isEqualTo(STOCK);
+        assertThat(first.unusedLease("HOT-1") + second.unusedLease("HOT-1")).isZero();
+    }
+
+    @Test
+    void refillCountsWhatIsLeftOfTheLease() throws Exception {
+        inventoryRepository.saveAndFlush(inventory("HOT-2", 160));
+        HotSkuLedger ledger = ledger("c", 0);
+
+        //leases 100, leaving 60 on the row
+        assertThat(reserve(ledger, "HOT-2", 1)).isTrue();
+        assertThat(reserve(ledger, "HOT-2", 90)).isTrue();
+        //neither the 9 left in the lease nor the 60 on the row cover it, together they do
+        assertThat(ledger.tryReserve("HOT-2", 69)).isTrue();
+        assertThat(ledger.unusedLease("HOT-2")).isZero();
+        assertThat(inventoryRepository.findBySku("HOT-2").orElseThrow().getAvailableQuantity()).isZero();
+    }
+
+    @Test
+    void returnedGrantGoesBackToTheLeaseOrTheRow() throws Exception {
+        inventoryRepository.saveAndFlush(inventory("HOT-3", 1000));
+        HotSkuLedger ledger = ledger("d");
+        assertThat(reserve(ledger, "HOT-3", 10)).isTrue();
+        long unused = ledger.unusedLease("HOT-3");
+
+        ledger.returnGrant("HOT-3", 10);
+        assertThat(ledger.unusedLease("HOT-3")).isEqualTo(unused + 10);
+
+        //once demoted, a grant returned late goes straight to the row
+        assertThat(reserve(ledger, "HOT-3", 10)).isTrue();
+        ReflectionTestUtils.setField(ledger, "demoteMaxGrants", Long.MAX_VALUE);
+        ledger.maintain();
+        assertThat(ledger.isHot("HOT-3")).isFalse();
+        ledger.returnGrant("HOT-3", 10);
+        assertThat(inventoryRepository.findBySku("HOT-3").orElseThrow().getReservedQuantity()).isZero();
+    }
+
+    private boolean reserve(HotSkuLedger ledger, String sku) {
+        return reserve(ledger, sku, 1);
+    }
+
+    //the lease outside any transaction, as ReserveBatcher does
+    private boolean reserve(HotSkuLedger ledger, String sku, int quantity) {
+        if (ledger.tryReserve(sku, quantity)) {
+            return true;
+        }
+        Integer updated = new TransactionTemplate(transactionManager).execute(status ->
+                inventoryRepository.reserveStock(sku, quantity));
+        return updated != null && updated > 0;
+    }
+
+    private HotSkuLedger ledger(String name) throws Exception {
+        return ledger(name, 4);
+    }
+
+    private HotSkuLedger ledger(String name, int lowWaterChunks) throws Exception {
+        HotSkuLedger ledger = new HotSkuLedger(inventoryRepository, stockLedger, transactionManager);
+        ReflectionTestUtils.setField(ledger, "enabled", true);
+        ReflectionTestUtils.setField(ledger, "logDirectory", directory.resolve(name).toString());
+        ReflectionTestUtils.setField(ledger, "leaseChunk", 100);
+        ReflectionTestUtils.setField(ledger, "lowWaterChunks", lowWaterChunks);
+        ReflectionTestUtils.setField(ledger, "promoteMinCalls", 1L);
+        ReflectionTestUtils.setField(ledger, "promoteMinWaitMicros", 0L);
+        ReflectionTestUtils.setField(ledger, "demoteMaxGrants", 0L);
+        ReflectionTestUtils.setField(ledger, "rotateAfterRecords", 100_000L);
+        ledger.open();
+        ledgers.add(ledger);
+        //first run recovers the empty log, the second promotes the SKUs seen contended
+        ledger.maintain();
+        inventoryRepository.findAll().forEach(row -> ledger.recordContention(row.getSku(), 0));
+        ledger.maintain();
+        return ledger;
+    }
+
+    private static Inventory inventory(String sku, int quantity) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setProductName("Product " + sku);
+        inventory.setDescription("test item");
+        inventory.setQuantity(quantity);
+        inventory.setReorderLevel(0);
+        inventory.setMaxStockLevel(quantity * 10);
+        inventory.setUnitPrice(new BigDecimal("1.00"));
+        inventory.setWarehouseId("WH-1");
+        return inventory;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.ReservationResponse;
+import com.example.microservice1.Exception.IdempotencyConflictException;
+import com.example.microservice1.Exception.IdempotencyKeyReuseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyStoreTests {
+
+    //stand-in for Redis shared by every store built in a test, like instances sharing a cluster
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final StringRedisTemplate redisTemplate = redisStandIn();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void repeatReturnsFirstResponseWithoutRunningAgain() {
+        IdempotencyStore store = store();
+        Map<String, Integer> request = Map.of("quantity", 2);
+
+        ReservationResponse first = store.execute("key-1", "reserve:SKU-1", request, ReservationResponse.class, this::reserve);
+        ReservationResponse repeat = store.execute("key-1", "reserve:SKU-1", request, ReservationResponse.class, this::reserve);
+
+        assertThat(calls).hasValue(1);
+        assertThat(repeat).isEqualTo(first);
+    }
+
+    @Test
+    void otherInstancesSeeTheStoredResponse() {
+        Map<String, Integer> request = Map.of("quantity", 2);
+        ReservationResponse first = store().execute("key-1", "reserve:SKU-1", request, ReservationResponse.class, this::reserve);
+
+        ReservationResponse repeat = store().execute("key-1", "reserve:SKU-1", request, ReservationResponse.class, this::reserve);
+
+        assertThat(calls).hasValue(1);
+        assertThat(repeat).isEqualTo(first);
+    }
+
+    @Test
+    void rejectsKeyReusedForAnotherRequest() {
+        IdempotencyStore store = store();
+        store.execute("key-1", "reserve:SKU-1", Map.of("quantity", 2), ReservationResponse.class, this::reserve);
+
+        assertThatThrownBy(() -> store.execute("key-1", "reserve:SKU-1", Map.of("quantity", 3), ReservationResponse.class, this::reserve))
+                .isInstanceOf(IdempotencyKeyReuseException.class);
+    }
+
+    @Test
+    void repeatWhileFirstStillRunsIsAConflict() {
+        IdempotencyStore store = store();
+        Map<String, Integer> request = Map.of("quantity", 2);
+
+        assertThatThrownBy(() -> store.execute("key-1", "reserve:SKU-1", request, ReservationResponse.class,
+                () -> store().execute("key-1", "reserve:SKU-1", request, ReservationResponse.class, this::reserve)))
+                .isInstanceOf(IdempotencyConflictException.class);
+    }
+
+    @Test
+    void failedCallCanBeRetried() {
+        IdempotencyStore store = store();
+        Map<String, Integer> request = Map.of("quantity", 2);
+
+        assertThatThrownBy(() -> store.execute("key-1", "reserve:SKU-1", request, ReservationResponse.class, () -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+        store.execute("key-1", "reserve:SKU-1", request, ReservationResponse.class, this::reserve);
+
+        assertThat(calls).hasValue(1);
+    }
+
+    private ReservationResponse reserve() {
+        return new ReservationResponse((long) calls.incrementAndGet(), "SKU-1", 2, null,
+                Instant.parse("2026-01-01T00:00:00Z"), Instant.parse("2026-01-01T00:15:00Z"));
+    }
+
+    private IdempotencyStore store() {
+        return new IdempotencyStore(redisTemplate, JsonMapper.builder().build(), new SimpleMeterRegistry(),
+                Duration.ofHours(24), 1 << 20);
+    }
+
+    @SuppressWarnings("unchecked")
+    private StringRedisTemplate redisStandIn() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenAnswer(call -> redis.putIfAbsent(call.getArgument(0), call.getArgument(1)) == null);
+        when(values.get(anyString())).thenAnswer(call -> redis.get(call.<String>getArgument(0)));
+        doAnswer(call -> redis.put(call.getArgument(0), call.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any(Duration.class));
+        when(template.delete(anyString())).thenAnswer(call -> redis.remove(call.<String>getArgument(0)) != null);
+        return template;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.ImportError;
+import com.example.microservice1.Dto.ImportReport;
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEvent.EventType;
+import com.example.microservice1.model.Inventory;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// The upsert SQL is PostgreSQL only (ON CONFLICT ... DO UPDATE, ANY(array), nextval), so the
+// table behind it is a stand-in that applies the same rules
+class InventoryImportServiceTests {
+
+    private static final String CSV_HEADER = "sku,productName,description,quantity,reorderLevel,maxStockLevel,unitPrice,warehouseId,location";
+
+    private final InventoryTable table = new InventoryTable();
+    private final OutboxPublisher outboxPublisher = mock(OutboxPublisher.class);
+    private final InventoryImportService importService = new InventoryImportService(table.jdbcTemplate(),
+            mock(PlatformTransactionManager.class), outboxPublisher, mock(LowStockFeed.class),
+            mock(WarehouseSummaryService.class), mock(StockLedger.class), mock(CacheManager.class),
+            Validation.buildDefaultValidatorFactory().getValidator(), JsonMapper.builder().build());
+
+    @Test
+    void csvIsUpsertedChunkByChunkWhileItIsRead() throws Exception {
+        int rows = 3 * InventoryImportService.CHUNK_SIZE;
+        StringBuilder csv = new StringBuilder(CSV_HEADER).append('\n');
+        for (int i = 0; i < rows; i++) {
+            csv.append("SKU-").append(i).append(",Product ").append(i).append(",\"bulk, loaded\",50,5,500,9.99,WH-1,A-").append(i).append('\n');
+        }
+        CountingStream body = new CountingStream(csv.toString());
+        table.body = body;
+
+        ImportReport report = importService.importCsv(body);
+
+        assertThat(report.getRowsRead()).isEqualTo(rows);
+        assertThat(report.getRowsUpserted()).isEqualTo(rows);
+        assertThat(report.getChunks()).isEqualTo(3);
+        //the first chunk went to the database before the end of the body was read
+        assertThat(table.bytesReadAtBatch.get(0)).isLessThan(body.length);
+        assertThat(table.rows).hasSize(rows);
+        assertOneEventPerChunk(3, InventoryImportService.CHUNK_SIZE);
+    }
+
+    @Test
+    void ndjsonIsUpsertedChunkByChunkWhileItIsRead() throws Exception {
+        int rows = 2 * InventoryImportService.CHUNK_SIZE + 10;
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            ndjson.append(json("SKU-" + i, 50)).append('\n');
+        }
+        CountingStream body = new CountingStream(ndjson.toString());
+        table.body = body;
+
+        ImportReport report = importService.importNdjson(body);
+
+        assertThat(report.getRowsUpserted()).isEqualTo(rows);
+        assertThat(report.getChunks()).isEqualTo(3);
+        assertThat(table.bytesReadAtBatch.get(0)).isLessThan(body.length);
+        ArgumentCaptor<InventoryEvent> events = ArgumentCaptor.forClass(InventoryEvent.class);
+        verify(outboxPublisher, times(3)).publish(eq("inventory-updated"), anyString(), events.capture());
+        assertThat(events.getAllValues()).extracting(event -> event.getLines().size())
+                .containsExactly(InventoryImportService.CHUNK_SIZE, InventoryImportService.CHUNK_SIZE, 10);
+    }
+
+    @Test
+    void existingSkuIsUpdatedInPlace() throws Exception {
+        table.rows.put("SKU-1", new long[]{100L, 20, 40, 3});
+
+        ImportReport report = importService.importNdjson(body(json("SKU-1", 70), json("SKU-2", 10)));
+
+        assertThat(report.getRowsUpserted()).isEqualTo(2);
+        //the existing row keeps its id, only the new SKU takes one from the sequence
+        assertThat(table.rows.get("SKU-1")).containsExactly(100L, 20, 70, 4);
+        assertThat(table.insertedIds).hasSize(1);
+        ArgumentCaptor<InventoryEvent> event = ArgumentCaptor.forClass(InventoryEvent.class);
+        verify(outboxPublisher).publish(eq("inventory-updated"), anyString(), event.capture());
+        assertThat(event.getValue().getType()).isEqualTo(EventType.BULK_UPSERTED);
+        InventoryEvent updated = event.getValue().getLines().stream().filter(line -> line.getSku().equals("SKU-1")).findFirst().orElseThrow();
+        assertThat(updated.getDelta()).isEqualTo(30);
+        assertThat(updated.getAvailableQuantity()).isEqualTo(50);
+        assertThat(updated.getVersion()).isEqualTo(4);
+    }
+
+    @Test
+    void badRowsAreReportedAndTheRestIsCommitted() throws Exception {
+        table.rows.put("SKU-4", new long[]{100L, 30, 40, 0});
+        String body = String.join("\n",
+                CSV_HEADER,
+                "SKU-1,Product 1,,50,5,500,9.99,WH-1,",
+                "SKU-2,Product 2,,-1,5,500,9.99,WH-1,",
+                "SKU-3,Product 3,,fifty,5,500,9.99,WH-1,",
+                "SKU-4,Product 4,,10,5,500,9.99,WH-1,",
+                "SKU-5,Product 5,,50,5,500,9.99,WH-1,") + "\n";
+
+        ImportReport report = importService.importCsv(body(body));
+
+        assertThat(report.getRowsRead()).isEqualTo(5);
+        assertThat(report.getRowsUpserted()).isEqualTo(2);
+        assertThat(report.getRowsRejected()).isEqualTo(3);
+        assertThat(report.getErrors()).extracting(ImportError::getLine, ImportError::getMessage).containsExactly(
+                tuple(3L, "Quantity must be non-negative"),
+                tuple(4L, "Invalid number in column quantity: fifty"),
+                tuple(5L, "Quantity is below the reserved quantity"));
+        assertThat(table.rows.keySet()).containsExactly("SKU-1", "SKU-4", "SKU-5");
+        //SKU-4 would have dropped below what is reserved, so it was left as it was
+        assertThat(table.rows.get("SKU-4")).containsExactly(100L, 30, 40, 0);
+        ArgumentCaptor<InventoryEvent> event = ArgumentCaptor.forClass(InventoryEvent.class);
+        verify(outboxPublisher).publish(eq("inventory-updated"), anyString(), event.capture());
+        assertThat(event.getValue().getLines()).extracting(InventoryEvent::getSku).containsExactlyInAnyOrder("SKU-1", "SKU-5");
+    }
+
+    private void assertOneEventPerChunk(int chunks, int linesPerChunk) {
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<InventoryEvent> events = ArgumentCaptor.forClass(InventoryEvent.class);
+        verify(outboxPublisher, times(chunks)).publish(eq("inventory-updated"), keys.capture(), events.capture());
+        assertThat(keys.getAllValues()).doesNotHaveDuplicates();
+        assertThat(events.getAllValues()).allSatisfy(event -> {
+            assertThat(event.getType()).isEqualTo(EventType.BULK_UPSERTED);
+            assertThat(event.getLines()).hasSize(linesPerChunk);
+        });
+    }
+
+    private static String json(String sku, int quantity) {
+        return "{\"sku\":\"" + sku + "\",\"productName\":\"Product " + sku + "\",\"quantity\":" + quantity
+                + ",\"reorderLevel\":5,\"maxStockLevel\":500,\"unitPrice\":9.99,\"warehouseId\":\"WH-1\"}";
+    }
+
+    private static InputStream body(String... lines) {
+        return new ByteArrayInputStream((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class CountingStream extends FilterInputStream {
+
+        private final int length;
+        private int read;
+
+        CountingStream(String text) {
+            this(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private CountingStream(byte[] bytes) {
+            super(new ByteArrayInputStream(bytes));
+            this.length = bytes.length;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                read += n;
+            }
+            return n;
+        }
+    }
+
+    // sku -> {id, reserved, quantity, version}
+    private static class InventoryTable {
+
+        private final Map<String, long[]> rows = new TreeMap<>();
+        private final List<Long> insertedIds = new ArrayList<>();
+        private final List<Integer> bytesReadAtBatch = new ArrayList<>();
+        private CountingStream body;
+        private long nextBlock = 1;
+
+        JdbcTemplate jdbcTemplate() {
+            JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+            doAnswer(invocation -> {
+                select(invocation.getArgument(1), invocation.getArgument(2));
+                return null;
+            }).when(jdbcTemplate).query(anyString(), any(PreparedStatementSetter.class), any(RowCallbackHandler.class));
+            when(jdbcTemplate.queryForList(startsWith("SELECT nextval"), eq(Long.class), any())).thenAnswer(invocation -> {
+                int blocks = invocation.getArgument(2);
+                List<Long> starts = new ArrayList<>();
+                for (int i = 0; i < blocks; i++) {
+                    starts.add(nextBlock);
+                    nextBlock += Inventory.ID_BLOCK_SIZE;
+                }
+                return starts;
+            });
+            when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                    .thenAnswer(invocation -> upsert(invocation.getArgument(1), invocation.getArgument(3)));
+            return jdbcTemplate;
+        }
+
+        private void select(PreparedStatementSetter setter, RowCallbackHandler handler) throws Exception {
+            Map<Integer, Object> parameters = new HashMap<>();
+            setter.setValues(statement(parameters));
+            Set<Object> skus = Set.of((Object[]) parameters.get(1));
+            for (Map.Entry<String, long[]> row : rows.entrySet()) {
+                if (!skus.contains(row.getKey())) {
+                    continue;
+                }
+                ResultSet rs = mock(ResultSet.class);
+                //sku, quantity, then for the upserted rows also reserved_quantity and version
+                when(rs.getString(1)).thenReturn(row.getKey());
+                when(rs.getInt(2)).thenReturn((int) row.getValue()[2]);
+                when(rs.getInt(3)).thenReturn((int) row.getValue()[1]);
+                when(rs.getLong(4)).thenReturn(row.getValue()[3]);
+                handler.processRow(rs);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int[][] upsert(Collection<Object> batch, ParameterizedPreparedStatementSetter<Object> setter) throws Exception {
+            if (body != null) {
+                bytesReadAtBatch.add(body.read);
+            }
+            int[] counts = new int[batch.size()];
+            int index = 0;
+            for (Object row : batch) {
+                Map<Integer, Object> parameters = new HashMap<>();
+                setter.setValues(statement(parameters), row);
+                String sku = (String) parameters.get(2);
+                int quantity = (Integer) parameters.get(5);
+                long[] existing = rows.get(sku);
+                if (existing == null) {
+                    long id = (Long) parameters.get(1);
+                    insertedIds.add(id);
+                    rows.put(sku, new long[]{id, 0, quantity, 0});
+                    counts[index] = 1;
+                } else if (existing[1] <= quantity) {
+                    existing[2] = quantity;
+                    existing[3]++;
+                    counts[index] = 1;
+                }
+                index++;
+            }
+            return new int[][]{counts};
+        }
+
+        // Records whatever is set on it; arrays come back as their elements
+        private static PreparedStatement statement(Map<Integer, Object> parameters) {
+            Connection connection = mock(Connection.class, invocation -> {
+                if (invocation.getMethod().getName().equals("createArrayOf")) {
+                    Array array = mock(Array.class);
+                    Object elements = invocation.getArgument(1);
+                    when(array.getArray()).thenReturn(elements);
+                    return array;
+                }
+                return null;
+            });
+            return mock(PreparedStatement.class, invocation -> {
+                String method = invocation.getMethod().getName();
+                if (method.equals("getConnection")) {
+                    return connection;
+                }
+                if (method.startsWith("set") && invocation.getArguments().length == 2) {
+                    Object value = invocation.getArgument(1);
+                    parameters.put(invocation.getArgument(0), value instanceof Array array ? array.getArray() : value);
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Exception.InsufficientStockException;
+import com.example.microservice1.Exception.ServiceBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InventoryMetricsTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InventoryMetrics metrics = new InventoryMetrics(meterRegistry);
+
+    @Test
+    void onlyTopSkusGetTheirOwnTag() {
+        for (int i = 0; i < 50; i++) {
+            metrics.record("get", "HOT-1", () -> "ok");
+        }
+        for (int i = 0; i < 20; i++) {
+            metrics.record("get", "COLD-" + i, () -> "ok");
+        }
+        metrics.rollWindow();
+
+        metrics.record("get", "HOT-1", () -> "ok");
+        metrics.record("get", "COLD-3", () -> "ok");
+
+        assertThat(meterRegistry.get(InventoryMetrics.OPERATION_TIMER).tag("sku", "HOT-1").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find(InventoryMetrics.OPERATION_TIMER).tag("sku", "COLD-3").timer()).isNull();
+    }
+
+    @Test
+    void skusPastTheTagLimitAreStillTimed() {
+        MeterRegistry limited = new SimpleMeterRegistry();
+        limited.config().meterFilter(InventoryMetrics.skuTagLimit(2));
+        InventoryMetrics limitedMetrics = new InventoryMetrics(limited);
+        //a different SKU is hot every window
+        for (int window = 0; window < 4; window++) {
+            for (int i = 0; i < 10; i++) {
+                limitedMetrics.record("get", "HOT-" + window, () -> "ok");
+            }
+            limitedMetrics.rollWindow();
+            limitedMetrics.record("get", "HOT-" + window, () -> "ok");
+        }
+
+        assertThat(limited.find(InventoryMetrics.OPERATION_TIMER).timers())
+                .extracting(timer -> timer.getId().getTag("sku")).containsOnly("other", "HOT-0", "HOT-1");
+        assertThat(limited.find(InventoryMetrics.OPERATION_TIMER).timers().stream().mapToLong(timer -> timer.count()).sum())
+                .isEqualTo(44);
+        assertThat(limited.get(InventoryMetrics.OPERATION_TIMER).tag("sku", "other").timer().count()).isEqualTo(42);
+    }
+
+    @Test
+    void failuresAreTaggedByOutcome() {
+        assertThatThrownBy(() -> metrics.record("reserve", "SKU-1", () -> {
+            throw new InsufficientStockException("none left");
+        })).isInstanceOf(InsufficientStockException.class);
+
+        assertThat(meterRegistry.get(InventoryMetrics.OPERATION_TIMER)
+                .tag("operation", "reserve").tag("outcome", "insufficient_stock").timer().count()).isEqualTo(1);
+        assertThat(InventoryMetrics.outcome(new CannotCreateTransactionException("no connection",
+                new ServiceBusyException("busy")))).isEqualTo("busy");
+    }
+}
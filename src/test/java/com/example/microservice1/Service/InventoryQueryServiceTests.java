@@ -0,0 +1,163 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.InventoryPage;
+import com.example.microservice1.Dto.InventoryResponse;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.model.Inventory;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({InventoryQueryService.class, InventoryQueryServiceTests.Json.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryQueryServiceTests {
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private InventoryQueryService inventoryQueryService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    @AfterEach
+    void cleanUp() {
+        inventoryRepository.deleteAll();
+    }
+
+    @Test
+    void pagesCoverEveryRowOnceInIdOrder() {
+        List<Inventory> rows = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            rows.add(inventory("SKU-" + i, 50, i % 2 == 0 ? "WH-1" : "WH-2", 0));
+        }
+        List<Long> ids = inventoryRepository.saveAllAndFlush(rows).stream().map(Inventory::getId).sorted().toList();
+        List<Long> warehouseIds = rows.stream().filter(row -> row.getWarehouseId().equals("WH-1"))
+                .map(Inventory::getId).sorted().toList();
+
+        assertThat(readAll(after -> inventoryQueryService.getInventoryPage(after, 10))).containsExactlyElementsOf(ids);
+        assertThat(readAll(after -> inventoryQueryService.getWarehousePage("WH-1", after, 4)))
+                .containsExactlyElementsOf(warehouseIds);
+    }
+
+    @Test
+    void lastPageHasNoNextCursor() {
+        List<Inventory> rows = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            rows.add(inventory("SKU-" + i, 50, "WH-1", 0));
+        }
+        inventoryRepository.saveAllAndFlush(rows);
+
+        InventoryPage partial = inventoryQueryService.getInventoryPage(null, 30);
+        assertThat(partial.getItems()).hasSize(20);
+        assertThat(partial.getNextCursor()).isNull();
+
+        //a page that comes out exactly full cannot tell it was the last, the one after it is empty
+        InventoryPage second = inventoryQueryService.getInventoryPage(inventoryQueryService.getInventoryPage(null, 10).getNextCursor(), 10);
+        assertThat(second.getItems()).hasSize(10);
+        InventoryPage empty = inventoryQueryService.getInventoryPage(second.getNextCursor(), 10);
+        assertThat(empty.getItems()).isEmpty();
+        assertThat(empty.getNextCursor()).isNull();
+    }
+
+    @Test
+    void warehouseAndLowStockStreamsAreReadOnlyAndDetachEachRow() {
+        inventoryRepository.saveAllAndFlush(List.of(
+                inventory("SKU-1", 50, "WH-1", 10),
+                inventory("SKU-2", 5, "WH-1", 10),
+                inventory("SKU-3", 3, "WH-2", 10),
+                inventory("SKU-4", 50, "WH-1", 10),
+                inventory("SKU-5", 8, "WH-1", 10)));
+
+        RowStream warehouse = new RowStream();
+        inventoryQueryService.streamByWarehouse("WH-1", warehouse);
+        RowStream lowStock = new RowStream();
+        inventoryQueryService.streamLowStockItems(lowStock);
+
+        assertThat(skus(warehouse)).containsExactly("SKU-1", "SKU-2", "SKU-4", "SKU-5");
+        assertThat(skus(lowStock)).containsExactly("SKU-2", "SKU-3", "SKU-5");
+        for (RowStream stream : List.of(warehouse, lowStock)) {
+            assertThat(stream.readOnly).containsOnly(true);
+            //only the row being written is still attached
+            assertThat(stream.managedEntities).containsOnly(1);
+        }
+    }
+
+    private static List<Long> readAll(Function<Long, InventoryPage> pages) {
+        List<Long> ids = new ArrayList<>();
+        Long after = null;
+        do {
+            InventoryPage page = pages.apply(after);
+            page.getItems().forEach(item -> ids.add(item.getId()));
+            after = page.getNextCursor();
+        } while (after != null);
+        return ids;
+    }
+
+    private List<String> skus(RowStream stream) {
+        return stream.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> jsonMapper.readValue(line, InventoryResponse.class).getSku())
+                .toList();
+    }
+
+    private static Inventory inventory(String sku, int quantity, String warehouseId, int reorderLevel) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setProductName("Product " + sku);
+        inventory.setDescription("test item");
+        inventory.setQuantity(quantity);
+        inventory.setReorderLevel(reorderLevel);
+        inventory.setMaxStockLevel(1000);
+        inventory.setUnitPrice(new BigDecimal("9.99"));
+        inventory.setWarehouseId(warehouseId);
+        return inventory;
+    }
+
+    // Notes, at the end of every row, the transaction it was written in and what the persistence context held
+    private class RowStream extends ByteArrayOutputStream {
+
+        private final List<Boolean> readOnly = new ArrayList<>();
+        private final List<Integer> managedEntities = new ArrayList<>();
+
+        @Override
+        public synchronized void write(int b) {
+            super.write(b);
+            if (b == '\n') {
+                readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+                managedEntities.add(entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class Json {
+
+        @Bean
+        JsonMapper jsonMapper() {
+            return JsonMapper.builder().build();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.BatchReservationRequest;
+import com.example.microservice1.Dto.BatchReservationResponse;
+import com.example.microservice1.Dto.ReservationItem;
+import com.example.microservice1.Dto.ReservationResponse;
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Exception.InsufficientStockException;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.Repository.OrderLineMarkerRepository;
+import com.example.microservice1.Repository.ReservationRepository;
+import com.example.microservice1.model.Inventory;
+import com.example.microservice1.model.OrderLineMarker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+// Order paths (batch reservations, order events) against a real database; everything off the row is mocked
+@DataJpaTest
+@Import(ReservationEngine.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryServiceTests {
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private OrderLineMarkerRepository orderLineMarkerRepository;
+
+    @Autowired
+    private ReservationEngine reservationEngine;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final OutboxPublisher outboxPublisher = mock(OutboxPublisher.class);
+    private final LowStockFeed lowStockFeed = mock(LowStockFeed.class);
+    private final WarehouseSummaryService warehouseSummaryService = mock(WarehouseSummaryService.class);
+    private final StockLedger stockLedger = mock(StockLedger.class);
+    private InventoryService inventoryService;
+
+    @AfterEach
+    void cleanUp() {
+        reservationRepository.deleteAll();
+        orderLineMarkerRepository.deleteAll();
+        inventoryRepository.deleteAll();
+    }
+
+    @Test
+    void cancellationHandsBackReservedStockOnly() {
+        inventoryRepository.saveAndFlush(inventory("SKU-1", 20));
+        inTransaction(() -> service().reserveOrderLines("SKU-1", List.of(line(5, "ORDER-1"))));
+
+        int cancelled = inTransaction(() -> service().releaseOrderLines("SKU-1", List.of("ORDER-1")));
+
+        Inventory row = inventoryRepository.findBySku("SKU-1").orElseThrow();
+        assertThat(cancelled).isEqualTo(1);
+        assertThat(row.getQuantity()).isEqualTo(20);
+        assertThat(row.getReservedQuantity()).isZero();
+        assertThat(reservationRepository.count()).isZero();
+        verify(warehouseSummaryService).recordChange(any(Inventory.class), eq(0), eq(0), eq(-5), eq(false));
+        verify(stockLedger).record(any(Inventory.class), eq(StockLedger.Kind.CANCELLED), eq(0), eq(-5), eq("ORDER-1"), any());
+        verify(outboxPublisher).publish(eq("inventory-released"), eq("SKU-1"),
+                argThat((InventoryEvent event) -> event.getType() == InventoryEvent.EventType.CANCELLED));
+        verify(lowStockFeed, never()).recordIfCrossed(any(), any());
+    }
+
+    @Test
+    void redeliveredPlacementReservesOnce() {
+        inventoryRepository.saveAndFlush(inventory("SKU-1", 20));
+
+        int first = inTransaction(() -> service().reserveOrderLines("SKU-1", List.of(line(5, "ORDER-1"))));
+        int again = inTransaction(() -> service().reserveOrderLines("SKU-1", List.of(line(5, "ORDER-1"))));
+
+        assertThat(first).isEqualTo(1);
+        assertThat(again).isZero();
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isEqualTo(5);
+        assertThat(reservationRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void placementRedeliveredAfterCancellationIsNotReservedAgain() {
+        inventoryRepository.saveAndFlush(inventory("SKU-1", 20));
+        inTransaction(() -> service().reserveOrderLines("SKU-1", List.of(line(5, "ORDER-1"))));
+        inTransaction(() -> service().releaseOrderLines("SKU-1", List.of("ORDER-1")));
+
+        int granted = inTransaction(() -> service().reserveOrderLines("SKU-1", List.of(line(5, "ORDER-1"))));
+
+        assertThat(granted).isZero();
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isZero();
+        assertThat(reservationRepository.count()).isZero();
+        assertThat(marker("ORDER-1").getState()).isEqualTo(OrderLineMarker.State.CANCELLED);
+    }
+
+    @Test
+    void placementArrivingAfterItsCancellationReservesNothing() {
+        inventoryRepository.saveAndFlush(inventory("SKU-1", 20));
+
+        int cancelled = inTransaction(() -> service().releaseOrderLines("SKU-1", List.of("ORDER-1")));
+        int granted = inTransaction(() -> service().reserveOrderLines("SKU-1",
+                List.of(line(5, "ORDER-1"), line(3, "ORDER-2"))));
+
+        assertThat(cancelled).isZero();
+        assertThat(granted).isEqualTo(1);
+        assertThat(reservationRepository.findAll()).extracting("orderId").containsExactly("ORDER-2");
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isEqualTo(3);
+        assertThat(marker("ORDER-1").getState()).isEqualTo(OrderLineMarker.State.CANCELLED);
+        assertThat(marker("ORDER-2").getState()).isEqualTo(OrderLineMarker.State.RESERVED);
+    }
+
+    @Test
+    void rejectedPlacementIsNotRetriedOnRedelivery() {
+        inventoryRepository.saveAndFlush(inventory("SKU-1", 4));
+        inTransaction(() -> service().reserveOrderLines("SKU-1", List.of(line(5, "ORDER-1"))));
+        Inventory restocked = inventoryRepository.findBySku("SKU-1").orElseThrow();
+        restocked.setQuantity(20);
+        inventoryRepository.saveAndFlush(restocked);
+
+        int granted = inTransaction(() -> service().reserveOrderLines("SKU-1", List.of(line(5, "ORDER-1"))));
+
+        assertThat(granted).isZero();
+        assertThat(marker("ORDER-1").getState()).isEqualTo(OrderLineMarker.State.REJECTED);
+        verify(outboxPublisher).publish(eq("inventory-rejected"), eq("ORDER-1"), any());
+    }
+
+    @Test
+    void markersAreKeptUntilPurged() {
+        inventoryRepository.saveAndFlush(inventory("SKU-1", 20));
+        inTransaction(() -> service().releaseOrderLines("SKU-1", List.of("ORDER-1")));
+
+        assertThat(inTransaction(() -> service().purgeOrderLineMarkers(Instant.now().minusSeconds(60)))).isZero();
+        assertThat(inTransaction(() -> service().purgeOrderLineMarkers(Instant.now().plusSeconds(1)))).isEqualTo(1);
+        assertThat(orderLineMarkerRepository.count()).isZero();
+    }
+
+    @Test
+    void coalescedBatchIsGrantedAgainWhenStockMovesUnderIt() {
+        inventoryRepository.saveAndFlush(inventory("SKU-1", 10));
+        //another reservation commits between the batch's read and its update
+        InventoryRepository racing = mock(InventoryRepository.class, AdditionalAnswers.delegatesTo(inventoryRepository));
+        AtomicBoolean raced = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (raced.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(() -> inTransaction(() -> inventoryRepository.reserveStock("SKU-1", 5))).join();
+            }
+            return inventoryRepository.reserveStockCoalesced(invocation.getArgument(0), invocation.getArgument(1),
+                    invocation.getArgument(2));
+        }).when(racing).reserveStockCoalesced(any(), any(), any());
+
+        List<ReservationResponse> granted = inTransaction(() -> service(racing).reserveCoalesced("SKU-1",
+                List.of(line(6, null), line(4, null))));
+
+        //the 10 read first no longer fits; of the 5 left, only the second call does
+        assertThat(granted).hasSize(2);
+        assertThat(granted.get(0)).isNull();
+        assertThat(granted.get(1)).isNotNull();
+        verify(racing, times(2)).reserveStockCoalesced(any(), any(), any());
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isEqualTo(9);
+        assertThat(reservationRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void batchReservesEveryLineWithOneOrderEvent() {
+        inventoryRepository.saveAllAndFlush(List.of(inventory("SKU-1", 20), inventory("SKU-2", 20)));
+
+        BatchReservationResponse response = inTransaction(() -> service().reserveBatch(
+                batch("ORDER-1", item("SKU-2", 4), item("SKU-1", 3))));
+
+        assertThat(response.getTotalUnits()).isEqualTo(7);
+        assertThat(response.getItems()).containsExactly(item("SKU-1", 3), item("SKU-2", 4));
+        assertThat(response.getReservations()).extracting("orderId").containsOnly("ORDER-1");
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isEqualTo(3);
+        assertThat(inventoryRepository.findBySku("SKU-2").orElseThrow().getReservedQuantity()).isEqualTo(4);
+        assertThat(reservationRepository.count()).isEqualTo(2);
+        verify(outboxPublisher).publish(eq("inventory-reserved"), eq("ORDER-1"), argThat((InventoryEvent event) ->
+                event.getType() == InventoryEvent.EventType.ORDER_RESERVED && event.getLines().size() == 2));
+        verify(outboxPublisher, times(1)).publish(any(), any(), any());
+    }
+
+    @Test
+    void shortLineRollsBackTheWholeBatch() {
+        inventoryRepository.saveAllAndFlush(List.of(inventory("SKU-1", 20), inventory("SKU-2", 2)));
+
+        //SKU-1 goes first and is reserved before SKU-2 turns out short
+        assertThatThrownBy(() -> inTransaction(() -> service().reserveBatch(
+                batch("ORDER-1", item("SKU-1", 5), item("SKU-2", 3)))))
+                .isInstanceOf(InsufficientStockException.class);
+
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isZero();
+        assertThat(inventoryRepository.findBySku("SKU-2").orElseThrow().getReservedQuantity()).isZero();
+        assertThat(reservationRepository.count()).isZero();
+        verify(outboxPublisher, never()).publish(any(), any(), any());
+    }
+
+    @Test
+    void batchMergesLinesOfTheSameSku() {
+        inventoryRepository.saveAllAndFlush(List.of(inventory("SKU-1", 20), inventory("SKU-2", 20)));
+
+        BatchReservationResponse response = inTransaction(() -> service().reserveBatch(
+                batch("ORDER-1", item("SKU-1", 2), item("SKU-2", 1), item("SKU-1", 3))));
+
+        assertThat(response.getItems()).containsExactly(item("SKU-1", 5), item("SKU-2", 1));
+        assertThat(response.getReservations()).extracting("sku", "quantity")
+                .containsExactly(tuple("SKU-1", 5), tuple("SKU-2", 1));
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isEqualTo(5);
+        assertThat(reservationRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void overlappingBatchesInOppositeOrderBothComplete() throws Exception {
+        inventoryRepository.saveAllAndFlush(List.of(inventory("SKU-1", 1000), inventory("SKU-2", 1000)));
+        int rounds = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> forward = executor.submit(() -> reserveBatches(start, rounds, "A", "SKU-1", "SKU-2"));
+            Future<?> backward = executor.submit(() -> reserveBatches(start, rounds, "B", "SKU-2", "SKU-1"));
+            start.countDown();
+            forward.get(30, TimeUnit.SECONDS);
+            backward.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(inventoryRepository.findBySku("SKU-1").orElseThrow().getReservedQuantity()).isEqualTo(2 * rounds);
+        assertThat(inventoryRepository.findBySku("SKU-2").orElseThrow().getReservedQuantity()).isEqualTo(2 * rounds);
+        assertThat(reservationRepository.count()).isEqualTo(4L * rounds);
+    }
+
+    private Void reserveBatches(CountDownLatch start, int rounds, String prefix, String firstSku, String secondSku)
+            throws InterruptedException {
+        start.await();
+        for (int i = 0; i < rounds; i++) {
+            String orderId = prefix + "-" + i;
+            inTransaction(() -> service().reserveBatch(batch(orderId, item(firstSku, 1), item(secondSku, 1))));
+        }
+        return null;
+    }
+
+    private OrderLineMarker marker(String orderId) {
+        return orderLineMarkerRepository.findById(new OrderLineMarker.Key(orderId, "SKU-1")).orElseThrow();
+    }
+
+    private InventoryService service() {
+        if (inventoryService == null) {
+            inventoryService = service(inventoryRepository);
+        }
+        return inventoryService;
+    }
+
+    private InventoryService service(InventoryRepository inventoryRepository) {
+        return new InventoryService(inventoryRepository, outboxPublisher, mock(CacheManager.class),
+                reservationEngine, mock(HotSkuLedger.class), lowStockFeed, new InventoryMetrics(new SimpleMeterRegistry()),
+                reservationRepository, warehouseSummaryService, stockLedger, orderLineMarkerRepository);
+    }
+
+    private <T> T inTransaction(Supplier<T> call) {
+        return new TransactionTemplate(transactionManager).execute(status -> call.get());
+    }
+
+    private static BatchReservationRequest batch(String orderId, ReservationItem... items) {
+        return new BatchReservationRequest(orderId, List.of(items), null);
+    }
+
+    private static ReservationItem item(String sku, int quantity) {
+        return new ReservationItem(sku, quantity);
+    }
+
+    private static InventoryService.Reserve line(int quantity, String orderId) {
+        return new InventoryService.Reserve(quantity, Duration.ofMinutes(10), orderId);
+    }
+
+    private static Inventory inventory(String sku, int quantity) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setProductName("Product " + sku);
+        inventory.setDescription("test item");
+        inventory.setQuantity(quantity);
+        inventory.setReorderLevel(5);
+        inventory.setMaxStockLevel(1000);
+        inventory.setUnitPrice(new BigDecimal("9.99"));
+        inventory.setWarehouseId("WH-1");
+        return inventory;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.LowStockChange;
+import com.example.microservice1.Dto.LowStockChangePage;
+import com.example.microservice1.Repository.LowStockTransitionRepository;
+import com.example.microservice1.model.Inventory;
+import com.example.microservice1.model.LowStockTransition;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LowStockFeedTests {
+
+    @Autowired
+    private LowStockTransitionRepository transitionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private LowStockFeed lowStockFeed;
+
+    @BeforeEach
+    void setUp() {
+        lowStockFeed = new LowStockFeed(transitionRepository, meterRegistry);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        transitionRepository.deleteAll();
+    }
+
+    @Test
+    void lowerIdCommittedLateIsNotSkipped() {
+        Instant settled = Instant.now().minusSeconds(60);
+        insert(1001, settled);
+        insert(1003, settled);
+        //written after 1003 by an instance whose id came out lower
+        insert(1002, Instant.now());
+
+        LowStockChangePage first = lowStockFeed.changesSince(1000L, 100);
+        assertThat(first.getItems()).extracting(LowStockChange::getId).containsExactly(1001L);
+        assertThat(first.getNextCursor()).isEqualTo(1001L);
+
+        jdbcTemplate.update("UPDATE low_stock_transition SET occurred_at = ? WHERE id = 1002", utc(settled));
+        LowStockChangePage second = lowStockFeed.changesSince(first.getNextCursor(), 100);
+        assertThat(second.getItems()).extracting(LowStockChange::getId).containsExactly(1002L, 1003L);
+        assertThat(second.getNextCursor()).isEqualTo(1003L);
+    }
+
+    @Test
+    void idsAreHandedOutOneAtATime() {
+        long first = transitionRepository.saveAndFlush(transition()).getId();
+        long second = transitionRepository.saveAndFlush(transition()).getId();
+
+        assertThat(second).isEqualTo(first + 1);
+    }
+
+    @Test
+    void commitsPastTheSettleWindowAreCounted() {
+        ReflectionTestUtils.setField(lowStockFeed, "settle", Duration.ofMillis(50));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                lowStockFeed.recordIfCrossed(row("SKU-1", 2), 10));
+        assertThat(lateCommits()).isZero();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            lowStockFeed.recordIfCrossed(row("SKU-2", 2), 10);
+            //a mutation still running after its transition's id was taken
+            LockSupport.parkNanos(Duration.ofMillis(200).toNanos());
+        });
+        assertThat(lateCommits()).isEqualTo(1);
+        assertThat(transitionRepository.count()).isEqualTo(2);
+    }
+
+    private double lateCommits() {
+        return meterRegistry.get("inventory.low-stock.feed.late-commits").counter().count();
+    }
+
+    private static Inventory row(String sku, int quantity) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setWarehouseId("WH-1");
+        inventory.setQuantity(quantity);
+        inventory.setReorderLevel(5);
+        return inventory;
+    }
+
+    private void insert(long id, Instant occurredAt) {
+        jdbcTemplate.update("INSERT INTO low_stock_transition (id, sku, warehouse_id, low_stock, quantity, reorder_level, occurred_at) " +
+                "VALUES (?, ?, 'WH-1', true, 1, 5, ?)", id, "SKU-" + id, utc(occurredAt));
+    }
+
+    private static LowStockTransition transition() {
+        return new LowStockTransition(null, "SKU-1", "WH-1", true, 1, 5, Instant.now());
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.Exception.ServiceBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderEventConsumerTests {
+
+    private final InventoryService inventoryService = mock(InventoryService.class);
+    private final DeadLetterPublishingRecoverer deadLetters = mock(DeadLetterPublishingRecoverer.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderEventConsumer consumer = new OrderEventConsumer(inventoryService, new InventoryMetrics(meterRegistry),
+            deadLetters, JsonMapper.builder().build(), Validation.buildDefaultValidatorFactory().getValidator(), meterRegistry, 4,
+            Duration.ofDays(7));
+
+    @AfterEach
+    void close() {
+        consumer.close();
+    }
+
+    @Test
+    void linesForOneSkuAreAppliedTogetherInOrder() {
+        consumer.consume(List.of(
+                placed(0, "ORDER-1", "{\"sku\":\"SKU-1\",\"quantity\":2},{\"sku\":\"SKU-2\",\"quantity\":1}"),
+                placed(1, "ORDER-2", "{\"sku\":\"SKU-1\",\"quantity\":3}")));
+
+        verify(inventoryService).reserveOrderLines("SKU-1", List.of(
+                new InventoryService.Reserve(2, Duration.ofSeconds(600), "ORDER-1"),
+                new InventoryService.Reserve(3, Duration.ofSeconds(600), "ORDER-2")));
+        verify(inventoryService).reserveOrderLines("SKU-2", List.of(
+                new InventoryService.Reserve(1, Duration.ofSeconds(600), "ORDER-1")));
+        verify(deadLetters, never()).accept(any(), any());
+    }
+
+    @Test
+    void cancellationAfterPlacementStaysAfterIt() {
+        consumer.consume(List.of(
+                placed(0, "ORDER-1", "{\"sku\":\"SKU-1\",\"quantity\":2}"),
+                record("order-cancelled", 0, "ORDER-1", "{\"sku\":\"SKU-1\",\"quantity\":2}")));
+
+        var order = org.mockito.Mockito.inOrder(inventoryService);
+        order.verify(inventoryService).reserveOrderLines(eq("SKU-1"), anyList());
+        order.verify(inventoryService).releaseOrderLines("SKU-1", List.of("ORDER-1"));
+    }
+
+    @Test
+    void malformedAndFailingRecordsAreDeadLettered() {
+        when(inventoryService.reserveOrderLines(eq("GONE"), anyList()))
+                .thenThrow(new InventoryNotFoundException("Inventory not found for SKU: GONE"));
+        ConsumerRecord<String,byte[]> malformed = new ConsumerRecord<>("order-placed", 0, 0, "ORDER-1",
+                "not json".getBytes(StandardCharsets.UTF_8));
+        ConsumerRecord<String,byte[]> invalid = placed(1, "ORDER-2", "{\"sku\":\"SKU-1\",\"quantity\":0}");
+        ConsumerRecord<String,byte[]> unknownSku = placed(2, "ORDER-3", "{\"sku\":\"GONE\",\"quantity\":1}");
+        ConsumerRecord<String,byte[]> fine = placed(3, "ORDER-4", "{\"sku\":\"SKU-1\",\"quantity\":1}");
+
+        consumer.consume(List.of(malformed, invalid, unknownSku, fine));
+
+        ArgumentCaptor<ConsumerRecord<?,?>> deadLettered = ArgumentCaptor.captor();
+        verify(deadLetters, times(3)).accept(deadLettered.capture(), any(Exception.class));
+        assertThat(deadLettered.getAllValues()).containsExactly(malformed, invalid, unknownSku);
+        verify(inventoryService).reserveOrderLines("SKU-1", List.of(new InventoryService.Reserve(1, Duration.ofSeconds(600), "ORDER-4")));
+        assertThat(meterRegistry.get("inventory.orders.dead_lettered").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void lineFailingInsideARunOnlyDeadLettersItsRecord() {
+        InventoryService.Reserve first = new InventoryService.Reserve(1, Duration.ofSeconds(600), "ORDER-1");
+        InventoryService.Reserve second = new InventoryService.Reserve(1, Duration.ofSeconds(600), "ORDER-2");
+        when(inventoryService.reserveOrderLines("SKU-1", List.of(first, second))).thenThrow(new IllegalStateException("boom"));
+        when(inventoryService.reserveOrderLines("SKU-1", List.of(second))).thenThrow(new IllegalStateException("boom"));
+        ConsumerRecord<String,byte[]> ok = placed(0, "ORDER-1", "{\"sku\":\"SKU-1\",\"quantity\":1}");
+        ConsumerRecord<String,byte[]> bad = placed(1, "ORDER-2", "{\"sku\":\"SKU-1\",\"quantity\":1}");
+
+        consumer.consume(List.of(ok, bad));
+
+        verify(inventoryService).reserveOrderLines("SKU-1", List.of(first));
+        verify(deadLetters).accept(same(bad), any(Exception.class));
+        verify(deadLetters, never()).accept(same(ok), any(Exception.class));
+    }
+
+    @Test
+    void unavailableDatabaseHandsThePollBack() {
+        when(inventoryService.reserveOrderLines(eq("SKU-1"), anyList())).thenThrow(new ServiceBusyException("busy"));
+
+        assertThatThrownBy(() -> consumer.consume(List.of(
+                placed(0, "ORDER-1", "{\"sku\":\"SKU-1\",\"quantity\":1}"),
+                new ConsumerRecord<>("order-placed", 0, 1, "ORDER-2", "not json".getBytes(StandardCharsets.UTF_8)))))
+                .isInstanceOf(ServiceBusyException.class);
+
+        verify(deadLetters, never()).accept(any(), any());
+    }
+
+    private static ConsumerRecord<String,byte[]> placed(long offset, String orderId, String items) {
+        return record("order-placed", offset, orderId, items);
+    }
+
+    private static ConsumerRecord<String,byte[]> record(String topic, long offset, String orderId, String items) {
+        String json = "{\"orderId\":\"" + orderId + "\",\"ttlSeconds\":600,\"items\":[" + items + "]}";
+        return new ConsumerRecord<>(topic, 0, offset, orderId, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Repository.OutboxLaneRepository;
+import com.example.microservice1.Repository.OutboxRepository;
+import com.example.microservice1.model.OutboxEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxRelayTests {
+
+    //two keys in different lanes
+    private static final String SKU_A = "SKU-1";
+    private static final String SKU_B = "SKU-2";
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private OutboxLaneRepository outboxLaneRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() {
+        outboxRepository.deleteAll();
+        outboxLaneRepository.deleteAll();
+    }
+
+    @Test
+    void relaysBatchInOrderAndDeletesIt() {
+        MockProducer<String, byte[]> producer = new BrokerStandIn(true);
+        long first = write(SKU_A);
+        long second = write(SKU_B);
+        write(SKU_A);
+
+        relay(producer, 16).relay();
+
+        List<ProducerRecord<String, byte[]>> sent = producer.history();
+        assertThat(sent).extracting(ProducerRecord::key).containsExactlyInAnyOrder(SKU_A, SKU_B, SKU_A);
+        assertThat(eventIds(sent, SKU_A)).startsWith(first).isSorted();
+        assertThat(eventIds(sent, SKU_B)).containsExactly(second);
+        assertThat(outboxRepository.count()).isZero();
+        assertThat(outboxLaneRepository.findAll()).allSatisfy(lane -> assertThat(lane.getOwner()).isNull());
+    }
+
+    @Test
+    void keepsRowsWhenBrokerRejectsTheBatch() {
+        MockProducer<String, byte[]> producer = new BrokerStandIn(false) {
+            @Override
+            public synchronized void flush() {
+                while (errorNext(new TimeoutException("broker down"))) {
+                    //fail every pending send
+                }
+            }
+        };
+        write(SKU_A);
+
+        relay(producer, 16).relay();
+
+        assertThat(outboxRepository.count()).isEqualTo(1);
+        //handed back, the next run takes it again
+        assertThat(outboxLaneRepository.findById(OutboxRelay.lane(SKU_A)).orElseThrow().getOwner()).isNull();
+    }
+
+    @Test
+    void oneKeyIsNeverRelayedFromTwoInstancesAtOnce() throws Exception {
+        assertThat(OutboxRelay.lane(SKU_A)).isNotEqualTo(OutboxRelay.lane(SKU_B));
+        String firstLaneKey = OutboxRelay.lane(SKU_A) < OutboxRelay.lane(SKU_B) ? SKU_A : SKU_B;
+        String secondLaneKey = firstLaneKey.equals(SKU_A) ? SKU_B : SKU_A;
+        long first = write(firstLaneKey);
+        write(secondLaneKey);
+        long second = write(firstLaneKey);
+
+        //the first relay leases the lower lane and waits on its acknowledgements
+        CountDownLatch queued = new CountDownLatch(1);
+        BrokerStandIn slowBroker = new BrokerStandIn(false) {
+            @Override
+            public synchronized void flush() {
+                queued.countDown();
+            }
+        };
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(relay(slowBroker, 1)::relay);
+        assertThat(queued.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(slowBroker.history()).extracting(ProducerRecord::key).containsExactly(firstLaneKey, firstLaneKey);
+        long third = write(firstLaneKey);
+
+        BrokerStandIn broker = new BrokerStandIn(true);
+        relay(broker, 16).relay();
+        assertThat(broker.history()).extracting(ProducerRecord::key).containsOnly(secondLaneKey);
+
+        while (slowBroker.completeNext()) {
+            //acknowledge what the first relay sent
+        }
+        slow.get();
+        relay(broker, 16).relay();
+
+        List<ProducerRecord<String, byte[]>> sent = new ArrayList<>(slowBroker.history());
+        sent.addAll(broker.history());
+        assertThat(eventIds(sent, firstLaneKey)).containsExactly(first, second, third);
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    private long write(String key) {
+        return outboxRepository.saveAndFlush(new OutboxEvent(null, "inventory-updated", key, OutboxRelay.lane(key),
+                key.getBytes(StandardCharsets.UTF_8), Instant.now())).getId();
+    }
+
+    private OutboxRelay relay(MockProducer<String, byte[]> producer, int lanesPerRun) {
+        KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        OutboxRelay relay = new OutboxRelay(outboxRepository, outboxLaneRepository, template, transactionManager,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(relay, "lanesPerRun", lanesPerRun);
+        return relay;
+    }
+
+    private static List<Long> eventIds(List<ProducerRecord<String, byte[]>> sent, String key) {
+        return sent.stream()
+                .filter(record -> record.key().equals(key))
+                .map(record -> Long.parseLong(new String(record.headers().lastHeader(OutboxRelay.EVENT_ID_HEADER).value(),
+                        StandardCharsets.UTF_8)))
+                .toList();
+    }
+
+    // KafkaTemplate closes non-transactional producers after each send; keep the stand-in open
+    private static class BrokerStandIn extends MockProducer<String, byte[]> {
+
+        BrokerStandIn(boolean autoComplete) {
+            super(autoComplete, null, new StringSerializer(), new ByteArraySerializer());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(Duration timeout) {
+        }
+    }
+}
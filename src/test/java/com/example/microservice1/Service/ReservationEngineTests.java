@@ -0,0 +1,116 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Exception.InsufficientStockException;
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.model.Inventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Import(ReservationEngine.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReservationEngineTests {
+
+    @Autowired
+    private ReservationEngine reservationEngine;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @AfterEach
+    void cleanUp() {
+        inventoryRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        inventoryRepository.saveAndFlush(inventory("FLASH-1", 100));
+
+        int threads = 32;
+        int attemptsPerThread = 20;
+        AtomicInteger granted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        try {
+                            reservationEngine.reserve("FLASH-1", 1);
+                            granted.incrementAndGet();
+                        } catch (InsufficientStockException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Inventory after = inventoryRepository.findBySku("FLASH-1").orElseThrow();
+        assertThat(granted.get()).isEqualTo(100);
+        assertThat(rejected.get()).isEqualTo(threads * attemptsPerThread - 100);
+        assertThat(after.getReservedQuantity()).isEqualTo(100);
+        assertThat(after.getAvailableQuantity()).isZero();
+    }
+
+    @Test
+    void releaseCannotExceedReservedQuantity() {
+        inventoryRepository.saveAndFlush(inventory("SKU-2", 10));
+        reservationEngine.reserve("SKU-2", 4);
+
+        assertThatThrownBy(() -> reservationEngine.release("SKU-2", 5))
+                .isInstanceOf(InsufficientStockException.class);
+
+        reservationEngine.release("SKU-2", 4);
+        Inventory after = inventoryRepository.findBySku("SKU-2").orElseThrow();
+        assertThat(after.getReservedQuantity()).isZero();
+        assertThat(after.getQuantity()).isEqualTo(6);
+    }
+
+    @Test
+    void unknownSkuIsReportedAsNotFound() {
+        assertThatThrownBy(() -> reservationEngine.reserve("MISSING", 1))
+                .isInstanceOf(InventoryNotFoundException.class);
+    }
+
+    private static Inventory inventory(String sku, int quantity) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setProductName("Product " + sku);
+        inventory.setDescription("test item");
+        inventory.setQuantity(quantity);
+        inventory.setReorderLevel(5);
+        inventory.setMaxStockLevel(1000);
+        inventory.setUnitPrice(new BigDecimal("9.99"));
+        inventory.setWarehouseId("WH-1");
+        return inventory;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Event.InventoryEvent;
+import com.example.microservice1.Event.InventoryEvent.EventType;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.Repository.ReservationRepository;
+import com.example.microservice1.model.Inventory;
+import com.example.microservice1.model.Reservation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReservationExpiryEngineTests {
+
+    private final ReservationRepository reservationRepository = mock(ReservationRepository.class);
+    private final InventoryRepository inventoryRepository = mock(InventoryRepository.class);
+    private final OutboxPublisher outboxPublisher = mock(OutboxPublisher.class);
+    private final WarehouseSummaryService warehouseSummaryService = mock(WarehouseSummaryService.class);
+    private final StockLedger stockLedger = mock(StockLedger.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReservationExpiryEngine engine = new ReservationExpiryEngine(reservationRepository, inventoryRepository,
+            outboxPublisher, mock(CacheManager.class), warehouseSummaryService, stockLedger,
+            mock(PlatformTransactionManager.class), meterRegistry);
+
+    @Test
+    void handsBackExpiredHoldsOncePerSku() {
+        when(reservationRepository.lockExpired(any(), anyInt()))
+                .thenReturn(List.of(hold(1L, "SKU-B", 2), hold(2L, "SKU-A", 3), hold(3L, "SKU-B", 5)));
+        when(inventoryRepository.returnLease(anyString(), anyInt())).thenReturn(1);
+        when(inventoryRepository.findBySkuIn(anyCollection())).thenReturn(List.of(row("SKU-A", 10), row("SKU-B", 20)));
+
+        engine.sweep();
+
+        InOrder order = inOrder(reservationRepository, inventoryRepository);
+        order.verify(reservationRepository).deleteAllByIdInBatch(List.of(1L, 2L, 3L));
+        order.verify(inventoryRepository).returnLease("SKU-A", 3);
+        order.verify(inventoryRepository).returnLease("SKU-B", 7);
+        ArgumentCaptor<InventoryEvent> events = ArgumentCaptor.forClass(InventoryEvent.class);
+        verify(outboxPublisher, times(2)).publish(eq("inventory-released"), anyString(), events.capture());
+        assertThat(events.getAllValues()).extracting(InventoryEvent::getType).containsOnly(EventType.EXPIRED);
+        assertThat(events.getAllValues()).extracting(InventoryEvent::getDelta).containsExactly(-3, -7);
+        assertThat(meterRegistry.counter("inventory.reservations.expired").count()).isEqualTo(10);
+    }
+
+    @Test
+    void rowShortOfReservedStockAnnouncesNothing() {
+        when(reservationRepository.lockExpired(any(), anyInt()))
+                .thenReturn(List.of(hold(1L, "SKU-A", 3), hold(2L, "SKU-B", 5)));
+        //SKU-B has less reserved than the hold, the conditional update leaves it alone
+        when(inventoryRepository.returnLease("SKU-A", 3)).thenReturn(1);
+        when(inventoryRepository.returnLease("SKU-B", 5)).thenReturn(0);
+        Inventory shortRow = row("SKU-B", 20);
+        shortRow.setReservedQuantity(2);
+        when(inventoryRepository.findBySkuIn(anyCollection())).thenReturn(List.of(row("SKU-A", 10), shortRow));
+
+        engine.sweep();
+
+        verify(reservationRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(outboxPublisher).publish(eq("inventory-released"), eq("SKU-A"), any());
+        verify(outboxPublisher, never()).publish(anyString(), eq("SKU-B"), any());
+        verify(warehouseSummaryService, never()).recordChange(eq(shortRow), anyInt(), anyInt(), anyInt(), anyBoolean());
+        verify(stockLedger, never()).record(eq(shortRow), any(), anyInt(), anyInt(), any(), any());
+        assertThat(meterRegistry.counter("inventory.reservations.expired").count()).isEqualTo(3);
+    }
+
+    @Test
+    void doesNothingWhenNoHoldIsDue() {
+        when(reservationRepository.lockExpired(any(), anyInt())).thenReturn(List.of());
+
+        engine.sweep();
+
+        verify(inventoryRepository, never()).returnLease(anyString(), anyInt());
+        verify(outboxPublisher, never()).publish(anyString(), anyString(), any());
+    }
+
+    private static Reservation hold(Long id, String sku, int quantity) {
+        Instant created = Instant.now().minusSeconds(60);
+        return new Reservation(id, sku, quantity, null, created, created.plusSeconds(30));
+    }
+
+    private static Inventory row(String sku, int quantity) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setQuantity(quantity);
+        inventory.setReservedQuantity(0);
+        inventory.setReorderLevel(0);
+        inventory.setVersion(1L);
+        return inventory;
+    }
+}
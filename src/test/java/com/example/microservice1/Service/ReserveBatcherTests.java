@@ -0,0 +1,123 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.ReservationResponse;
+import com.example.microservice1.Exception.InsufficientStockException;
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReserveBatcherTests {
+
+    private final InventoryService inventoryService = mock(InventoryService.class);
+    private final HotSkuLedger hotSkuLedger = mock(HotSkuLedger.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReserveBatcher batcher = new ReserveBatcher(inventoryService, hotSkuLedger, meterRegistry);
+
+    @Test
+    void idleSkuTakesThePlainPath() {
+        ReservationResponse response = response(1L, 2);
+        when(inventoryService.reserveStock("SKU-1", 2, null)).thenReturn(response);
+
+        assertThat(batcher.reserve("SKU-1", 2, null)).isSameAs(response);
+        verify(inventoryService, never()).reserveCoalesced(any(), anyList());
+    }
+
+    @Test
+    void callsQueuedBehindABatchAreAppliedTogether() throws Exception {
+        CountDownLatch firstInDatabase = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        when(inventoryService.reserveStock(eq("SKU-1"), anyInt(), any())).thenAnswer(invocation -> {
+            firstInDatabase.countDown();
+            releaseFirst.await();
+            return response(1L, 1);
+        });
+        //second and fourth fit, the third does not
+        when(inventoryService.reserveCoalesced(eq("SKU-1"), anyList()))
+                .thenReturn(Arrays.asList(response(2L, 1), null, response(3L, 1)));
+
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<ReservationResponse> first = callers.submit(() -> batcher.reserve("SKU-1", 1, null));
+            assertThat(firstInDatabase.await(5, TimeUnit.SECONDS)).isTrue();
+            List<Future<ReservationResponse>> queued = new ArrayList<>();
+            for (int quantity : new int[]{1, 50, 1}) {
+                queued.add(callers.submit(() -> batcher.reserve("SKU-1", quantity, Duration.ofMinutes(1))));
+                //keeps arrival order deterministic
+                Thread.sleep(20);
+            }
+            releaseFirst.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS).getId()).isEqualTo(1L);
+            assertThat(queued.get(0).get(5, TimeUnit.SECONDS).getId()).isEqualTo(2L);
+            assertThatThrownBy(() -> queued.get(1).get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(InsufficientStockException.class);
+            assertThat(queued.get(2).get(5, TimeUnit.SECONDS).getId()).isEqualTo(3L);
+        } finally {
+            callers.shutdownNow();
+        }
+
+        verify(inventoryService).reserveCoalesced("SKU-1", List.of(
+                new InventoryService.Reserve(1, Duration.ofMinutes(1), null),
+                new InventoryService.Reserve(50, Duration.ofMinutes(1), null),
+                new InventoryService.Reserve(1, Duration.ofMinutes(1), null)));
+        assertThat(meterRegistry.get("inventory.reserve.batch.size").summary().max()).isEqualTo(3);
+        assertThat(meterRegistry.get("inventory.reserve.batch.wait").timer().count()).isEqualTo(4);
+    }
+
+    @Test
+    void failureReachesTheCaller() {
+        when(inventoryService.reserveStock("MISSING", 1, null))
+                .thenThrow(new InventoryNotFoundException("Inventory not found for SKU: MISSING"));
+
+        assertThatThrownBy(() -> batcher.reserve("MISSING", 1, null)).isInstanceOf(InventoryNotFoundException.class);
+    }
+
+    @Test
+    void hotSkusSkipTheBatcher() {
+        when(hotSkuLedger.tryReserve("HOT-1", 1)).thenReturn(true);
+        when(inventoryService.reserveFromLease("HOT-1", 1, null)).thenReturn(response(9L, 1));
+
+        batcher.reserve("HOT-1", 1, null);
+
+        verify(inventoryService).reserveFromLease("HOT-1", 1, null);
+        verify(inventoryService, never()).reserveStock(any(), anyInt(), any());
+        assertThat(meterRegistry.get("inventory.reserve.batch.size").summary().count()).isZero();
+    }
+
+    @Test
+    void leaseGrantIsReturnedWhenItsHoldFails() {
+        when(hotSkuLedger.tryReserve("HOT-1", 3)).thenReturn(true);
+        when(inventoryService.reserveFromLease("HOT-1", 3, null)).thenThrow(new IllegalStateException("database down"));
+
+        assertThatThrownBy(() -> batcher.reserve("HOT-1", 3, null)).isInstanceOf(IllegalStateException.class);
+        verify(hotSkuLedger).returnGrant("HOT-1", 3);
+    }
+
+    private static ReservationResponse response(Long id, int quantity) {
+        ReservationResponse response = new ReservationResponse();
+        response.setId(id);
+        response.setQuantity(quantity);
+        return response;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Dto.StockLevelResponse;
+import com.example.microservice1.Exception.InventoryNotFoundException;
+import com.example.microservice1.Repository.InventoryRepository;
+import com.example.microservice1.model.Inventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Import(StockLedger.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockLedgerTests {
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() {
+        inventoryRepository.deleteAll();
+        stockLedger.ensureSchema();
+        jdbcTemplate.update("DELETE FROM stock_movement");
+        jdbcTemplate.update("DELETE FROM stock_snapshot");
+        jdbcTemplate.update("UPDATE stock_ledger_run SET last_run = TIMESTAMP WITH TIME ZONE '1970-01-01 00:00:00+00'");
+    }
+
+    @Test
+    void replayAppliesMovementsOnTopOfTheSnapshot() {
+        Instant at = Instant.parse("2026-01-01T12:00:00Z");
+        StockLedger.Snapshot snapshot = new StockLedger.Snapshot(at.minusSeconds(600), "WH-1", 100, 10, 7);
+
+        StockLevelResponse level = StockLedger.replay("SKU-1", at, snapshot, List.of(
+                movement(StockLedger.Kind.RESERVED, 0, 5, 8),
+                movement(StockLedger.Kind.RELEASED, -3, -3, 9)));
+
+        assertThat(level.getQuantity()).isEqualTo(97);
+        assertThat(level.getReservedQuantity()).isEqualTo(12);
+        assertThat(level.getAvailableQuantity()).isEqualTo(85);
+        assertThat(level.getVersion()).isEqualTo(9);
+        assertThat(level.getMovementsReplayed()).isEqualTo(2);
+    }
+
+    @Test
+    void replayWithoutSnapshotNeedsTheCreation() {
+        Instant at = Instant.parse("2026-01-01T12:00:00Z");
+
+        assertThat(StockLedger.replay("SKU-1", at, null, List.of(movement(StockLedger.Kind.RESERVED, 0, 5, 8)))).isNull();
+        assertThat(StockLedger.replay("SKU-1", at, null, List.of())).isNull();
+        assertThat(StockLedger.replay("SKU-1", at, null, List.of(movement(StockLedger.Kind.CREATED, 40, 0, 0)))
+                .getQuantity()).isEqualTo(40);
+    }
+
+    @Test
+    void stockAtRebuildsPastLevelsFromSnapshotsAndMovements() throws Exception {
+        Instant beforeCreation = tick();
+        Inventory row = inventoryRepository.saveAndFlush(inventory("SKU-1", 100));
+        inTransaction(() -> stockLedger.record(row, StockLedger.Kind.CREATED, 100, 0, null, null));
+        Instant created = tick();
+
+        inTransaction(() -> {
+            inventoryRepository.reserveStock("SKU-1", 10);
+            stockLedger.record(reload(), StockLedger.Kind.RESERVED, 0, 10, "ORDER-1", 1L);
+        });
+        Instant reserved = tick();
+
+        //first run takes the full snapshot
+        stockLedger.maintain();
+        tick();
+
+        inTransaction(() -> {
+            Inventory inventory = reload();
+            inventory.setQuantity(150);
+            stockLedger.record(inventoryRepository.saveAndFlush(inventory), StockLedger.Kind.UPDATED, 50, 0, null, null);
+        });
+        Instant updated = tick();
+
+        assertThatThrownBy(() -> stockLedger.stockAt("SKU-1", null, beforeCreation))
+                .isInstanceOf(InventoryNotFoundException.class);
+        assertThat(stockLedger.stockAt("SKU-1", null, created).getQuantity()).isEqualTo(100);
+        StockLevelResponse afterReserve = stockLedger.stockAt("SKU-1", "WH-1", reserved);
+        assertThat(afterReserve.getReservedQuantity()).isEqualTo(10);
+        assertThat(afterReserve.getSnapshotAt()).isNull();
+
+        StockLevelResponse latest = stockLedger.stockAt("SKU-1", "WH-1", updated);
+        assertThat(latest.getSnapshotAt()).isNotNull();
+        assertThat(latest.getMovementsReplayed()).isEqualTo(1);
+        assertThat(latest.getQuantity()).isEqualTo(150);
+        assertThat(latest.getAvailableQuantity()).isEqualTo(140);
+        assertThat(latest.getVersion()).isEqualTo(reload().getVersion());
+
+        assertThatThrownBy(() -> stockLedger.stockAt("SKU-1", "WH-2", updated))
+                .isInstanceOf(InventoryNotFoundException.class);
+        assertThat(stockLedger.movements("SKU-1", beforeCreation, updated, 100))
+                .extracting("kind").containsExactly("CREATED", "RESERVED", "UPDATED");
+    }
+
+    @Test
+    void rolledBackChangesLeaveNoMovement() throws Exception {
+        Instant from = tick();
+        Inventory row = inventoryRepository.saveAndFlush(inventory("SKU-2", 100));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            stockLedger.record(row, StockLedger.Kind.CREATED, 100, 0, null, null);
+            status.setRollbackOnly();
+        });
+
+        assertThat(stockLedger.movements("SKU-2", from, tick(), 100)).isEmpty();
+    }
+
+    private void inTransaction(Runnable change) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> change.run());
+    }
+
+    private Inventory reload() {
+        return inventoryRepository.findBySku("SKU-1").orElseThrow();
+    }
+
+    //keeps the instants on either side of a change apart
+    private static Instant tick() throws InterruptedException {
+        Thread.sleep(5);
+        Instant now = Instant.now();
+        Thread.sleep(5);
+        return now;
+    }
+
+    private static StockLedger.Movement movement(StockLedger.Kind kind, int quantityDelta, int reservedDelta, long version) {
+        return new StockLedger.Movement(Instant.parse("2026-01-01T11:55:00Z"), "SKU-1", "WH-1", kind, quantityDelta,
+                reservedDelta, version, null, null);
+    }
+
+    private static Inventory inventory(String sku, int quantity) {
+        Inventory inventory = new Inventory();
+        inventory.setSku(sku);
+        inventory.setProductName("Product " + sku);
+        inventory.setDescription("test item");
+        inventory.setQuantity(quantity);
+        inventory.setReorderLevel(0);
+        inventory.setMaxStockLevel(quantity * 10);
+        inventory.setUnitPrice(new BigDecimal("1.00"));
+        inventory.setWarehouseId("WH-1");
+        return inventory;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.microservice1.Service;
+
+import com.example.microservice1.Repository.WarehouseSummaryRepository;
+import com.example.microservice1.model.Inventory;
+import com.example.microservice1.model.WarehouseSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WarehouseSummaryServiceTests {
+
+    private final WarehouseSummaryRepository repository = mock(WarehouseSummaryRepository.class);
+    private final WarehouseSummaryService service = new WarehouseSummaryService(repository,
+            mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+
+    @Test
+    void flushAddsSummedDeltasOncePerWarehouse() {
+        Inventory created = row("WH-1", 100, 10, "2.50");
+        service.recordChange(created, 1, 100, 0, false);
+        Inventory reserved = row("WH-1", 100, 10, "2.50");
+        service.recordChange(reserved, 0, 0, 30, false);
+        //released 95 units: quantity 5 now at or below the reorder level of 10
+        Inventory released = row("WH-1", 5, 10, "2.50");
+        service.recordChange(released, 0, -95, -25, false);
+
+        service.flush();
+
+        verify(repository).addDelta(eq("WH-1"), eq(1L), eq(5L), eq(5L), eq(1250L), eq(1L), any(Instant.class));
+    }
+
+    @Test
+    void flushSkipsWarehousesWithoutChanges() {
+        Inventory row = row("WH-1", 100, 10, "2.50");
+        service.recordChange(row, 0, 0, 5, false);
+        service.flush();
+
+        service.flush();
+
+        verify(repository).addDelta(anyString(), anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void reconcileOverwritesDriftAndDropsEmptyWarehouses() {
+        Instant earlier = Instant.now().minusSeconds(60);
+        WarehouseSummary inStep = new WarehouseSummary("WH-1", 2, 50, 5, 12_500, 0, earlier, earlier);
+        WarehouseSummary drifted = new WarehouseSummary("WH-2", 1, 70, 0, 700, 0, earlier, earlier);
+        WarehouseSummary emptied = new WarehouseSummary("WH-3", 1, 1, 0, 100, 1, earlier, earlier);
+        when(repository.findAll()).thenReturn(List.of(inStep, drifted, emptied));
+        when(repository.aggregateInventory()).thenReturn(List.of(
+                new Object[]{"WH-1", 2L, 50L, 5L, new BigDecimal("12500"), 0L},
+                new Object[]{"WH-2", 1L, 60L, 0L, new BigDecimal("600"), 0L}));
+
+        int fixed = service.reconcileAll(Instant.now());
+
+        assertThat(fixed).isEqualTo(2);
+        verify(repository).deleteAll(argThat(summaries -> List.copyOf((Collection<?>) summaries).equals(List.of(emptied))));
+        verify(repository, never()).addDelta(anyString(), anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), any());
+    }
+
+    private static Inventory row(String warehouseId, int quantity, int reorderLevel, String unitPrice) {
+        Inventory inventory = new Inventory();
+        inventory.setWarehouseId(warehouseId);
+        inventory.setQuantity(quantity);
+        inventory.setReorderLevel(reorderLevel);
+        inventory.setUnitPrice(new BigDecimal(unitPrice));
+        return inventory;
+    }
+}
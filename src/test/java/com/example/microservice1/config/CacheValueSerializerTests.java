@@ -0,0 +1,108 @@
+package com.example.microservice1.config;
+
+import com.example.microservice1.Dto.InventoryResponse;
+import com.example.microservice1.config.CacheValueSerializer.Codec;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CacheValueSerializerTests {
+
+    @Test
+    void binaryRoundTrips() {
+        CacheValueSerializer serializer = new CacheValueSerializer(Codec.BINARY, Integer.MAX_VALUE);
+        InventoryResponse value = response();
+
+        byte[] bytes = serializer.serialize(value);
+
+        assertThat(bytes[0]).isEqualTo((byte) CacheValueSerializer.FORMAT_BINARY);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(value);
+    }
+
+    @Test
+    void binaryKeepsNullsAndNegativeAvailability() {
+        CacheValueSerializer serializer = new CacheValueSerializer(Codec.BINARY, Integer.MAX_VALUE);
+        InventoryResponse value = new InventoryResponse();
+        value.setSku("SKU-1");
+        value.setAvailableQuantity(-4);
+        value.setLowstock(true);
+
+        assertThat(serializer.deserialize(serializer.serialize(value))).isEqualTo(value);
+    }
+
+    @Test
+    void jsonRoundTripsWithoutTypeMetadata() {
+        CacheValueSerializer serializer = new CacheValueSerializer(Codec.JSON, Integer.MAX_VALUE);
+        InventoryResponse value = response();
+
+        byte[] bytes = serializer.serialize(value);
+
+        assertThat(new String(bytes, 1, bytes.length - 1)).doesNotContain("@class");
+        assertThat(serializer.deserialize(bytes)).isEqualTo(value);
+    }
+
+    @Test
+    void deflatesAboveThreshold() {
+        InventoryResponse value = response();
+        value.setDescription("Full size wireless keyboard with numeric pad. ".repeat(20));
+        CacheValueSerializer plain = new CacheValueSerializer(Codec.JSON, Integer.MAX_VALUE);
+        CacheValueSerializer deflating = new CacheValueSerializer(Codec.JSON, 512);
+
+        byte[] bytes = deflating.serialize(value);
+
+        assertThat(bytes[0] & CacheValueSerializer.DEFLATED).isNotZero();
+        assertThat(bytes.length).isLessThan(plain.serialize(value).length / 2);
+        assertThat(deflating.deserialize(bytes)).isEqualTo(value);
+        //the threshold only matters on write
+        assertThat(plain.deserialize(bytes)).isEqualTo(value);
+    }
+
+    @Test
+    void readsEntriesWrittenBeforeTheSwitch() {
+        InventoryResponse value = response();
+        byte[] legacy = RedisSerializer.json().serialize(value);
+
+        assertThat(new CacheValueSerializer(Codec.BINARY, 512).deserialize(legacy)).isEqualTo(value);
+    }
+
+    @Test
+    void otherValuesKeepTheLegacyEncoding() {
+        CacheValueSerializer serializer = new CacheValueSerializer(Codec.BINARY, 512);
+
+        assertThat(serializer.deserialize(serializer.serialize(NullValue.INSTANCE))).isInstanceOf(NullValue.class);
+    }
+
+    @Test
+    void isSmallerThanLegacyEntries() {
+        InventoryResponse value = response();
+
+        byte[] binary = new CacheValueSerializer(Codec.BINARY, 512).serialize(value);
+        byte[] legacy = RedisSerializer.json().serialize(value);
+
+        assertThat(binary.length * 3).isLessThan(legacy.length);
+    }
+
+    @Test
+    void rejectsTruncatedEntries() {
+        CacheValueSerializer serializer = new CacheValueSerializer(Codec.BINARY, 512);
+        byte[] bytes = serializer.serialize(response());
+
+        assertThatThrownBy(() -> serializer.deserialize(Arrays.copyOf(bytes, bytes.length - 3)))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    private static InventoryResponse response() {
+        LocalDateTime now = LocalDateTime.of(2026, 3, 14, 9, 26, 53, 589_793_000);
+        return new InventoryResponse(42L, "SKU-000123", "Wireless keyboard", 1_250,
+                "Full size wireless keyboard with numeric pad", 37, 1_213, 100, Integer.MAX_VALUE,
+                new BigDecimal("49.99"), "WH-NORTH-01", "A-12-03", "ACTIVE", false, now, now.plusSeconds(5), 17L);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.microservice1.config;
+
+import com.example.microservice1.Exception.ServiceBusyException;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JdbcBulkheadTests {
+
+    private final JdbcBulkhead bulkhead = new JdbcBulkhead(2, Duration.ofMillis(50));
+
+    @Test
+    void rejectsOnceEveryPermitIsHeldPastTheWait() throws Exception {
+        BulkheadDataSource dataSource = new BulkheadDataSource(pool(), bulkhead);
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(ServiceBusyException.class);
+
+        first.close();
+        assertThat(dataSource.getConnection()).isNotNull();
+    }
+
+    @Test
+    void closingTwiceReturnsOnePermit() throws Exception {
+        BulkheadDataSource dataSource = new BulkheadDataSource(pool(), bulkhead);
+        Connection connection = dataSource.getConnection();
+
+        connection.close();
+        connection.close();
+
+        assertThat(bulkhead.available()).isEqualTo(2);
+    }
+
+    private static DataSource pool() throws Exception {
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        return pool;
+    }
+}
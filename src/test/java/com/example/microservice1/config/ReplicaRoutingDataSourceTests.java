@@ -0,0 +1,93 @@
+package com.example.microservice1.config;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Two local H2 databases stand in for the primary and its replica; each knows its own name
+class ReplicaRoutingDataSourceTests {
+
+    private final DataSource primary = database("primary");
+    private final DataSource replica = database("replica");
+
+    @Test
+    void readOnlyTransactionsGoToTheReplica() {
+        DataSource routing = routing(new ReplicaSet(List.of(replica), Duration.ofSeconds(1), "SELECT 0"));
+
+        assertThat(whoAnswers(routing, true)).isEqualTo("replica");
+        assertThat(whoAnswers(routing, false)).isEqualTo("primary");
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimary() {
+        DataSource routing = routing(new ReplicaSet(List.of(replica), Duration.ofSeconds(1), "SELECT 5000"));
+
+        assertThat(whoAnswers(routing, true)).isEqualTo("primary");
+    }
+
+    @Test
+    void unprobedReplicaIsNotUsed() {
+        ReplicaSet replicaSet = new ReplicaSet(List.of(replica), Duration.ofSeconds(1), "SELECT 0");
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, replicaSet));
+
+        assertThat(whoAnswers(routing, true)).isEqualTo("primary");
+    }
+
+    @Test
+    void clientReadsItsOwnWriteFromPrimaryUntilReplicaCaughtUp() throws Exception {
+        ReplicaSet replicaSet = new ReplicaSet(List.of(replica), Duration.ofSeconds(1), "SELECT 0");
+        DataSource routing = routing(replicaSet);
+        ReadConsistency.Filter filter = new ReadConsistency.Filter(Duration.ZERO);
+
+        //written after the replica's last probe
+        long writtenAt = System.currentTimeMillis() + 1_000;
+        assertThat(readWithHeader(filter, routing, writtenAt)).isEqualTo("primary");
+
+        Thread.sleep(1_100);
+        replicaSet.probe();
+        assertThat(readWithHeader(filter, routing, writtenAt)).isEqualTo("replica");
+    }
+
+    private String readWithHeader(ReadConsistency.Filter filter, DataSource routing, long readAfter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/inventory/page");
+        request.addHeader(ReadConsistency.HEADER, Long.toString(readAfter));
+        AtomicReference<String> answer = new AtomicReference<>();
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> answer.set(whoAnswers(routing, true)));
+        return answer.get();
+    }
+
+    private DataSource routing(ReplicaSet replicaSet) {
+        replicaSet.probe();
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, replicaSet));
+        return routing;
+    }
+
+    private static String whoAnswers(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM whoami", String.class));
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE whoami (name VARCHAR(20))");
+        jdbc.update("INSERT INTO whoami VALUES (?)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.microservice1.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class TwoLevelCacheTests {
+
+    private final ConcurrentMapCacheManager remote = new ConcurrentMapCacheManager("inventory");
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TwoLevelCacheManager cacheManager;
+    private Cache cache;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = new TwoLevelCacheManager(remote, redisTemplate, meterRegistry, 100, Duration.ofMinutes(1));
+        cache = cacheManager.getCache("inventory");
+    }
+
+    @Test
+    void secondReadIsServedFromLocalCache() {
+        remote.getCache("inventory").put("SKU-1", "value");
+
+        assertThat(cache.get("SKU-1").get()).isEqualTo("value");
+        assertThat(cache.get("SKU-1").get()).isEqualTo("value");
+
+        assertThat(count("l2", "hit")).isEqualTo(1);
+        assertThat(count("l1", "hit")).isEqualTo(1);
+    }
+
+    @Test
+    void evictIsPublishedToOtherInstances() {
+        cache.put("SKU-1", "value");
+        cache.evict("SKU-1");
+
+        assertThat(remote.getCache("inventory").get("SKU-1")).isNull();
+        verify(redisTemplate, times(2)).convertAndSend(eq(TwoLevelCacheManager.INVALIDATION_CHANNEL), anyString());
+    }
+
+    @Test
+    void remoteInvalidationOnlyDropsLocalCopy() {
+        cache.put("SKU-1", "value");
+        remote.getCache("inventory").put("SKU-1", "newer");
+
+        cacheManager.onMessage(message("other-instance\ninventory\nSKU-1"), null);
+
+        assertThat(cache.get("SKU-1").get()).isEqualTo("newer");
+    }
+
+    @Test
+    void olderVersionNeverReplacesNewer() {
+        cache.put("SKU-1", versioned(7L));
+        cache.put("SKU-1", versioned(6L));
+
+        assertThat(((VersionedCacheValue) cache.get("SKU-1").get()).getVersion()).isEqualTo(7L);
+        assertThat(((VersionedCacheValue) remote.getCache("inventory").get("SKU-1").get()).getVersion()).isEqualTo(7L);
+        assertThat(meterRegistry.get("cache.puts.stale").functionCounter().count()).isEqualTo(1);
+    }
+
+    // A miss read version 6 from the database, then a commit put 7 before the load was written back
+    @Test
+    void loadFinishingAfterNewerPutKeepsNewer() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        Thread reader = Thread.ofVirtual().start(() -> cache.get("SKU-1", () -> {
+            loading.countDown();
+            committed.await();
+            return versioned(6L);
+        }));
+        loading.await();
+        cache.put("SKU-1", versioned(7L));
+        committed.countDown();
+        reader.join();
+
+        assertThat(((VersionedCacheValue) cache.get("SKU-1").get()).getVersion()).isEqualTo(7L);
+        assertThat(((VersionedCacheValue) remote.getCache("inventory").get("SKU-1").get()).getVersion()).isEqualTo(7L);
+        assertThat(meterRegistry.get("cache.puts.stale").functionCounter().count()).isEqualTo(1);
+    }
+
+    // Another instance wrote version 7 to L2 while this one was loading 6: the remote compare
+    // rejects the load, and L1 is left to pick up 7 on the next read
+    @Test
+    void loadRejectedByRemoteCompareStaysOutOfLocalCache() {
+        TwoLevelCache twoLevel = twoLevel();
+        Map<Object,Long> remoteVersions = new HashMap<>();
+        twoLevel.bulkRemote(new TwoLevelCache.BulkRemote() {
+            @Override
+            public Map<Object,Object> getAll(Collection<?> keys) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Set<Object> putAllIfAbsent(Map<?,?> values) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean putIfNewer(Object key, Object value, long version) {
+                if (remoteVersions.getOrDefault(key, Long.MIN_VALUE) > version) {
+                    return false;
+                }
+                remoteVersions.put(key, version);
+                remote.getCache("inventory").put(key, value);
+                return true;
+            }
+        });
+
+        Object loaded = twoLevel.get("SKU-1", () -> {
+            remoteVersions.put("SKU-1", 7L);
+            remote.getCache("inventory").put("SKU-1", versioned(7L));
+            return versioned(6L);
+        });
+
+        assertThat(((VersionedCacheValue) loaded).getVersion()).isEqualTo(6L);
+        assertThat(twoLevel.getLocalCache().getIfPresent("SKU-1")).isNull();
+        assertThat(((VersionedCacheValue) twoLevel.get("SKU-1").get()).getVersion()).isEqualTo(7L);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> cache.get("SKU-1", () -> {
+                loads.incrementAndGet();
+                Thread.sleep(50);
+                return "loaded";
+            }));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(remote.getCache("inventory").get("SKU-1").get()).isEqualTo("loaded");
+    }
+
+    // A load blocks on Redis and Postgres; doing that inside a monitor would pin the carrier
+    @Test
+    void loadsDoNotPinVirtualThreads() throws Exception {
+        List<RecordedEvent> pinned = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", pinned::add);
+            recording.startAsync();
+
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = Thread.ofVirtual().start(() -> cache.get("SKU-1", () -> {
+                    Thread.sleep(20);
+                    return "loaded";
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            recording.stop();
+        }
+
+        assertThat(pinned).isEmpty();
+    }
+
+    @Test
+    void getAllReadsRemainingKeysFromRemoteInOneCall() {
+        TwoLevelCache twoLevel = twoLevel();
+        Map<Object,Object> remoteEntries = new HashMap<>(Map.of("SKU-2", "two", "SKU-3", "three"));
+        List<Collection<?>> bulkReads = new CopyOnWriteArrayList<>();
+        twoLevel.bulkRemote(new TwoLevelCache.BulkRemote() {
+            @Override
+            public Map<Object,Object> getAll(Collection<?> keys) {
+                bulkReads.add(List.copyOf(keys));
+                Map<Object,Object> found = new HashMap<>(remoteEntries);
+                found.keySet().retainAll(keys);
+                return found;
+            }
+
+            @Override
+            public Set<Object> putAllIfAbsent(Map<?,?> values) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean putIfNewer(Object key, Object value, long version) {
+                remote.getCache("inventory").put(key, value);
+                return true;
+            }
+        });
+        twoLevel.put("SKU-1", "one");
+
+        Map<Object,Object> values = twoLevel.getAll(List.of("SKU-1", "SKU-2", "SKU-3", "SKU-4"));
+
+        assertThat(values).containsOnly(Map.entry("SKU-1", "one"), Map.entry("SKU-2", "two"), Map.entry("SKU-3", "three"));
+        assertThat(bulkReads).containsExactly(List.of("SKU-2", "SKU-3", "SKU-4"));
+        assertThat(count("l2", "hit")).isEqualTo(2);
+        assertThat(count("l2", "miss")).isEqualTo(1);
+        //now served from L1
+        assertThat(twoLevel.getAll(List.of("SKU-2", "SKU-3"))).hasSize(2);
+        assertThat(bulkReads).hasSize(1);
+    }
+
+    @Test
+    void backfillNeverReplacesCachedEntries() {
+        TwoLevelCache twoLevel = twoLevel();
+        remote.getCache("inventory").put("SKU-1", "committed");
+
+        twoLevel.putAllIfAbsent(Map.of("SKU-1", "loaded", "SKU-2", "loaded"));
+
+        assertThat(twoLevel.getAll(List.of("SKU-1", "SKU-2")))
+                .containsOnly(Map.entry("SKU-1", "committed"), Map.entry("SKU-2", "loaded"));
+        verify(redisTemplate, never()).convertAndSend(eq(TwoLevelCacheManager.INVALIDATION_CHANNEL), anyString());
+    }
+
+    private TwoLevelCache twoLevel() {
+        return (TwoLevelCache) ((TransactionAwareCacheDecorator) cache).getTargetCache();
+    }
+
+    private static VersionedCacheValue versioned(Long version) {
+        return () -> version;
+    }
+
+    private double count(String level, String result) {
+        return meterRegistry.get("cache.gets").tag("level", level).tag("result", result).functionCounter().count();
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(TwoLevelCacheManager.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+}